@@ -2,11 +2,16 @@ package com.blazemeter.jmeter.correlation;
 
 import com.blazemeter.jmeter.correlation.core.CorrelationEngine;
 import com.blazemeter.jmeter.correlation.core.CorrelationRule;
+import com.blazemeter.jmeter.correlation.core.CorrelationTemplatePostProcessor;
 import com.blazemeter.jmeter.correlation.core.InvalidRulePartElementException;
 import com.blazemeter.jmeter.correlation.core.RulesGroup;
+import com.blazemeter.jmeter.correlation.core.extractors.CorrelationExtractor;
 import com.blazemeter.jmeter.correlation.core.proxy.ComparableCookie;
-import com.blazemeter.jmeter.correlation.core.proxy.CorrelationProxy;
-import com.blazemeter.jmeter.correlation.core.proxy.Jsr223PreProcessorFactory;
+import com.blazemeter.jmeter.correlation.core.proxy.CookieTracker;
+import com.blazemeter.jmeter.correlation.core.proxy.CorrelationDaemon.ExecutionMode;
+import com.blazemeter.jmeter.correlation.core.proxy.OrderedDeliveryQueue;
+import com.blazemeter.jmeter.correlation.core.proxy.OrderedDeliveryQueue.BackpressurePolicy;
+import com.blazemeter.jmeter.correlation.core.proxy.PendingProxies;
 import com.blazemeter.jmeter.correlation.core.proxy.PendingProxy;
 import com.blazemeter.jmeter.correlation.core.proxy.ReflectionUtils;
 import com.blazemeter.jmeter.correlation.core.templates.ConfigurationException;
@@ -31,30 +36,28 @@ import java.io.ObjectInputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import org.apache.jmeter.exceptions.IllegalUserActionException;
+import org.apache.jmeter.extractor.RegexExtractor;
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.tree.JMeterTreeNode;
-import org.apache.jmeter.modifiers.JSR223PreProcessor;
 import org.apache.jmeter.protocol.http.control.RecordingController;
 import org.apache.jmeter.protocol.http.proxy.Daemon;
 import org.apache.jmeter.protocol.http.proxy.ProxyControl;
 import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
 import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
-import org.apache.jmeter.protocol.http.util.HTTPConstants;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.testelement.property.CollectionProperty;
@@ -75,6 +78,13 @@ public class CorrelationProxyControl extends ProxyControl implements
   private static final String CORRELATION_COMPONENTS = "CorrelationProxyControl.components";
   private static final String RESPONSE_FILTER = "CorrelationProxyControl.responseFilter";
   private static final String TEMPLATE_PATH = "CorrelationProxyControl.templatePath";
+  private static final String DELIVERY_QUEUE_SIZE =
+      "CorrelationProxyControl.deliveryQueueSize";
+  private static final String DELIVERY_QUEUE_BACKPRESSURE =
+      "CorrelationProxyControl.deliveryQueueBackpressure";
+  private static final int DEFAULT_DELIVERY_QUEUE_SIZE = 1000;
+  private static final String ORDERING_DEADLINE = "CorrelationProxyControl.orderingDeadline";
+  private static final String PROXY_EXECUTION_MODE = "CorrelationProxyControl.proxyExecutionMode";
   private static final String RECORDER_NAME = "bzm - Correlation Recorder";
   // we use reflection to be able to call these non visible methods and not have to re implement
   // them.
@@ -90,13 +100,14 @@ public class CorrelationProxyControl extends ProxyControl implements
   private static final Field SERVER_FIELD = getProxyControlField("server");
   private static final Field SAMPLE_GAP_FIELD = getProxyControlField("sampleGap");
   // this is used to deliver samples in order, check CorrelationProxy.
-  private final LinkedHashMap<Object, PendingProxy> pendingProxies = new LinkedHashMap<>();
-  private final Set<ComparableCookie> lastComparableCookies = new LinkedHashSet<>();
+  private transient PendingProxies pendingProxies;
+  private transient CookieTracker cookieTracker;
   private transient CorrelationComponentsRegistry componentsRegistry;
   private transient CorrelationTemplatesRepositoriesConfiguration templateRepositoryConfig;
   private transient LocalConfiguration localConfiguration;
   private transient CorrelationEngine correlationEngine;
   private transient CorrelationTemplatesRegistry correlationTemplatesRegistry;
+  private transient OrderedDeliveryQueue deliveryQueue;
   private JMeterTreeNode target = null;
 
   @SuppressWarnings("checkstyle:RedundantModifier")
@@ -107,6 +118,9 @@ public class CorrelationProxyControl extends ProxyControl implements
     correlationTemplatesRegistry = new LocalCorrelationTemplatesRegistry(localConfiguration);
     templateRepositoryConfig =
         new CorrelationTemplatesRepositoriesConfiguration(localConfiguration);
+    deliveryQueue = buildDeliveryQueue();
+    pendingProxies = buildPendingProxies();
+    cookieTracker = new CookieTracker();
     setName(RECORDER_NAME);
   }
 
@@ -123,6 +137,9 @@ public class CorrelationProxyControl extends ProxyControl implements
     this.localConfiguration = localConfiguration;
     this.correlationEngine = correlationEngine;
     this.correlationTemplatesRegistry = correlationTemplatesRegistry;
+    this.deliveryQueue = buildDeliveryQueue();
+    this.pendingProxies = buildPendingProxies();
+    this.cookieTracker = new CookieTracker();
   }
 
   private static Method getProxyControlMethod(String methodName, Class<?>... paramTypes) {
@@ -133,10 +150,25 @@ public class CorrelationProxyControl extends ProxyControl implements
     return ReflectionUtils.getField(ProxyControl.class, fieldName);
   }
 
-  private static String getTemplateDirectoryPath() {
+  public static String getTemplateDirectoryPath() {
     return JMeterUtils.getPropDefault(TEMPLATE_PATH, JMeterUtils.getJMeterHome());
   }
 
+  /*
+   * Correlation of recorded samples is done in a dedicated thread, so proxy threads don't have to
+   * wait for it. A size of 0 makes the correlation to run in the proxy threads, like JMeter does.
+   */
+  private static OrderedDeliveryQueue buildDeliveryQueue() {
+    return new OrderedDeliveryQueue(
+        JMeterUtils.getPropDefault(DELIVERY_QUEUE_SIZE, DEFAULT_DELIVERY_QUEUE_SIZE),
+        BackpressurePolicy.fromName(JMeterUtils.getPropDefault(DELIVERY_QUEUE_BACKPRESSURE,
+            BackpressurePolicy.BLOCK.name())));
+  }
+
+  private static PendingProxies buildPendingProxies() {
+    return new PendingProxies(JMeterUtils.getPropDefault(ORDERING_DEADLINE, 0L));
+  }
+
   private static List<CorrelationRule> getRulesFromListOfGroups(List<RulesGroup> groups) {
     return groups.stream().map(RulesGroup::getRules).flatMap(Collection::stream)
         .collect(Collectors.toList());
@@ -155,11 +187,26 @@ public class CorrelationProxyControl extends ProxyControl implements
   }
   
   @Override
-  public synchronized void startProxy() throws IOException {
-    lastComparableCookies.clear();
-    correlationEngine.reset();
+  public void startProxy() throws IOException {
+    if (correlationEngine.isRuntimeExtraction()) {
+      addTemplatePostProcessor(findRecordingTemplate());
+    }
     pendingProxies.clear();
-    
+    /*
+     samples of the previous recording may still be delivered (waiting for this thread to add them
+     to the test plan), so the state is reset once they are done, instead of waiting for them here
+     */
+    deliveryQueue.submitTask(this::resetRecordingState);
+    startProxyServer();
+    pendingProxies.scheduleDeadlineChecks(this::releaseCompletedProxy);
+  }
+
+  private void resetRecordingState() {
+    cookieTracker.clear();
+    correlationEngine.reset();
+  }
+
+  private void startProxyServer() throws IOException {
     if (requireJMeterRequestsOrderFix()) {
       super.startProxy();
       return;      
@@ -176,7 +223,8 @@ public class CorrelationProxyControl extends ProxyControl implements
     }
     notifyTestListenersOfStart();
     try {
-      Daemon server = new Daemon(getPort(), this, CorrelationProxy.class);
+      Daemon server = ExecutionMode.fromName(JMeterUtils.getPropDefault(PROXY_EXECUTION_MODE,
+          ExecutionMode.THREAD.name())).buildDaemon(getPort(), this);
       setServer(server);
       if (getProxyPauseHTTPSample().isEmpty()) {
         setSampleGap(JMeterUtils.getPropDefault("proxy.pause", 5000));
@@ -247,77 +295,180 @@ public class CorrelationProxyControl extends ProxyControl implements
     }
   }
 
+  /*
+   * Stop is invoked in the Swing event dispatch thread, which the deliveries need to add the
+   * samples to the test plan, so the pending deliveries are waited in a background thread.
+   */
+  @Override
+  public void stopProxy() {
+    super.stopProxy();
+    pendingProxies.stopDeadlineChecks();
+    deliveryQueue.submitTask(this::logRecordingMetrics);
+    deliveryQueue.stopInBackground();
+  }
+
+  private void logRecordingMetrics() {
+    correlationEngine.logVariablesMetrics();
+    long overtakenCount = pendingProxies.getOvertakenCount();
+    if (overtakenCount > 0) {
+      LOG.info("{} requests were recorded after following ones, since they exceeded the "
+          + "ordering deadline.", overtakenCount);
+    }
+  }
+
+  @VisibleForTesting
+  protected void awaitDeliveredSamples() throws InterruptedException {
+    deliveryQueue.awaitDelivered();
+  }
+
   public CorrelationRulesTestElement getCorrelationRulesTestElement() {
     return (CorrelationRulesTestElement) getProperty(CORRELATION_RULES).getObjectValue();
   }
 
+  /*
+   * Submissions are not synchronized with this instance lock, since submitting to the delivery
+   * queue may wait for the delivery thread, which requires this instance lock to add the samples to
+   * the test plan.
+   */
   @Override
-  public synchronized void deliverSampler(HTTPSamplerBase sampler, TestElement[] testElements,
+  public void deliverSampler(HTTPSamplerBase sampler, TestElement[] testElements,
       SampleResult result) {
-
     if (!requireJMeterRequestsOrderFix()) {
       pendingProxies.get(Thread.currentThread()).update(sampler, testElements, result);
       return;
     }
 
+    synchronized (deliveryQueue) {
+      submitDelivery(() -> deliverSample(sampler, testElements, result));
+    }
+  }
+
+  private void deliverSample(HTTPSamplerBase sampler, TestElement[] testElements,
+      SampleResult result) {
     if (sampler != null) {
       List<TestElement> children = new ArrayList<>(Arrays.asList(testElements));
       correlationEngine.process(sampler, children, result, this.getContentTypeInclude());
       testElements = children.toArray(new TestElement[0]);
+      addSharedExtractors(correlationEngine.pollSharedExtractors());
     }
     super.deliverSampler(sampler, testElements, result);
   }
 
-  public synchronized void startedProxy(Thread proxy) {
-    pendingProxies.put(proxy, new PendingProxy(getTarget()));
+  private void addSharedExtractors(List<RegexExtractor> extractors) {
+    if (!extractors.isEmpty()) {
+      addToTargetController(extractors);
+    }
   }
 
-  public synchronized void endedProxy(Thread proxy) {
-    PendingProxy pendingProxy = pendingProxies.get(proxy);
-    /*
-    this may happen if proxy had an issue parsing request or some other case where getOutputStream
-    is not invoked for used clientSocket
-     */
-    if (pendingProxy == null) {
+  private void addToTargetController(List<? extends TestElement> elements) {
+    GuiPackage guiPackage = GuiPackage.getInstance();
+    JMeterTreeNode targetNode = guiPackage != null ? findTargetControllerNode() : null;
+    if (targetNode == null) {
+      LOG.warn("Could not find the target controller to add {}",
+          elements.stream().map(TestElement::getName).collect(Collectors.toList()));
       return;
     }
-    /*
-     when result is null then the request is not recorded. This is to keep logic from JMeter
-     recorder.
-     */
-    if (pendingProxy.getResult() == null) {
-      pendingProxies.remove(proxy);
-    } else {
-      pendingProxy.setComplete(true);
-    }
-    deliverPendingCompletedRequests();
+    JMeterUtils.runSafe(true, () -> {
+      for (TestElement element : elements) {
+        try {
+          guiPackage.getTreeModel().addComponent(element, targetNode);
+        } catch (IllegalUserActionException e) {
+          LOG.error("Could not add {} to the target controller", element.getName(), e);
+        }
+      }
+    });
   }
 
-  private void deliverPendingCompletedRequests() {
-    Iterator<PendingProxy> it = pendingProxies.values().iterator();
-    while (it.hasNext()) {
-      PendingProxy proxy = it.next();
-      if (!proxy.isComplete()) {
-        return;
+  /*
+   With runtime extraction no extractors are added to the recorded samplers, so the recorded plan
+   needs a post processor applying an installed template with the same extraction rules.
+   */
+  private TemplateVersion findRecordingTemplate() throws IOException {
+    List<List<String>> extractions = getExtractions(getGroups());
+    return correlationTemplatesRegistry.getInstalledTemplates().stream()
+        .filter(t -> getExtractions(t.getGroups()).equals(extractions))
+        .findFirst()
+        .orElseThrow(() -> new IOException("Runtime extraction is enabled, but the correlation "
+            + "rules don't match any installed template, so the recorded plan would make no "
+            + "extractions. Save the rules as a template, or disable "
+            + "CorrelationEngine.runtimeExtraction."));
+  }
+
+  private static List<List<String>> getExtractions(List<RulesGroup> groups) {
+    List<List<String>> extractions = new ArrayList<>();
+    for (RulesGroup group : groups) {
+      if (!group.isEnable()) {
+        continue;
+      }
+      for (CorrelationRule rule : group.getRules()) {
+        CorrelationExtractor<?> extractor = rule.getCorrelationExtractor();
+        if (rule.isEnabled() && extractor != null) {
+          List<String> extraction = new ArrayList<>();
+          extraction.add(rule.getReferenceName());
+          extraction.add(extractor.getType());
+          extraction.addAll(extractor.getParams());
+          extractions.add(extraction);
+        }
       }
-      deliverCompletedProxy(proxy);
-      it.remove();
     }
+    return extractions;
+  }
+
+  private void addTemplatePostProcessor(TemplateVersion template) {
+    JMeterTreeNode targetNode = GuiPackage.getInstance() != null
+        ? findTargetControllerNode() : null;
+    if (targetNode != null) {
+      // the post processor is kept when recording again into the same controller
+      for (int i = 0; i < targetNode.getChildCount(); i++) {
+        if (CorrelationTemplatePostProcessor.isFromTemplate(
+            ((JMeterTreeNode) targetNode.getChildAt(i)).getTestElement(), template)) {
+          return;
+        }
+      }
+    }
+    addToTargetController(
+        Collections.singletonList(CorrelationTemplatePostProcessor.fromTemplate(template)));
+  }
+
+  private void submitDelivery(Runnable delivery) {
+    try {
+      deliveryQueue.submit(delivery);
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting to correlate recorded sample", e);
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void startedProxy(Thread proxy) {
+    pendingProxies.add(proxy, new PendingProxy(getTarget()));
+  }
+
+  public void endedProxy(Thread proxy) {
+    pendingProxies.complete(proxy, this::releaseCompletedProxy);
+  }
+
+  private void releaseCompletedProxy(PendingProxy proxy) {
+    submitDelivery(() -> deliverCompletedProxy(proxy));
   }
 
   private void deliverCompletedProxy(PendingProxy proxy) {
-    if (proxy.getSampler() != null && filter(proxy.getSampler(), proxy.getResult())) {
+    if (proxy.getSampler() != null && isRecordable(proxy.getSampler(), proxy.getResult())) {
       this.target = proxy.getTarget();
       List<TestElement> children = new ArrayList<>(Arrays.asList(proxy.getTestElements()));
-      addMissingCookiesChildren(proxy.getResult(), children);
+      cookieTracker.addMissingCookies((HTTPSampleResult) proxy.getResult(), children);
       correlationEngine.process(proxy.getSampler(), children, proxy.getResult(),
           this.getContentTypeInclude());
       proxy.setTestElements(children.toArray(new TestElement[0]));
+      addSharedExtractors(correlationEngine.pollSharedExtractors());
     }
     super.deliverSampler(proxy.getSampler(), proxy.getTestElements(), proxy.getResult());
   }
 
-  private boolean filter(HTTPSamplerBase sampler, SampleResult result) {
+  /**
+   * Tells if a sampler is recorded, according to the URL patterns and content types to include
+   * and exclude configured in the recorder.
+   */
+  public boolean isRecordable(HTTPSamplerBase sampler, SampleResult result) {
     try {
       return ((Boolean) FILTER_URL_METHOD.invoke(this, sampler)) &&
           ((Boolean) FILTER_CONTENT_TYPE_METHOD.invoke(this, result));
@@ -333,71 +484,9 @@ public class CorrelationProxyControl extends ProxyControl implements
     }
   }
 
-  private void addMissingCookiesChildren(SampleResult result, List<TestElement> children) {
-    List<ComparableCookie> newComparableCookies = extractNewRequestCookies(result);
-    for (ComparableCookie comparableCookie : newComparableCookies) {
-      children.add(buildCookiePreProcessor(comparableCookie));
-      addCookie(comparableCookie);
-    }
-    addResponseHeaders(result);
-  }
-
-  private List<ComparableCookie> extractNewRequestCookies(SampleResult result) {
-    String cookieHeader = ((HTTPSampleResult) result).getCookies();
-    if (cookieHeader == null || cookieHeader.trim().isEmpty()) {
-      return Collections.emptyList();
-    }
-    /*
-     we can't use CookieManager, CookieSpec or even HttpCookie since they treat the different
-     cookies just as attributes, and then is not possible to get the values.
-     */
-    URL url = result.getURL();
-    return Arrays.stream(cookieHeader.split("; "))
-        .map(s -> {
-          int separatorPos = s.indexOf("=");
-          return new ComparableCookie(s.substring(0, separatorPos), s.substring(separatorPos + 1),
-              url.getHost());
-        })
-        .filter(c -> !lastComparableCookies.contains(c))
-        .collect(Collectors.toList());
-  }
-
   @VisibleForTesting
   protected void addCookie(ComparableCookie comparableCookie) {
-    lastComparableCookies.stream()
-        .filter(
-            c -> comparableCookie.getName().equals(c.getName()) && comparableCookie.getDomain()
-                .equals(c.getDomain()))
-        .findAny()
-        .ifPresent(lastComparableCookies::remove);
-    lastComparableCookies.add(comparableCookie);
-  }
-
-  private JSR223PreProcessor buildCookiePreProcessor(ComparableCookie comparableCookie) {
-    return Jsr223PreProcessorFactory.fromNameAndScript("Set cookie - " + comparableCookie.getName(),
-        String.format("import org.apache.jmeter.protocol.http.control.*\n\n"
-                + "// we use this instead of sampler.url to avoid premature resolution of url "
-                + "parameters and allow other pre processors to affect rest of url\n"
-                + "def url = sampler.path.startsWith('http://') || "
-                + "sampler.path.startsWith('https://') ? new URL(sampler.path) : "
-                + "new URL(sampler.protocol + '://' + sampler.domain)\n"
-                + "sampler.getCookieManager().add(new Cookie('%s', '%s', url.host, '', "
-                + "sampler.isSecure(url), 0))",
-            comparableCookie.getName(), comparableCookie.getName()));
-  }
-
-  private void addResponseHeaders(SampleResult result) {
-    URL url = result.getURL();
-    Arrays.stream(result.getResponseHeaders().split("\n"))
-        .filter(h -> h.toLowerCase().startsWith(HTTPConstants.HEADER_SET_COOKIE))
-        .map(h -> {
-          int cookieStartPos = h.indexOf(":") + 1;
-          int cookieNameEndPos = h.indexOf("=", cookieStartPos);
-          int cookieValueEndPos = h.indexOf(";", cookieNameEndPos + 1);
-          return new ComparableCookie(h.substring(cookieStartPos, cookieNameEndPos).trim(),
-              h.substring(cookieNameEndPos + 1, cookieValueEndPos), url.getHost());
-        })
-        .forEach(this::addCookie);
+    cookieTracker.put(comparableCookie);
   }
 
   @Override
@@ -729,12 +818,12 @@ public class CorrelationProxyControl extends ProxyControl implements
 
   @VisibleForTesting
   protected Set<ComparableCookie> getLastCookies() {
-    return lastComparableCookies;
+    return new LinkedHashSet<>(cookieTracker.getCookies());
   }
 
   @VisibleForTesting
-  protected LinkedHashMap<Object, PendingProxy> getPendingProxies() {
-    return pendingProxies;
+  protected Map<Object, PendingProxy> getPendingProxies() {
+    return pendingProxies.asMap();
   }
 
   private void readObject(ObjectInputStream inputStream)
@@ -746,6 +835,9 @@ public class CorrelationProxyControl extends ProxyControl implements
     correlationTemplatesRegistry = new LocalCorrelationTemplatesRegistry(localConfiguration);
     templateRepositoryConfig =
         new CorrelationTemplatesRepositoriesConfiguration(localConfiguration);
+    deliveryQueue = buildDeliveryQueue();
+    pendingProxies = buildPendingProxies();
+    cookieTracker = new CookieTracker();
     setName(RECORDER_NAME);
   }
 
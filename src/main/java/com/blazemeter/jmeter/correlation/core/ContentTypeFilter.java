@@ -0,0 +1,86 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.Perl5Compiler;
+import org.apache.oro.text.regex.Perl5Matcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-parsed version of the response filter configured in the Correlation Recorder.
+ *
+ * <p>The filter is a comma separated list of regular expressions and a response is only allowed
+ * when its Content-Type matches all of them. Patterns are split and compiled once, so checking
+ * every response doesn't need to parse the filter again.
+ */
+final class ContentTypeFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ContentTypeFilter.class);
+  private static final int PATTERN_MASK = Perl5Compiler.READ_ONLY_MASK
+      | Perl5Compiler.SINGLELINE_MASK;
+  private static final ContentTypeFilter ALLOW_ALL = new ContentTypeFilter("", new Pattern[0],
+      true);
+
+  private final String filterRegex;
+  private final Pattern[] patterns;
+  private final boolean valid;
+
+  private ContentTypeFilter(String filterRegex, Pattern[] patterns, boolean valid) {
+    this.filterRegex = filterRegex;
+    this.patterns = patterns;
+    this.valid = valid;
+  }
+
+  static ContentTypeFilter compile(String filterRegex) {
+    if (filterRegex == null || filterRegex.isEmpty()) {
+      return ALLOW_ALL;
+    }
+    String[] filters = filterRegex.split(",");
+    Pattern[] patterns = new Pattern[filters.length];
+    Perl5Compiler compiler = new Perl5Compiler();
+    for (int i = 0; i < filters.length; i++) {
+      try {
+        patterns[i] = compiler.compile(filters[i], PATTERN_MASK);
+      } catch (MalformedPatternException ex) {
+        LOG.warn("Skipped invalid content pattern: {}", filterRegex, ex);
+        return new ContentTypeFilter(filterRegex, new Pattern[0], false);
+      }
+    }
+    return new ContentTypeFilter(filterRegex, patterns, true);
+  }
+
+  boolean isCompiledFrom(String filterRegex) {
+    return filterRegex == null || filterRegex.isEmpty() ? this == ALLOW_ALL
+        : filterRegex.equals(this.filterRegex);
+  }
+
+  boolean isAllowed(SampleResult result) {
+    if (this == ALLOW_ALL) {
+      return true;
+    }
+
+    String sampleContentType = result.getContentType();
+    if (sampleContentType == null || sampleContentType.isEmpty()) {
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("No Content-type found for : {}.", result.getUrlAsString());
+      }
+      return true;
+    }
+
+    LOG.debug("Content-type to filter: {}.", sampleContentType);
+    if (!valid) {
+      return false;
+    }
+
+    Perl5Matcher matcher = JMeterUtils.getMatcher();
+    for (Pattern pattern : patterns) {
+      if (!matcher.contains(sampleContentType, pattern)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,6 +1,7 @@
 package com.blazemeter.jmeter.correlation.core;
 
 import com.blazemeter.jmeter.correlation.CorrelationProxyControl;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultFieldCache;
 import org.apache.jmeter.samplers.SampleResult;
 
 /**
@@ -23,4 +24,17 @@ public interface CorrelationContext {
    * @param sampleResult response obtained after a request
    */
   void update(SampleResult sampleResult);
+
+  /**
+   * Handles the update of the variables from the result obtained after every request made to the
+   * server, reusing the fields of the result already obtained for the same sample.
+   *
+   * <p>By default, it just delegates on {@link #update(SampleResult)}.
+   *
+   * @param sampleResult response obtained after a request
+   * @param fields lazily obtained fields of the response
+   */
+  default void update(SampleResult sampleResult, ResultFieldCache fields) {
+    update(sampleResult);
+  }
 }
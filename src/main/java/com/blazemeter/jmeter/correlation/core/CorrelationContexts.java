@@ -0,0 +1,66 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contexts of the rules of a correlation engine, keeping a single instance of each context class
+ * which is shared by all the rule parts that support it.
+ */
+class CorrelationContexts {
+
+  private final List<CorrelationContext> contexts = new ArrayList<>();
+
+  /**
+   * Gets the rules of the enabled groups, setting to their extractors and replacements the
+   * contexts they support.
+   */
+  List<CorrelationRule> wireEnabledRules(List<RulesGroup> groups,
+      CorrelationComponentsRegistry registry) {
+    List<CorrelationRule> rules = new ArrayList<>();
+    for (RulesGroup group : groups) {
+      if (!group.isEnable()) {
+        continue;
+      }
+      for (CorrelationRule rule : group.getRules()) {
+        wire(rule.getCorrelationExtractor(), registry);
+        wire(rule.getCorrelationReplacement(), registry);
+        rules.add(rule);
+      }
+    }
+    return rules;
+  }
+
+  private <T extends CorrelationContext> void wire(CorrelationRulePartTestElement<T> part,
+      CorrelationComponentsRegistry registry) {
+    if (part == null || part.getSupportedContext() == null) {
+      return;
+    }
+    // parts only support contexts of the type they take
+    @SuppressWarnings("unchecked")
+    T context = (T) getContext(part.getSupportedContext(), registry);
+    part.setContext(context);
+  }
+
+  private CorrelationContext getContext(Class<? extends CorrelationContext> contextClass,
+      CorrelationComponentsRegistry registry) {
+    for (CorrelationContext context : contexts) {
+      if (context.getClass().equals(contextClass)) {
+        return context;
+      }
+    }
+    CorrelationContext context = registry.getContext(contextClass);
+    contexts.add(context);
+    return context;
+  }
+
+  List<CorrelationContext> getContexts() {
+    return contexts;
+  }
+
+  void reset() {
+    contexts.forEach(CorrelationContext::reset);
+  }
+
+}
@@ -1,26 +1,38 @@
 package com.blazemeter.jmeter.correlation.core;
 
+import com.blazemeter.jmeter.correlation.core.extractors.ResultFieldCache;
+import com.blazemeter.jmeter.correlation.core.extractors.SharedRegexExtractors;
+import com.blazemeter.jmeter.correlation.core.replacements.CorrelationReplacement;
 import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
 import com.helger.commons.annotation.VisibleForTesting;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import org.apache.jmeter.extractor.RegexExtractor;
 import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterContextService;
 import org.apache.jmeter.threads.JMeterVariables;
 import org.apache.jmeter.util.JMeterUtils;
-import org.apache.oro.text.MalformedCachePatternException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class CorrelationEngine {
 
+  private static final String RUNTIME_EXTRACTION_PROPERTY = "CorrelationEngine.runtimeExtraction";
+  private static final String SHARE_EXTRACTORS_PROPERTY = "CorrelationEngine.shareExtractors";
+  private static final String MAX_VARIABLE_GENERATIONS_PROPERTY =
+      "CorrelationEngine.maxVariableGenerations";
   private static final Logger LOG = LoggerFactory.getLogger(CorrelationEngine.class);
-  private final List<CorrelationContext> initializedContexts = new ArrayList<>();
-  private JMeterVariables vars = new JMeterVariables();
+
+  private final CorrelationContexts contexts = new CorrelationContexts();
+  private JMeterVariables vars = buildVariables();
   private final List<CorrelationRule> rules;
+  private volatile CorrelationPlan plan = CorrelationPlan.EMPTY;
+  private ContentTypeFilter contentTypeFilter = ContentTypeFilter.compile(null);
+  private volatile boolean runtimeExtraction;
+  private volatile boolean shareExtractors;
+  private final SharedRegexExtractors sharedExtractors = new SharedRegexExtractors();
 
   public CorrelationEngine() {
     rules = new ArrayList<>();
@@ -30,90 +42,79 @@ public class CorrelationEngine {
   public void setCorrelationRules(List<RulesGroup> groups,
       CorrelationComponentsRegistry registry) {
     rules.clear();
-    groups.stream()
-        .filter(RulesGroup::isEnable)
-        .forEach(g -> g.getRules()
-            .forEach(r -> {
-              updateCorrelationContext(r.getCorrelationExtractor(), registry);
-              updateCorrelationContext(r.getCorrelationReplacement(), registry);
-              rules.add(r);
-            }));
+    rules.addAll(contexts.wireEnabledRules(groups, registry));
+    plan = CorrelationPlan.compile(rules, contexts.getContexts());
+    runtimeExtraction = JMeterUtils.getPropDefault(RUNTIME_EXTRACTION_PROPERTY, false);
+    shareExtractors = JMeterUtils.getPropDefault(SHARE_EXTRACTORS_PROPERTY, false);
   }
 
-  private void updateCorrelationContext(CorrelationRulePartTestElement rulePartTestElement,
-      CorrelationComponentsRegistry registry) {
-    if (rulePartTestElement != null && rulePartTestElement.getSupportedContext() != null) {
-      rulePartTestElement
-          .setContext(getSupportedContext(rulePartTestElement.getSupportedContext(), registry));
-    }
-  }
-
-  private CorrelationContext getSupportedContext(
-      Class<? extends CorrelationContext> requestedContextClass,
-      CorrelationComponentsRegistry registry) {
-    Optional<CorrelationContext> supportedContext = initializedContexts.stream()
-        .filter(c -> c.getClass().equals(requestedContextClass))
-        .findFirst();
-    if (supportedContext.isPresent()) {
-      return supportedContext.get();
-    } else {
-      CorrelationContext context = registry.getContext(requestedContextClass);
-      initializedContexts.add(context);
-      return context;
-    }
+  private static CorrelationVariables buildVariables() {
+    return new CorrelationVariables(
+        JMeterUtils.getPropDefault(MAX_VARIABLE_GENERATIONS_PROPERTY, 0));
   }
 
   public void reset() {
-    vars = new JMeterVariables();
+    vars = buildVariables();
     JMeterContextService.getContext().setVariables(vars);
-    initializedContexts.forEach(CorrelationContext::reset);
+    contexts.reset();
+    sharedExtractors.clear();
   }
 
   public void process(HTTPSamplerBase sampler, List<TestElement> children, SampleResult result,
       String responseFilter) {
     JMeterContextService.getContext().setVariables(vars);
-    rules.stream()
-        .filter(r -> r.isEnabled() && r.getCorrelationReplacement() != null)
-        .forEach(r -> r.getCorrelationReplacement().process(sampler, children, result, vars));
-
-    initializedContexts.forEach(c -> c.update(result));
-
-    if (isContentTypeAllowed(result, responseFilter)) {
-      rules.stream()
-          .filter(r -> r.isEnabled() && r.getCorrelationExtractor() != null)
-          .forEach(r -> r.getCorrelationExtractor().process(sampler, children, result, vars));
+    if (vars instanceof CorrelationVariables) {
+      ((CorrelationVariables) vars).clearLookupMemo();
+    }
+    CorrelationPlan currentPlan = plan;
+    for (CorrelationReplacement<?> replacement : currentPlan.getReplacements()) {
+      replacement.process(sampler, children, result, vars);
     }
-  }
 
-  private boolean isContentTypeAllowed(SampleResult result, String filterRegex) {
-    if (filterRegex == null || filterRegex.isEmpty()) {
-      return true;
+    ResultFieldCache fields = new ResultFieldCache(result);
+    for (CorrelationContext context : currentPlan.getContexts()) {
+      context.update(result, fields);
     }
 
-    String sampleContentType = result.getContentType();
-    if (sampleContentType == null || sampleContentType.isEmpty()) {
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("No Content-type found for : {}.", result.getUrlAsString());
+    if (getContentTypeFilter(responseFilter).isAllowed(result)) {
+      int firstExtractionChildIndex = children.size();
+      currentPlan.getExtractionStage().process(sampler, children, vars, fields);
+      /*
+       extractions are made while replaying by a CorrelationTemplatePostProcessor, so we only need
+       the values extracted while recording
+       */
+      if (runtimeExtraction) {
+        children.subList(firstExtractionChildIndex, children.size()).clear();
+      } else if (shareExtractors) {
+        sharedExtractors.share(children, firstExtractionChildIndex);
       }
-      return true;
     }
+  }
 
-    LOG.debug("Content-type to filter: {}.", sampleContentType);
-
-    String[] responseTypeFilter = filterRegex.split(",");
-    for (String filter : responseTypeFilter) {
-      try {
-        if (!JMeterUtils.getMatcher()
-            .contains(sampleContentType, JMeterUtils.getPatternCache().getPattern(filter, 32784))) {
-          return false;
-        }
-      } catch (MalformedCachePatternException ex) {
-        LOG.warn("Skipped invalid content pattern: {}", filterRegex, ex);
-        return false;
-      }
+  /**
+   * Gets the Regex Extractors shared by the recorded samplers since the last call, which need to
+   * be added at the level of the recording target controller.
+   *
+   * @see SharedRegexExtractors
+   */
+  public List<RegexExtractor> pollSharedExtractors() {
+    return sharedExtractors.pollNewSharedExtractors();
+  }
+
+  private ContentTypeFilter getContentTypeFilter(String responseFilter) {
+    if (!contentTypeFilter.isCompiledFrom(responseFilter)) {
+      contentTypeFilter = ContentTypeFilter.compile(responseFilter);
     }
+    return contentTypeFilter;
+  }
 
-    return true;
+  public void logVariablesMetrics() {
+    if (vars instanceof CorrelationVariables) {
+      CorrelationVariables correlationVars = (CorrelationVariables) vars;
+      LOG.info("Correlation variables: {} stored, {} distinct values, {} evicted.",
+          correlationVars.getVariablesCount(), correlationVars.getIndexedValuesCount(),
+          correlationVars.getEvictedCount());
+    }
   }
 
   @VisibleForTesting
@@ -123,12 +124,30 @@ public class CorrelationEngine {
 
   @VisibleForTesting
   public List<CorrelationContext> getInitializedContexts() {
-    return initializedContexts;
+    return contexts.getContexts();
   }
 
   @VisibleForTesting
   public void updateContexts(SampleResult sampleResult) {
-    initializedContexts.forEach(c -> c.update(sampleResult));
+    contexts.getContexts().forEach(c -> c.update(sampleResult));
+  }
+
+  /**
+   * Tells if extractions are left to a {@link CorrelationTemplatePostProcessor} while replaying,
+   * instead of adding extractors to the recorded samplers.
+   */
+  public boolean isRuntimeExtraction() {
+    return runtimeExtraction;
+  }
+
+  @VisibleForTesting
+  public void setRuntimeExtraction(boolean runtimeExtraction) {
+    this.runtimeExtraction = runtimeExtraction;
+  }
+
+  @VisibleForTesting
+  public void setShareExtractors(boolean shareExtractors) {
+    this.shareExtractors = shareExtractors;
   }
 
   @VisibleForTesting
@@ -0,0 +1,63 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import com.blazemeter.jmeter.correlation.core.extractors.CorrelationExtractor;
+import com.blazemeter.jmeter.correlation.core.extractors.ExtractionStage;
+import com.blazemeter.jmeter.correlation.core.replacements.CorrelationReplacement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the enabled rules, built once when the correlation rules are set.
+ *
+ * <p>Keeps the Correlation Replacements and initialized Contexts in flat arrays, so processing a
+ * sample is a plain indexed loop without filtering the rules again. Correlation Extractors are
+ * compiled into an {@link ExtractionStage}, which reads each response field only once.
+ */
+final class CorrelationPlan {
+
+  static final CorrelationPlan EMPTY = new CorrelationPlan(new CorrelationReplacement<?>[0],
+      ExtractionStage.EMPTY, new CorrelationContext[0]);
+
+  private final CorrelationReplacement<?>[] replacements;
+  private final ExtractionStage extractionStage;
+  private final CorrelationContext[] contexts;
+
+  private CorrelationPlan(CorrelationReplacement<?>[] replacements,
+      ExtractionStage extractionStage, CorrelationContext[] contexts) {
+    this.replacements = replacements;
+    this.extractionStage = extractionStage;
+    this.contexts = contexts;
+  }
+
+  static CorrelationPlan compile(List<CorrelationRule> rules,
+      List<CorrelationContext> contexts) {
+    List<CorrelationReplacement<?>> replacements = new ArrayList<>();
+    List<CorrelationExtractor<?>> extractors = new ArrayList<>();
+    for (CorrelationRule rule : rules) {
+      if (!rule.isEnabled()) {
+        continue;
+      }
+      if (rule.getCorrelationReplacement() != null) {
+        replacements.add(rule.getCorrelationReplacement());
+      }
+      if (rule.getCorrelationExtractor() != null) {
+        extractors.add(rule.getCorrelationExtractor());
+      }
+    }
+    return new CorrelationPlan(replacements.toArray(new CorrelationReplacement<?>[0]),
+        ExtractionStage.compile(extractors.toArray(new CorrelationExtractor<?>[0])),
+        contexts.toArray(new CorrelationContext[0]));
+  }
+
+  CorrelationReplacement<?>[] getReplacements() {
+    return replacements;
+  }
+
+  ExtractionStage getExtractionStage() {
+    return extractionStage;
+  }
+
+  CorrelationContext[] getContexts() {
+    return contexts;
+  }
+}
@@ -0,0 +1,182 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import com.blazemeter.jmeter.correlation.CorrelationProxyControl;
+import com.blazemeter.jmeter.correlation.core.templates.LocalConfiguration;
+import com.blazemeter.jmeter.correlation.core.templates.LocalCorrelationTemplatesRegistry;
+import com.blazemeter.jmeter.correlation.core.templates.TemplateVersion;
+import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.apache.jmeter.engine.event.LoopIterationEvent;
+import org.apache.jmeter.engine.event.LoopIterationListener;
+import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.samplers.Sampler;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testbeans.gui.TestBeanGUI;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.TestStateListener;
+import org.apache.jmeter.threads.JMeterContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Post Processor that makes the extractions of the rules of an installed Correlation Template
+ * while replaying a test plan, instead of having extractors added to each recorded sampler.
+ *
+ * <p>The template is loaded only once per test and shared by all the threads, which just build
+ * their own copy of the rules (since rules and contexts keep state) the first time they use it.
+ * Contexts are reset on each iteration, so multivalued variables get the same names they got
+ * while recording.
+ *
+ * <p>The recorder stops adding extractors to the samplers when the
+ * <code>CorrelationEngine.runtimeExtraction</code> JMeter property is set to true, and adds this
+ * element instead to the recording target controller, with the installed template that has the
+ * same extraction rules as the recorder.
+ */
+public class CorrelationTemplatePostProcessor extends AbstractTestElement implements
+    PostProcessor, TestBean, TestStateListener, LoopIterationListener {
+
+  public static final String REPOSITORY_ID_PROPERTY = "repositoryId";
+  public static final String TEMPLATE_ID_PROPERTY = "templateId";
+  public static final String TEMPLATE_VERSION_PROPERTY = "templateVersion";
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(CorrelationTemplatePostProcessor.class);
+  private static final Map<String, Optional<TemplateVersion>> TEMPLATES =
+      new ConcurrentHashMap<>();
+
+  private String repositoryId = LocalConfiguration.LOCAL_REPOSITORY_NAME;
+  private String templateId = "";
+  private String templateVersion = "";
+  private transient ReplayCorrelationEngine engine;
+
+  /**
+   * Creates a post processor which makes the extractions of the given template.
+   *
+   * @param template installed template with the rules to apply
+   * @return the post processor
+   */
+  public static CorrelationTemplatePostProcessor fromTemplate(TemplateVersion template) {
+    CorrelationTemplatePostProcessor ret = new CorrelationTemplatePostProcessor();
+    ret.setProperty(GUI_CLASS, TestBeanGUI.class.getName());
+    ret.setName("Correlation Template " + template.getId());
+    ret.setProperty(REPOSITORY_ID_PROPERTY, template.getRepositoryId());
+    ret.setProperty(TEMPLATE_ID_PROPERTY, template.getId());
+    ret.setProperty(TEMPLATE_VERSION_PROPERTY, template.getVersion());
+    return ret;
+  }
+
+  /**
+   * Tells if the given element is a post processor making the extractions of the given template.
+   */
+  public static boolean isFromTemplate(TestElement element, TemplateVersion template) {
+    return element instanceof CorrelationTemplatePostProcessor
+        && template.getRepositoryId().equals(element.getPropertyAsString(REPOSITORY_ID_PROPERTY))
+        && template.getId().equals(element.getPropertyAsString(TEMPLATE_ID_PROPERTY))
+        && template.getVersion().equals(element.getPropertyAsString(TEMPLATE_VERSION_PROPERTY));
+  }
+
+  @Override
+  public void testStarted() {
+    findTemplate();
+  }
+
+  @Override
+  public void testStarted(String host) {
+    testStarted();
+  }
+
+  @Override
+  public void testEnded() {
+    TEMPLATES.clear();
+  }
+
+  @Override
+  public void testEnded(String host) {
+    testEnded();
+  }
+
+  @Override
+  public void iterationStart(LoopIterationEvent iterEvent) {
+    if (engine != null) {
+      engine.reset();
+    }
+  }
+
+  @Override
+  public void process() {
+    JMeterContext context = getThreadContext();
+    SampleResult result = context.getPreviousResult();
+    Sampler sampler = context.getCurrentSampler();
+    if (result == null || !(sampler instanceof HTTPSamplerBase)) {
+      return;
+    }
+    getEngine().process((HTTPSamplerBase) sampler, result, context.getVariables());
+  }
+
+  private ReplayCorrelationEngine getEngine() {
+    if (engine == null) {
+      Optional<TemplateVersion> template = findTemplate();
+      List<RulesGroup> groups = template
+          .map(t -> t.getGroups().stream()
+              .map(g -> g.buildTestElement().getRulesGroup())
+              .collect(Collectors.toList()))
+          .orElse(Collections.emptyList());
+      engine = new ReplayCorrelationEngine(groups,
+          template.map(TemplateVersion::getResponseFilters).orElse(""),
+          CorrelationComponentsRegistry.getInstance());
+    }
+    return engine;
+  }
+
+  private Optional<TemplateVersion> findTemplate() {
+    return TEMPLATES.computeIfAbsent(repositoryId + "/" + templateId + "/" + templateVersion,
+        k -> loadTemplate(repositoryId, templateId, templateVersion));
+  }
+
+  private static Optional<TemplateVersion> loadTemplate(String repositoryId, String templateId,
+      String templateVersion) {
+    try {
+      return new LocalCorrelationTemplatesRegistry(
+          new LocalConfiguration(CorrelationProxyControl.getTemplateDirectoryPath()))
+          .findByID(repositoryId, templateId, templateVersion);
+    } catch (IOException e) {
+      LOG.error("Could not load correlation template {} {} from repository {}. No extractions "
+          + "will be made.", templateId, templateVersion, repositoryId, e);
+      return Optional.empty();
+    }
+  }
+
+  public String getRepositoryId() {
+    return repositoryId;
+  }
+
+  public void setRepositoryId(String repositoryId) {
+    this.repositoryId = repositoryId;
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  public void setTemplateId(String templateId) {
+    this.templateId = templateId;
+  }
+
+  public String getTemplateVersion() {
+    return templateVersion;
+  }
+
+  public void setTemplateVersion(String templateVersion) {
+    this.templateVersion = templateVersion;
+  }
+
+}
@@ -0,0 +1,26 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import com.blazemeter.jmeter.correlation.core.templates.LocalConfiguration;
+import java.beans.PropertyDescriptor;
+import org.apache.jmeter.testbeans.BeanInfoSupport;
+
+public class CorrelationTemplatePostProcessorBeanInfo extends BeanInfoSupport {
+
+  public CorrelationTemplatePostProcessorBeanInfo() {
+    super(CorrelationTemplatePostProcessor.class);
+    createPropertyGroup("template", new String[]{
+        CorrelationTemplatePostProcessor.REPOSITORY_ID_PROPERTY,
+        CorrelationTemplatePostProcessor.TEMPLATE_ID_PROPERTY,
+        CorrelationTemplatePostProcessor.TEMPLATE_VERSION_PROPERTY});
+    PropertyDescriptor p = property(CorrelationTemplatePostProcessor.REPOSITORY_ID_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, LocalConfiguration.LOCAL_REPOSITORY_NAME);
+    p = property(CorrelationTemplatePostProcessor.TEMPLATE_ID_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+    p = property(CorrelationTemplatePostProcessor.TEMPLATE_VERSION_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+  }
+
+}
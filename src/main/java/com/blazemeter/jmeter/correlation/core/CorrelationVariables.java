@@ -0,0 +1,315 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Variables used by the {@link CorrelationEngine} during the recording, which keep an index from
+ * each stored value to the names of the variables that hold it.
+ *
+ * <p>The index allows Correlation Replacements to know, with a single pass over a property of the
+ * request, if it contains any of the values extracted so far, and skip evaluating their regexes
+ * over the ones that don't. Counters of multivalued variables (the ones ending with
+ * <code>_matchNr</code>) are not indexed, since they are never replaced in requests.
+ *
+ * <p>Multivalued extractors store a new generation of variables (<code>name#N</code>, along with
+ * its <code>name#N_matchNr</code> and <code>name#N_M</code> variables) each time their value
+ * changes, so in long recordings the variables can grow without bound. When a maximum number of
+ * generations is set, only the last generations of each reference variable are kept, and the
+ * variables of older ones are evicted, along with their values in the index.
+ *
+ * <p>Variables of the matches of each reference variable (<code>name_N</code> and
+ * <code>name_matchNr</code>) are also grouped by its name, so they can be listed or removed
+ * without going through all the variables.
+ */
+public class CorrelationVariables extends JMeterVariables {
+
+  private static final String MATCH_NUMBER_SUFFIX = "_matchNr";
+  private static final int MAX_LOOKUP_MEMO_SIZE = 1024;
+  private static final char GENERATION_SEPARATOR = '#';
+
+  private final Map<String, Set<String>> namesByValue = new HashMap<>();
+  private final Map<String, Boolean> lookupMemo = new HashMap<>();
+  private final int maxGenerations;
+  private final Map<String, Set<String>> matchNamesByReference = new HashMap<>();
+  private final Map<String, Deque<String>> generationsByName = new HashMap<>();
+  private final Map<String, Set<String>> namesByGeneration = new HashMap<>();
+  private MultiLiteralMatcher valuesMatcher;
+  private long evictedCount;
+
+  public CorrelationVariables() {
+    this(0);
+  }
+
+  /**
+   * Creates the variables keeping a maximum number of generations for each multivalued reference
+   * variable.
+   *
+   * @param maxGenerations number of generations to keep, or 0 to keep all of them
+   */
+  public CorrelationVariables(int maxGenerations) {
+    this.maxGenerations = maxGenerations;
+    for (Entry<String, Object> entry : entrySet()) {
+      addToIndex(entry.getKey(), entry.getValue());
+      addToMatchNames(entry.getKey());
+    }
+  }
+
+  @Override
+  public void put(String key, String value) {
+    putObject(key, value);
+  }
+
+  @Override
+  public void putObject(String key, Object value) {
+    Object previous = getObject(key);
+    removeFromIndex(key, previous);
+    super.putObject(key, value);
+    addToIndex(key, value);
+    if (previous == null) {
+      addToMatchNames(key);
+      if (maxGenerations > 0) {
+        addToGeneration(key);
+      }
+    }
+  }
+
+  @Override
+  public void putAll(Map<String, ?> vars) {
+    for (Entry<String, ?> entry : vars.entrySet()) {
+      putObject(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public Object remove(String key) {
+    Object value = super.remove(key);
+    removeFromIndex(key, value);
+    if (value != null) {
+      removeFromMatchNames(key);
+      if (maxGenerations > 0) {
+        removeFromGeneration(key);
+      }
+    }
+    return value;
+  }
+
+  private void addToMatchNames(String key) {
+    String referenceName = findMatchReferenceName(key);
+    if (referenceName != null) {
+      matchNamesByReference.computeIfAbsent(referenceName, n -> new HashSet<>()).add(key);
+    }
+  }
+
+  // gets the name of name_N and name_matchNr variables, or null for any other variable
+  private static String findMatchReferenceName(String key) {
+    int separatorIndex = key.lastIndexOf('_');
+    if (separatorIndex <= 0 || separatorIndex == key.length() - 1) {
+      return null;
+    }
+    if (!key.endsWith(MATCH_NUMBER_SUFFIX)) {
+      for (int i = separatorIndex + 1; i < key.length(); i++) {
+        if (!Character.isDigit(key.charAt(i))) {
+          return null;
+        }
+      }
+    }
+    return key.substring(0, separatorIndex);
+  }
+
+  private void removeFromMatchNames(String key) {
+    String referenceName = findMatchReferenceName(key);
+    Set<String> names = referenceName != null ? matchNamesByReference.get(referenceName) : null;
+    if (names != null && names.remove(key) && names.isEmpty()) {
+      matchNamesByReference.remove(referenceName);
+    }
+  }
+
+  private void addToIndex(String key, Object value) {
+    if (!(value instanceof String) || key.endsWith(MATCH_NUMBER_SUFFIX)) {
+      return;
+    }
+    Set<String> names = namesByValue.get(value);
+    if (names == null) {
+      names = new LinkedHashSet<>();
+      namesByValue.put((String) value, names);
+      invalidateValuesLookup();
+    }
+    names.add(key);
+  }
+
+  private void removeFromIndex(String key, Object value) {
+    if (!(value instanceof String)) {
+      return;
+    }
+    Set<String> names = namesByValue.get(value);
+    if (names != null && names.remove(key) && names.isEmpty()) {
+      namesByValue.remove(value);
+      invalidateValuesLookup();
+    }
+  }
+
+  private void addToGeneration(String key) {
+    String generation = findGeneration(key);
+    if (generation == null) {
+      return;
+    }
+    Set<String> names = namesByGeneration.get(generation);
+    if (names != null) {
+      names.add(key);
+      return;
+    }
+    names = new HashSet<>();
+    names.add(key);
+    namesByGeneration.put(generation, names);
+    Deque<String> generations = generationsByName.computeIfAbsent(
+        generation.substring(0, generation.lastIndexOf(GENERATION_SEPARATOR)),
+        n -> new ArrayDeque<>());
+    generations.addLast(generation);
+    while (generations.size() > maxGenerations) {
+      evictGeneration(generations.pollFirst());
+    }
+  }
+
+  /*
+   gets the name#N prefix of name#N, name#N_matchNr and name#N_M variables, or null if the key
+   doesn't belong to a generation of a multivalued variable
+   */
+  private static String findGeneration(String key) {
+    int separatorIndex = key.lastIndexOf(GENERATION_SEPARATOR);
+    if (separatorIndex <= 0) {
+      return null;
+    }
+    int end = separatorIndex + 1;
+    while (end < key.length() && Character.isDigit(key.charAt(end))) {
+      end++;
+    }
+    if (end == separatorIndex + 1 || end < key.length() && key.charAt(end) != '_') {
+      return null;
+    }
+    return key.substring(0, end);
+  }
+
+  private void evictGeneration(String generation) {
+    Set<String> names = namesByGeneration.remove(generation);
+    for (String name : names) {
+      Object value = super.remove(name);
+      if (value != null) {
+        removeFromIndex(name, value);
+        removeFromMatchNames(name);
+        evictedCount++;
+      }
+    }
+  }
+
+  private void removeFromGeneration(String key) {
+    String generation = findGeneration(key);
+    Set<String> names = generation != null ? namesByGeneration.get(generation) : null;
+    if (names != null) {
+      names.remove(key);
+    }
+  }
+
+  private void invalidateValuesLookup() {
+    valuesMatcher = null;
+    lookupMemo.clear();
+  }
+
+  /**
+   * Gets the names of the variables which hold the given value.
+   *
+   * @param value value to look for
+   * @return the names of the variables, in the order they got the value, or an empty set when no
+   * variable holds it
+   */
+  public Set<String> getNamesByValue(String value) {
+    Set<String> names = namesByValue.get(value);
+    return names != null ? Collections.unmodifiableSet(names) : Collections.emptySet();
+  }
+
+  /**
+   * Checks if the input contains any of the stored values.
+   *
+   * <p>Results are remembered until the stored values change, since the same property is
+   * usually checked by every Correlation Replacement.
+   *
+   * @param input text to look the values in
+   * @return true if at least one of the values is contained in the input
+   */
+  public boolean containsAnyValue(String input) {
+    Boolean contained = lookupMemo.get(input);
+    if (contained == null) {
+      if (valuesMatcher == null) {
+        valuesMatcher = new MultiLiteralMatcher(namesByValue.keySet());
+      }
+      contained = valuesMatcher.containsAny(input);
+      if (lookupMemo.size() >= MAX_LOOKUP_MEMO_SIZE) {
+        lookupMemo.clear();
+      }
+      lookupMemo.put(input, contained);
+    }
+    return contained;
+  }
+
+  /**
+   * Discards remembered lookups, so they don't keep references to the properties of previous
+   * requests.
+   */
+  public void clearLookupMemo() {
+    lookupMemo.clear();
+  }
+
+  /**
+   * Gets the names of the variables of the matches of a reference variable.
+   *
+   * @param referenceName name of the reference variable
+   * @return the names of the <code>referenceName_N</code> and <code>referenceName_matchNr</code>
+   * variables, or an empty set when there are none
+   */
+  public Set<String> getMatchVariableNames(String referenceName) {
+    Set<String> names = matchNamesByReference.get(referenceName);
+    return names != null ? Collections.unmodifiableSet(names) : Collections.emptySet();
+  }
+
+  /**
+   * Removes the variables of the matches of a reference variable.
+   *
+   * @param referenceName name of the reference variable
+   */
+  public void removeMatchVariables(String referenceName) {
+    Set<String> names = matchNamesByReference.remove(referenceName);
+    if (names != null) {
+      names.forEach(this::remove);
+    }
+  }
+
+  /**
+   * Gets the number of stored variables.
+   */
+  public int getVariablesCount() {
+    return entrySet().size();
+  }
+
+  /**
+   * Gets the number of distinct values in the index.
+   */
+  public int getIndexedValuesCount() {
+    return namesByValue.size();
+  }
+
+  /**
+   * Gets the number of variables evicted since the variables were created, for exceeding the
+   * maximum number of generations.
+   */
+  public long getEvictedCount() {
+    return evictedCount;
+  }
+}
@@ -0,0 +1,192 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton that checks, in a single pass over an input, if it contains any of a set
+ * of literals, or which ones of them it contains.
+ *
+ * <p>Transitions of each state are kept in sorted arrays to avoid boxing characters while
+ * scanning, since it is used over every property of every recorded request.
+ */
+public final class MultiLiteralMatcher {
+
+  private static final char[] NO_CHARS = new char[0];
+  private static final int[] NO_STATES = new int[0];
+  private static final int[] NO_LITERALS = new int[0];
+
+  private final char[][] transitionChars;
+  private final int[][] transitionStates;
+  private final int[] failures;
+  private final boolean[] terminals;
+  // positions of the literals found when reaching each state, including the ones of its failures
+  private final int[][] stateLiterals;
+  private final int[] emptyLiterals;
+  private final int literalsCount;
+  private final boolean matchesEverything;
+
+  public MultiLiteralMatcher(Collection<String> literals) {
+    List<char[]> chars = new ArrayList<>();
+    List<int[]> states = new ArrayList<>();
+    List<int[]> literalsOfStates = new ArrayList<>();
+    List<Integer> empty = new ArrayList<>();
+    chars.add(NO_CHARS);
+    states.add(NO_STATES);
+    literalsOfStates.add(NO_LITERALS);
+    int position = 0;
+    for (String literal : literals) {
+      if (literal.isEmpty()) {
+        empty.add(position++);
+        continue;
+      }
+      int state = 0;
+      for (int i = 0; i < literal.length(); i++) {
+        char c = literal.charAt(i);
+        int next = findTransition(chars.get(state), states.get(state), c);
+        if (next < 0) {
+          next = chars.size();
+          chars.add(NO_CHARS);
+          states.add(NO_STATES);
+          literalsOfStates.add(NO_LITERALS);
+          addTransition(chars, states, state, c, next);
+        }
+        state = next;
+      }
+      literalsOfStates.set(state, append(literalsOfStates.get(state), position++));
+    }
+    literalsCount = position;
+    emptyLiterals = empty.stream().mapToInt(Integer::intValue).toArray();
+    matchesEverything = emptyLiterals.length > 0;
+    transitionChars = chars.toArray(new char[0][]);
+    transitionStates = states.toArray(new int[0][]);
+    stateLiterals = literalsOfStates.toArray(new int[0][]);
+    terminals = new boolean[stateLiterals.length];
+    for (int i = 0; i < terminals.length; i++) {
+      terminals[i] = stateLiterals[i].length > 0;
+    }
+    failures = new int[terminals.length];
+    buildFailures();
+  }
+
+  private static int[] append(int[] values, int value) {
+    int[] ret = Arrays.copyOf(values, values.length + 1);
+    ret[values.length] = value;
+    return ret;
+  }
+
+  private static int findTransition(char[] chars, int[] states, char c) {
+    int index = Arrays.binarySearch(chars, c);
+    return index >= 0 ? states[index] : -1;
+  }
+
+  private static void addTransition(List<char[]> chars, List<int[]> states, int state, char c,
+      int next) {
+    char[] stateChars = chars.get(state);
+    int[] stateTargets = states.get(state);
+    int insertion = -Arrays.binarySearch(stateChars, c) - 1;
+    char[] newChars = new char[stateChars.length + 1];
+    int[] newTargets = new int[stateTargets.length + 1];
+    System.arraycopy(stateChars, 0, newChars, 0, insertion);
+    System.arraycopy(stateTargets, 0, newTargets, 0, insertion);
+    newChars[insertion] = c;
+    newTargets[insertion] = next;
+    System.arraycopy(stateChars, insertion, newChars, insertion + 1,
+        stateChars.length - insertion);
+    System.arraycopy(stateTargets, insertion, newTargets, insertion + 1,
+        stateTargets.length - insertion);
+    chars.set(state, newChars);
+    states.set(state, newTargets);
+  }
+
+  private void buildFailures() {
+    int[] queue = new int[terminals.length];
+    int head = 0;
+    int tail = 0;
+    for (int child : transitionStates[0]) {
+      failures[child] = 0;
+      queue[tail++] = child;
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      char[] chars = transitionChars[state];
+      int[] targets = transitionStates[state];
+      for (int i = 0; i < chars.length; i++) {
+        int child = targets[i];
+        int failure = failures[state];
+        int next = findTransition(transitionChars[failure], transitionStates[failure], chars[i]);
+        while (next < 0 && failure != 0) {
+          failure = failures[failure];
+          next = findTransition(transitionChars[failure], transitionStates[failure], chars[i]);
+        }
+        failures[child] = next >= 0 ? next : 0;
+        terminals[child] |= terminals[failures[child]];
+        if (stateLiterals[failures[child]].length > 0) {
+          stateLiterals[child] = concat(stateLiterals[child], stateLiterals[failures[child]]);
+        }
+        queue[tail++] = child;
+      }
+    }
+  }
+
+  private static int[] concat(int[] first, int[] second) {
+    int[] ret = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, ret, first.length, second.length);
+    return ret;
+  }
+
+  boolean containsAny(String input) {
+    if (matchesEverything) {
+      return true;
+    }
+    int state = 0;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      int next = findTransition(transitionChars[state], transitionStates[state], c);
+      while (next < 0 && state != 0) {
+        state = failures[state];
+        next = findTransition(transitionChars[state], transitionStates[state], c);
+      }
+      state = next >= 0 ? next : 0;
+      if (terminals[state]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds which of the literals are contained in the input, in a single pass over it which stops
+   * as soon as all of them are found.
+   *
+   * @param input text to look for the literals in
+   * @return flags telling if each literal is contained in the input, in the same order the
+   * literals were given to the matcher
+   */
+  public boolean[] findContained(CharSequence input) {
+    boolean[] ret = new boolean[literalsCount];
+    for (int literal : emptyLiterals) {
+      ret[literal] = true;
+    }
+    int pendingCount = literalsCount - emptyLiterals.length;
+    int state = 0;
+    for (int i = 0; i < input.length() && pendingCount > 0; i++) {
+      char c = input.charAt(i);
+      int next = findTransition(transitionChars[state], transitionStates[state], c);
+      while (next < 0 && state != 0) {
+        state = failures[state];
+        next = findTransition(transitionChars[state], transitionStates[state], c);
+      }
+      state = next >= 0 ? next : 0;
+      for (int literal : stateLiterals[state]) {
+        if (!ret[literal]) {
+          ret[literal] = true;
+          pendingCount--;
+        }
+      }
+    }
+    return ret;
+  }
+}
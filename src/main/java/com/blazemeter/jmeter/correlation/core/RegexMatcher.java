@@ -1,11 +1,11 @@
 package com.blazemeter.jmeter.correlation.core;
 
+import com.blazemeter.jmeter.correlation.core.regex.CompiledRegex;
+import com.blazemeter.jmeter.correlation.core.regex.RegexEngine;
+import com.blazemeter.jmeter.correlation.core.regex.RegexMatches;
 import java.util.ArrayList;
-import org.apache.jmeter.util.JMeterUtils;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
-import org.apache.oro.text.regex.Perl5Matcher;
+import org.apache.oro.text.MalformedCachePatternException;
+import org.apache.oro.text.regex.MalformedPatternException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,58 +14,92 @@ public class RegexMatcher {
   private static final Logger LOG = LoggerFactory.getLogger(RegexMatcher.class);
   private final String regex;
   private final int group;
+  private final RegexEngine engine;
+  private final RegexPrefilter prefilter;
+  private volatile CompiledRegex compiledRegex;
 
   public RegexMatcher(String regex, int group) {
+    this(regex, group, RegexEngine.getDefault());
+  }
+
+  public RegexMatcher(String regex, int group, RegexEngine engine) {
     this.regex = regex;
     this.group = group;
+    this.engine = engine;
+    this.prefilter = RegexPrefilter.compile(regex);
   }
 
-  public String findMatch(String input, int matchNumber) {
-    Perl5Matcher matcher = JMeterUtils.getMatcher();
-    Pattern pattern = null;
-    try {
-      pattern = JMeterUtils.getPatternCache().getPattern(regex, Perl5Compiler.READ_ONLY_MASK);
-      PatternMatcherInput matcherInput = new PatternMatcherInput(input);
-      int matchCount = 0;
-      while (matchCount < matchNumber && matcher.contains(matcherInput, pattern)) {
-        matchCount++;
-      }
-      if (matchNumber > matchCount && matchCount != 0) {
-        LOG.warn("Match number {} is bigger than actual matches {}, return value is null",
-                matchNumber, matchCount);
-        return null;
-      }
+  public String getRegex() {
+    return regex;
+  }
 
-      if (matchCount != matchNumber) {
-        return null;
-      }
+  public int getGroup() {
+    return group;
+  }
 
-      if (group < 0) {
-        LOG.warn("Group number {} is invalid. It has to be a positive number. Using 1 instead.",
-                group);
-        return matcher.getMatch().group(1);
-      }
+  public RegexEngine getEngine() {
+    return engine;
+  }
+
+  public RegexPrefilter getPrefilter() {
+    return prefilter;
+  }
+
+  public String findMatch(CharSequence input, int matchNumber) {
+    CompiledRegex compiled = getCompiledRegex();
+    int matchStart = prefilter.findMatchStart(input);
+    if (matchStart < 0) {
+      return null;
+    }
+    RegexMatches matches = compiled.matcher(input, matchStart);
+    int matchCount = 0;
+    while (matchCount < matchNumber && matches.find()) {
+      matchCount++;
+    }
+    if (matchNumber > matchCount && matchCount != 0) {
+      LOG.warn("Match number {} is bigger than actual matches {}, return value is null",
+              matchNumber, matchCount);
+      return null;
+    }
 
-      return matcher.getMatch().group(group);
-    } finally {
-      JMeterUtils.clearMatcherMemory(JMeterUtils.getMatcher(), pattern);
+    if (matchCount != matchNumber) {
+      return null;
     }
+
+    if (group < 0) {
+      LOG.warn("Group number {} is invalid. It has to be a positive number. Using 1 instead.",
+              group);
+      return matches.group(1);
+    }
+
+    return matches.group(group);
   }
 
-  public ArrayList<String> findMatches(String input) {
+  public ArrayList<String> findMatches(CharSequence input) {
     ArrayList<String> matches = new ArrayList<>();
-    Perl5Matcher matcher = JMeterUtils.getMatcher();
-    Pattern pattern = null;
-    try {
-      pattern = JMeterUtils.getPatternCache().getPattern(regex, Perl5Compiler.READ_ONLY_MASK);
-      PatternMatcherInput matcherInput = new PatternMatcherInput(input);
-      while (matcher.contains(matcherInput, pattern)) {
-        matches.add(matcher.getMatch().group(group));
-      }
+    CompiledRegex compiled = getCompiledRegex();
+    int matchStart = prefilter.findMatchStart(input);
+    if (matchStart < 0) {
       return matches;
-    } finally {
-      JMeterUtils.clearMatcherMemory(JMeterUtils.getMatcher(), pattern);
     }
+    RegexMatches regexMatches = compiled.matcher(input, matchStart);
+    while (regexMatches.find()) {
+      matches.add(regexMatches.group(group));
+    }
+    return matches;
+  }
+
+  private CompiledRegex getCompiledRegex() {
+    CompiledRegex compiled = compiledRegex;
+    if (compiled == null) {
+      try {
+        compiled = engine.compile(regex);
+      } catch (MalformedPatternException e) {
+        throw new MalformedCachePatternException(e.getMessage());
+      }
+      compiledRegex = compiled;
+    }
+    return compiled;
   }
 
 }
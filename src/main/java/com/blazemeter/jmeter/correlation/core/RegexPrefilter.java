@@ -0,0 +1,325 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cheap check, based on the literal texts that every match of a Regular Expression must contain,
+ * to avoid running the regex over inputs where it can't match.
+ *
+ * <p>The literals are taken from the top level sequence of the regex (eg: for <code>name="token"
+ * value="(.+?)"</code> it would be <code>name="token" value="</code> and <code>"</code>), so they
+ * have to appear in the input in that same order. Searching them relies on
+ * {@link String#indexOf(String)}, which is an intrinsic of the JVM and much faster than walking
+ * the input with the regex engine.
+ *
+ * <p>When the regex uses constructions where the required literals can't be safely determined
+ * (top level alternations, inline modifiers, back references, etc.), no literals are used and
+ * every input is considered a possible match.
+ *
+ * <p>It also tells if the first group of the regex always captures some text, so values compared
+ * against the captured one can't be empty.
+ */
+public final class RegexPrefilter {
+
+  private static final String FIXED_WIDTH_ESCAPES = "dDwWsSntrfe";
+  private static final String ANCHOR_ESCAPES = "bBAZzG";
+
+  private final String regex;
+  private final String[] literals;
+  private final int firstLiteralOffset;
+  private final boolean firstGroupNonEmpty;
+
+  private RegexPrefilter(String regex, String[] literals, int firstLiteralOffset,
+      boolean firstGroupNonEmpty) {
+    this.regex = regex;
+    this.literals = literals;
+    this.firstLiteralOffset = firstLiteralOffset;
+    this.firstGroupNonEmpty = firstGroupNonEmpty;
+  }
+
+  public static RegexPrefilter compile(String regex) {
+    Parser parser = new Parser(regex);
+    boolean firstGroupNonEmpty = isFirstGroupNonEmpty(regex);
+    return parser.parse() ? new RegexPrefilter(regex,
+        parser.literals.toArray(new String[0]), parser.firstLiteralOffset, firstGroupNonEmpty)
+        : new RegexPrefilter(regex, new String[0], -1, firstGroupNonEmpty);
+  }
+
+  private static boolean isFirstGroupNonEmpty(String regex) {
+    Parser groupFinder = new Parser(regex);
+    while (groupFinder.pos < regex.length()) {
+      char c = regex.charAt(groupFinder.pos);
+      if (c == '\\') {
+        groupFinder.pos += 2;
+      } else if (c == '[') {
+        if (!groupFinder.skipCharacterClass()) {
+          return false;
+        }
+      } else if (c == '(' && (groupFinder.pos + 1 >= regex.length()
+          || regex.charAt(groupFinder.pos + 1) != '?')) {
+        int groupStart = groupFinder.pos;
+        if (!groupFinder.skipGroup()) {
+          return false;
+        }
+        Parser groupParser = new Parser(regex.substring(groupStart + 1, groupFinder.pos - 1));
+        return groupParser.parse() && groupParser.requiredAtoms > 0;
+      } else {
+        groupFinder.pos++;
+      }
+    }
+    return false;
+  }
+
+  public String getRegex() {
+    return regex;
+  }
+
+  /**
+   * Gets the literals that every match of the regex contains, in the order they appear in it.
+   *
+   * @return the required literals, or an empty list when they can't be determined
+   */
+  public List<String> getLiterals() {
+    return Collections.unmodifiableList(Arrays.asList(literals));
+  }
+
+  /**
+   * Tells if the text captured by the first group of the regex can't be empty.
+   *
+   * @return true when every match of the first group captures at least one character, false when
+   * it can be empty or it can't be determined
+   */
+  public boolean isFirstGroupNonEmpty() {
+    return firstGroupNonEmpty;
+  }
+
+  /**
+   * Finds the position of the input from where a match of the regex could start.
+   *
+   * @param input text to be evaluated by the regex
+   * @return -1 when the input doesn't contain the required literals, otherwise an offset (0 when it
+   * can't be determined) where the regex evaluation can start from without missing any match
+   */
+  public int findMatchStart(CharSequence input) {
+    if (literals.length == 0 || input == null) {
+      return 0;
+    }
+    int firstHit = indexOf(input, literals[0], 0);
+    if (firstHit < 0) {
+      return -1;
+    }
+    int from = firstHit + literals[0].length();
+    for (int i = 1; i < literals.length; i++) {
+      int hit = indexOf(input, literals[i], from);
+      if (hit < 0) {
+        return -1;
+      }
+      from = hit + literals[i].length();
+    }
+    return firstLiteralOffset >= 0 ? Math.max(0, firstHit - firstLiteralOffset) : 0;
+  }
+
+  private static int indexOf(CharSequence input, String literal, int fromIndex) {
+    if (input instanceof String) {
+      return ((String) input).indexOf(literal, fromIndex);
+    }
+    int lastStart = input.length() - literal.length();
+    for (int start = fromIndex; start <= lastStart; start++) {
+      int i = 0;
+      while (i < literal.length() && input.charAt(start + i) == literal.charAt(i)) {
+        i++;
+      }
+      if (i == literal.length()) {
+        return start;
+      }
+    }
+    return -1;
+  }
+
+  private static final class Parser {
+
+    private final String regex;
+    private final List<String> literals = new ArrayList<>();
+    private final StringBuilder currentLiteral = new StringBuilder();
+    private int firstLiteralOffset = -1;
+    private int prefixWidth;
+    private int requiredAtoms;
+    private boolean fixedWidthPrefix = true;
+    private int pos;
+
+    private Parser(String regex) {
+      this.regex = regex;
+    }
+
+    private boolean parse() {
+      while (pos < regex.length()) {
+        char c = regex.charAt(pos);
+        boolean isLiteral = false;
+        boolean isFixedWidth = true;
+        switch (c) {
+          case '|':
+          case ')':
+          case '*':
+          case '+':
+          case '?':
+            return false;
+          case '(':
+            if (pos + 2 < regex.length() && regex.charAt(pos + 1) == '?'
+                && Character.isLetter(regex.charAt(pos + 2))) {
+              return false;
+            }
+            if (!skipGroup()) {
+              return false;
+            }
+            isFixedWidth = false;
+            break;
+          case '[':
+            if (!skipCharacterClass()) {
+              return false;
+            }
+            break;
+          case '.':
+            pos++;
+            break;
+          case '^':
+          case '$':
+            pos++;
+            isFixedWidth = false;
+            break;
+          case '\\':
+            if (pos + 1 >= regex.length()) {
+              return false;
+            }
+            c = regex.charAt(pos + 1);
+            if (Character.isLetterOrDigit(c)) {
+              if (ANCHOR_ESCAPES.indexOf(c) >= 0) {
+                isFixedWidth = false;
+              } else if (FIXED_WIDTH_ESCAPES.indexOf(c) < 0) {
+                return false;
+              }
+            } else {
+              isLiteral = true;
+            }
+            pos += 2;
+            break;
+          default:
+            isLiteral = true;
+            pos++;
+        }
+        int minRepetitions = parseQuantifier();
+        if (minRepetitions != 0 && (isLiteral || isFixedWidth)) {
+          requiredAtoms++;
+        }
+        if (isLiteral && minRepetitions != 0) {
+          currentLiteral.append(c);
+        } else if (firstLiteralOffset < 0 && currentLiteral.length() == 0 && literals.isEmpty()) {
+          if (isFixedWidth && minRepetitions == 1) {
+            prefixWidth++;
+          } else {
+            fixedWidthPrefix = false;
+          }
+        }
+        if (!isLiteral || minRepetitions != 1) {
+          addCurrentLiteral();
+        }
+      }
+      addCurrentLiteral();
+      return true;
+    }
+
+    private boolean skipGroup() {
+      int depth = 0;
+      while (pos < regex.length()) {
+        char c = regex.charAt(pos);
+        if (c == '\\') {
+          pos += 2;
+          continue;
+        }
+        if (c == '[') {
+          if (!skipCharacterClass()) {
+            return false;
+          }
+          continue;
+        }
+        pos++;
+        if (c == '(') {
+          depth++;
+        } else if (c == ')' && --depth == 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean skipCharacterClass() {
+      int i = pos + 1;
+      if (i < regex.length() && regex.charAt(i) == '^') {
+        i++;
+      }
+      if (i < regex.length() && regex.charAt(i) == ']') {
+        i++;
+      }
+      while (i < regex.length()) {
+        char c = regex.charAt(i);
+        if (c == '\\') {
+          i += 2;
+        } else if (c == ']') {
+          pos = i + 1;
+          return true;
+        } else {
+          i++;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns how many times the previous element has to appear: 1 when it has no quantifier, 0
+     * when it is optional and -1 when it has to appear at least once but may be repeated.
+     */
+    private int parseQuantifier() {
+      if (pos >= regex.length()) {
+        return 1;
+      }
+      char c = regex.charAt(pos);
+      int minRepetitions;
+      if (c == '*' || c == '?') {
+        minRepetitions = 0;
+        pos++;
+      } else if (c == '+') {
+        minRepetitions = -1;
+        pos++;
+      } else if (c == '{') {
+        int end = regex.indexOf('}', pos);
+        String range = end > 0 ? regex.substring(pos + 1, end) : "";
+        if (!range.matches("\\d+(,\\d*)?")) {
+          return 1;
+        }
+        int comma = range.indexOf(',');
+        int min = Integer.parseInt(comma < 0 ? range : range.substring(0, comma));
+        minRepetitions = min == 0 ? 0 : -1;
+        pos = end + 1;
+      } else {
+        return 1;
+      }
+      if (pos < regex.length() && regex.charAt(pos) == '?') {
+        pos++;
+      }
+      return minRepetitions;
+    }
+
+    private void addCurrentLiteral() {
+      if (currentLiteral.length() == 0) {
+        return;
+      }
+      if (literals.isEmpty()) {
+        firstLiteralOffset = fixedWidthPrefix ? prefixWidth : -1;
+      }
+      literals.add(currentLiteral.toString());
+      currentLiteral.setLength(0);
+    }
+  }
+}
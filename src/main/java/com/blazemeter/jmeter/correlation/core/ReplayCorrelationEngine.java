@@ -0,0 +1,47 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import com.blazemeter.jmeter.correlation.core.extractors.ResultFieldCache;
+import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
+import java.util.List;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterVariables;
+
+/**
+ * Applies the Correlation Extractors of a set of rules to the samples of a thread while replaying
+ * a test plan, storing the extracted values directly in the thread variables.
+ *
+ * <p>Unlike {@link CorrelationEngine}, it neither replaces the variables of the thread nor applies
+ * the Correlation Replacements, since the recorded samplers already reference the variables, and
+ * it doesn't create the elements extractors add to the samplers while recording, since it makes
+ * the same extractions itself. Rules and contexts keep state, so each thread needs its own
+ * instance.
+ */
+public class ReplayCorrelationEngine {
+
+  private final CorrelationContexts contexts = new CorrelationContexts();
+  private final CorrelationPlan plan;
+  private final ContentTypeFilter contentTypeFilter;
+
+  public ReplayCorrelationEngine(List<RulesGroup> groups, String responseFilter,
+      CorrelationComponentsRegistry registry) {
+    plan = CorrelationPlan.compile(contexts.wireEnabledRules(groups, registry),
+        contexts.getContexts());
+    contentTypeFilter = ContentTypeFilter.compile(responseFilter);
+  }
+
+  public void process(HTTPSamplerBase sampler, SampleResult result, JMeterVariables vars) {
+    ResultFieldCache fields = new ResultFieldCache(result);
+    for (CorrelationContext context : plan.getContexts()) {
+      context.update(result, fields);
+    }
+    if (contentTypeFilter.isAllowed(result)) {
+      plan.getExtractionStage().processVariables(sampler, vars, fields);
+    }
+  }
+
+  public void reset() {
+    contexts.reset();
+  }
+
+}
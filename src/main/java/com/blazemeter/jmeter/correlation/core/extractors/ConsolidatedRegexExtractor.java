@@ -0,0 +1,348 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testbeans.gui.TestBeanGUI;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.threads.JMeterContext;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.oro.text.MalformedCachePatternException;
+import org.apache.oro.text.regex.MatchResult;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.PatternMatcherInput;
+import org.apache.oro.text.regex.Perl5Compiler;
+import org.apache.oro.text.regex.Perl5Matcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Post Processor that makes all the extractions of several {@link RegexExtractor}s on a sample,
+ * storing the same variables they would store.
+ *
+ * <p>Each field of the sample is obtained (decoded, unescaped or parsed) only once for all the
+ * extractions, and the regular expressions are taken from JMeter's pattern cache only once, instead
+ * of each extractor getting the field and matching it on its own. Regular expressions are matched
+ * with Jakarta ORO, like {@link RegexExtractor} does, so they behave as they did while recording.
+ *
+ * <p>The recorder adds it instead of one Regex Extractor for each extraction when the
+ * <code>CorrelationEngine.consolidateExtractors</code> JMeter property is set to true.
+ */
+public class ConsolidatedRegexExtractor extends AbstractTestElement implements PostProcessor,
+    TestBean {
+
+  public static final String EXTRACTIONS_PROPERTY = "extractions";
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConsolidatedRegexExtractor.class);
+  private static final String MATCH_NUMBER_SUFFIX = "_matchNr";
+  private static final String GROUPS_SUFFIX = "_g";
+
+  private List<RegexExtraction> extractions = Collections.emptyList();
+  private transient List<RegexExtraction> compiledExtractions;
+  private transient List<CompiledExtraction> compiledExtractionsList = Collections.emptyList();
+
+  /**
+   * Replaces the {@link RegexExtractor}s in the given children with one Consolidated Regex
+   * Extractor, placed where the first of them was.
+   *
+   * <p>Nothing is replaced when there are less than two extractors or when some of them can't be
+   * consolidated (they use a custom template, scope or empty default value).
+   *
+   * @param children the children of a sampler
+   * @param fromIndex the position of the first child to consider
+   */
+  public static void consolidate(List<TestElement> children, int fromIndex) {
+    List<RegexExtraction> extractions = new ArrayList<>();
+    int firstIndex = -1;
+    for (int i = fromIndex; i < children.size(); i++) {
+      TestElement child = children.get(i);
+      if (!(child instanceof RegexExtractor)) {
+        continue;
+      }
+      RegexExtraction extraction = buildExtraction((RegexExtractor) child);
+      if (extraction == null) {
+        return;
+      }
+      extractions.add(extraction);
+      if (firstIndex < 0) {
+        firstIndex = i;
+      }
+    }
+    if (extractions.size() < 2) {
+      return;
+    }
+    for (int i = children.size() - 1; i >= firstIndex; i--) {
+      if (children.get(i) instanceof RegexExtractor) {
+        children.remove(i);
+      }
+    }
+    children.add(firstIndex, fromExtractions(extractions));
+  }
+
+  private static RegexExtraction buildExtraction(RegexExtractor extractor) {
+    int groupNumber = parseGroupTemplate(extractor.getTemplate());
+    if (groupNumber < 0 || !extractor.isScopeParent(extractor.fetchScope())
+        || extractor.isEmptyDefaultValue()) {
+      return null;
+    }
+    return new RegexExtraction(extractor.getRefName(), extractor.getRegex(), groupNumber,
+        extractor.getMatchNumber(), extractor.getDefaultValue(), findField(extractor));
+  }
+
+  /*
+   gets the group of a template with just one group (like $1$), or -1 for any other template
+   */
+  private static int parseGroupTemplate(String template) {
+    if (template.length() < 3 || template.charAt(0) != '$'
+        || template.charAt(template.length() - 1) != '$') {
+      return -1;
+    }
+    String group = template.substring(1, template.length() - 1);
+    for (int i = 0; i < group.length(); i++) {
+      if (group.charAt(i) < '0' || group.charAt(i) > '9') {
+        return -1;
+      }
+    }
+    try {
+      return Integer.parseInt(group);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  static ResultField findField(RegexExtractor extractor) {
+    if (extractor.useUrl()) {
+      return ResultField.URL;
+    } else if (extractor.useHeaders()) {
+      return ResultField.RESPONSE_HEADERS;
+    } else if (extractor.useRequestHeaders()) {
+      return ResultField.REQUEST_HEADERS;
+    } else if (extractor.useCode()) {
+      return ResultField.RESPONSE_CODE;
+    } else if (extractor.useMessage()) {
+      return ResultField.RESPONSE_MESSAGE;
+    } else if (extractor.useUnescapedBody()) {
+      return ResultField.BODY_UNESCAPED;
+    } else if (extractor.useBodyAsDocument()) {
+      return ResultField.BODY_AS_A_DOCUMENT;
+    } else {
+      return ResultField.BODY;
+    }
+  }
+
+  public static ConsolidatedRegexExtractor fromExtractions(List<RegexExtraction> extractions) {
+    ConsolidatedRegexExtractor ret = new ConsolidatedRegexExtractor();
+    ret.setProperty(GUI_CLASS, TestBeanGUI.class.getName());
+    ret.setName("RegExp - Consolidated");
+    ret.setProperty(new CollectionProperty(EXTRACTIONS_PROPERTY, extractions));
+    return ret;
+  }
+
+  @Override
+  public void process() {
+    JMeterContext context = getThreadContext();
+    SampleResult result = context.getPreviousResult();
+    if (result == null) {
+      return;
+    }
+    JMeterVariables vars = context.getVariables();
+    ResultFieldCache fields = new ResultFieldCache(result);
+    for (CompiledExtraction extraction : getCompiledExtractions()) {
+      extraction.extract(fields, vars);
+    }
+  }
+
+  private List<CompiledExtraction> getCompiledExtractions() {
+    /*
+     extractions are set before each execution, but always with the same elements, so we only
+     compile them when the elements change
+     */
+    if (!isSameExtractions(extractions, compiledExtractions)) {
+      List<CompiledExtraction> compiled = new ArrayList<>(extractions.size());
+      for (RegexExtraction extraction : extractions) {
+        compiled.add(new CompiledExtraction(extraction));
+      }
+      compiledExtractionsList = compiled;
+      compiledExtractions = new ArrayList<>(extractions);
+    }
+    return compiledExtractionsList;
+  }
+
+  private static boolean isSameExtractions(List<RegexExtraction> extractions,
+      List<RegexExtraction> compiled) {
+    if (compiled == null || extractions.size() != compiled.size()) {
+      return false;
+    }
+    for (int i = 0; i < extractions.size(); i++) {
+      if (extractions.get(i) != compiled.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public List<RegexExtraction> getExtractions() {
+    return extractions;
+  }
+
+  public void setExtractions(List<RegexExtraction> extractions) {
+    this.extractions = extractions != null ? extractions : Collections.emptyList();
+  }
+
+  /**
+   * Extraction with its regular expression compiled and its settings parsed, which stores the
+   * variables in the same way as {@link RegexExtractor} does.
+   */
+  private static final class CompiledExtraction {
+
+    private final String referenceName;
+    private final Pattern pattern;
+    private final int groupNumber;
+    private final int matchNumber;
+    private final String defaultValue;
+    private final ResultField field;
+
+    private CompiledExtraction(RegexExtraction extraction) {
+      referenceName = extraction.getReferenceName();
+      defaultValue = extraction.getDefaultValue();
+      groupNumber = parseNumber(extraction.getGroupNumber(), 1);
+      matchNumber = parseNumber(extraction.getMatchNumber(), 1);
+      field = parseField(extraction.getField());
+      Pattern compiled = null;
+      try {
+        compiled = JMeterUtils.getPatternCache()
+            .getPattern(extraction.getRegex(), Perl5Compiler.READ_ONLY_MASK);
+      } catch (MalformedCachePatternException e) {
+        LOG.warn("Invalid regular expression for {}: {}", referenceName, e.getMessage());
+      }
+      pattern = compiled;
+    }
+
+    private static int parseNumber(String value, int defaultValue) {
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        return defaultValue;
+      }
+    }
+
+    private static ResultField parseField(String name) {
+      try {
+        return ResultField.valueOf(name);
+      } catch (IllegalArgumentException e) {
+        return ResultField.BODY;
+      }
+    }
+
+    private void extract(ResultFieldCache fields, JMeterVariables vars) {
+      if (!defaultValue.isEmpty()) {
+        vars.put(referenceName, defaultValue);
+      }
+      if (pattern == null) {
+        return;
+      }
+      String input = fields.get(field);
+      if (input == null) {
+        input = "";
+      }
+      int previousCount = 0;
+      String previousCountString = vars.get(referenceName + MATCH_NUMBER_SUFFIX);
+      if (previousCountString != null) {
+        vars.remove(referenceName + MATCH_NUMBER_SUFFIX);
+        previousCount = parseNumber(previousCountString, 0);
+      }
+      List<MatchGroups> matches = findMatches(input);
+      if (matchNumber >= 0) {
+        MatchGroups match = getMatch(matches, matchNumber);
+        if (match != null) {
+          vars.put(referenceName, match.get(groupNumber));
+          saveGroups(vars, referenceName, match);
+        } else {
+          removeGroups(vars, referenceName);
+        }
+      } else {
+        removeGroups(vars, referenceName);
+        vars.put(referenceName + MATCH_NUMBER_SUFFIX, Integer.toString(matches.size()));
+        for (int i = 1; i <= matches.size(); i++) {
+          MatchGroups match = matches.get(i - 1);
+          String matchReferenceName = referenceName + "_" + i;
+          vars.put(matchReferenceName, match.get(groupNumber));
+          saveGroups(vars, matchReferenceName, match);
+        }
+        for (int i = matches.size() + 1; i <= previousCount; i++) {
+          String matchReferenceName = referenceName + "_" + i;
+          vars.remove(matchReferenceName);
+          removeGroups(vars, matchReferenceName);
+        }
+      }
+    }
+
+    private List<MatchGroups> findMatches(String input) {
+      // same as RegexExtractor, which uses the matcher of the current thread
+      Perl5Matcher matcher = JMeterUtils.getMatcher();
+      PatternMatcherInput matcherInput = new PatternMatcherInput(input);
+      List<MatchGroups> ret = new ArrayList<>();
+      while ((matchNumber <= 0 || ret.size() != matchNumber)
+          && matcher.contains(matcherInput, pattern)) {
+        ret.add(new MatchGroups(matcher.getMatch()));
+      }
+      return ret;
+    }
+
+    private static MatchGroups getMatch(List<MatchGroups> matches, int matchNumber) {
+      if (matches.isEmpty()) {
+        return null;
+      }
+      if (matchNumber == 0) {
+        return matches.get(JMeterUtils.getRandomInt(matches.size()));
+      }
+      return matchNumber <= matches.size() ? matches.get(matchNumber - 1) : null;
+    }
+
+    private static void saveGroups(JMeterVariables vars, String name, MatchGroups match) {
+      String groupsName = name + GROUPS_SUFFIX;
+      int previousGroups = parseNumber(String.valueOf(vars.get(groupsName)), 0);
+      for (int i = 0; i < match.groups.length; i++) {
+        vars.put(groupsName + i, match.groups[i]);
+      }
+      vars.put(groupsName, Integer.toString(match.groups.length - 1));
+      for (int i = match.groups.length; i <= previousGroups; i++) {
+        vars.remove(groupsName + i);
+      }
+    }
+
+    private static void removeGroups(JMeterVariables vars, String name) {
+      String groupsName = name + GROUPS_SUFFIX;
+      int groups = parseNumber(String.valueOf(vars.get(groupsName)), 0);
+      vars.remove(groupsName);
+      for (int i = 0; i <= groups; i++) {
+        vars.remove(groupsName + i);
+      }
+    }
+  }
+
+  private static final class MatchGroups {
+
+    private final String[] groups;
+
+    private MatchGroups(MatchResult match) {
+      groups = new String[match.groups()];
+      for (int i = 0; i < groups.length; i++) {
+        groups[i] = match.group(i);
+      }
+    }
+
+    // same as RegexExtractor when the template has a missing or unmatched group
+    private String get(int group) {
+      return group < groups.length ? String.valueOf(groups[group]) : "null";
+    }
+  }
+
+}
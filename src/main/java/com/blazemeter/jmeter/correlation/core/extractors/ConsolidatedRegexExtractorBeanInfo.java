@@ -0,0 +1,25 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import java.beans.PropertyDescriptor;
+import java.util.ArrayList;
+import org.apache.jmeter.testbeans.BeanInfoSupport;
+import org.apache.jmeter.testbeans.gui.TableEditor;
+
+public class ConsolidatedRegexExtractorBeanInfo extends BeanInfoSupport {
+
+  public ConsolidatedRegexExtractorBeanInfo() {
+    super(ConsolidatedRegexExtractor.class);
+    createPropertyGroup("extraction",
+        new String[]{ConsolidatedRegexExtractor.EXTRACTIONS_PROPERTY});
+    PropertyDescriptor p = property(ConsolidatedRegexExtractor.EXTRACTIONS_PROPERTY);
+    p.setPropertyEditorClass(TableEditor.class);
+    p.setValue(TableEditor.CLASSNAME, RegexExtraction.class.getName());
+    p.setValue(TableEditor.HEADERS, new String[]{"Reference Name", "Regular Expression",
+        "Group Number", "Match Number", "Default Value", "Field"});
+    p.setValue(TableEditor.OBJECT_PROPERTIES, new String[]{"referenceName", "regex",
+        "groupNumber", "matchNumber", "defaultValue", "field"});
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, new ArrayList<>());
+  }
+
+}
@@ -127,6 +127,25 @@ public abstract class CorrelationExtractor<T extends CorrelationContext> extends
   public abstract void process(HTTPSamplerBase sampler, List<TestElement> children,
       SampleResult result, JMeterVariables vars);
 
+  /**
+   * Process the response obtained from the server, reusing the fields of the result already
+   * obtained by other Correlation Extractors or Contexts for the same sample.
+   *
+   * <p>By default, it just delegates on {@link #process(HTTPSamplerBase, List, SampleResult,
+   * JMeterVariables)}. Overwrite it when the extraction uses any {@link ResultField}.
+   *
+   * @param sampler recorded sampler containing the information of the request
+   * @param children list of children added to the sampler (if the condition is matched, a component
+   * will be added to it)
+   * @param result result containing information about request and associated response from server
+   * @param vars stored variables shared between requests during recording
+   * @param fields lazily obtained fields of the result
+   */
+  public void process(HTTPSamplerBase sampler, List<TestElement> children, SampleResult result,
+      JMeterVariables vars, ResultFieldCache fields) {
+    process(sampler, children, result, vars);
+  }
+
   public ResultField getTarget() {
     return target;
   }
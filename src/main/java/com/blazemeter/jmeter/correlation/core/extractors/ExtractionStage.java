@@ -0,0 +1,341 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import com.blazemeter.jmeter.correlation.core.MultiLiteralMatcher;
+import com.blazemeter.jmeter.correlation.core.RegexPrefilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Applies a fixed list of Correlation Extractors to a sample in a single pass per response field.
+ *
+ * <p>Plain {@link RegexCorrelationExtractor}s are grouped by their {@link ResultField}, and each
+ * field is taken from the {@link ResultFieldCache} of the sample, so it is obtained (decoded,
+ * unescaped or parsed) only once, no matter how many rules look into it. The literals required by
+ * the regexes of a group are then looked for all at once, in a single pass over the field, and
+ * only the rules whose literals appear in it evaluate their regex. Matching is done for all of
+ * them first and the results are then stored in the variables following the original order of
+ * the rules, to keep the same outcome as processing each extractor on its own.
+ *
+ * <p>Since matching doesn't modify any state, when the matched fields are big enough it is done
+ * in parallel in a fork join pool. The parallelism is set with the
+ * <code>CorrelationEngine.extractionParallelism</code> JMeter property (1 disables it) and the
+ * minimum total length of the matched fields (each one counted once, no matter how many rules
+ * look into it) with <code>CorrelationEngine.parallelExtractionMinLength</code>.
+ *
+ * <p>Extractors that customize the way they process a sample (like the Siebel ones or any custom
+ * extension) are kept in their position and processed as usual, sharing the same fields cache.
+ *
+ * <p>When the <code>CorrelationEngine.consolidateExtractors</code> JMeter property is true, the
+ * Regex Extractors added to a sampler are replaced by one {@link ConsolidatedRegexExtractor}, so
+ * the replay gets each response field and makes all the extractions only once per sample.
+ */
+public final class ExtractionStage {
+
+  public static final ExtractionStage EMPTY = new ExtractionStage(new CorrelationExtractor<?>[0],
+      1, 0, false);
+  private static final String PARALLELISM_PROPERTY = "CorrelationEngine.extractionParallelism";
+  private static final String PARALLEL_MIN_LENGTH_PROPERTY =
+      "CorrelationEngine.parallelExtractionMinLength";
+  private static final String CONSOLIDATE_EXTRACTORS_PROPERTY =
+      "CorrelationEngine.consolidateExtractors";
+  private static final int DEFAULT_PARALLEL_MIN_LENGTH = 256 * 1024;
+  private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+  private final CorrelationExtractor<?>[] extractors;
+  private final RegexCorrelationExtractor<?>[][] fieldGroups;
+  private final int[][] fieldGroupsIndexes;
+  private final FieldLiterals[] fieldLiterals;
+  private final ResultField[] groupsFields;
+  private final int groupedCount;
+  private final ForkJoinPool pool;
+  private final long parallelMinLength;
+  private final boolean consolidateExtractors;
+
+  private ExtractionStage(CorrelationExtractor<?>[] extractors, int parallelism,
+      long parallelMinLength, boolean consolidateExtractors) {
+    this.extractors = extractors;
+    this.consolidateExtractors = consolidateExtractors;
+    this.pool = parallelism > 1 ? POOLS.computeIfAbsent(parallelism, ForkJoinPool::new) : null;
+    this.parallelMinLength = parallelMinLength;
+    Map<ResultField, List<Integer>> groupedIndexes = new EnumMap<>(ResultField.class);
+    for (int i = 0; i < extractors.length; i++) {
+      if (isGroupable(extractors[i])) {
+        groupedIndexes.computeIfAbsent(extractors[i].getTarget(), f -> new ArrayList<>()).add(i);
+      }
+    }
+    groupsFields = groupedIndexes.keySet().toArray(new ResultField[0]);
+    fieldGroups = new RegexCorrelationExtractor<?>[groupsFields.length][];
+    fieldGroupsIndexes = new int[groupsFields.length][];
+    int grouped = 0;
+    for (int i = 0; i < groupsFields.length; i++) {
+      List<Integer> indexes = groupedIndexes.get(groupsFields[i]);
+      fieldGroups[i] = new RegexCorrelationExtractor<?>[indexes.size()];
+      fieldGroupsIndexes[i] = new int[indexes.size()];
+      for (int j = 0; j < indexes.size(); j++) {
+        fieldGroupsIndexes[i][j] = indexes.get(j);
+        fieldGroups[i][j] = (RegexCorrelationExtractor<?>) extractors[indexes.get(j)];
+      }
+      grouped += indexes.size();
+    }
+    groupedCount = grouped;
+    fieldLiterals = new FieldLiterals[groupsFields.length];
+  }
+
+  public static ExtractionStage compile(CorrelationExtractor<?>[] extractors) {
+    return compile(extractors,
+        JMeterUtils.getPropDefault(PARALLELISM_PROPERTY,
+            Runtime.getRuntime().availableProcessors()),
+        JMeterUtils.getPropDefault(PARALLEL_MIN_LENGTH_PROPERTY, DEFAULT_PARALLEL_MIN_LENGTH),
+        JMeterUtils.getPropDefault(CONSOLIDATE_EXTRACTORS_PROPERTY, false));
+  }
+
+  public static ExtractionStage compile(CorrelationExtractor<?>[] extractors, int parallelism,
+      long parallelMinLength) {
+    return compile(extractors, parallelism, parallelMinLength, false);
+  }
+
+  public static ExtractionStage compile(CorrelationExtractor<?>[] extractors, int parallelism,
+      long parallelMinLength, boolean consolidateExtractors) {
+    return extractors.length == 0 ? EMPTY
+        : new ExtractionStage(extractors.clone(), parallelism, parallelMinLength,
+            consolidateExtractors);
+  }
+
+  private static boolean isGroupable(CorrelationExtractor<?> extractor) {
+    if (!(extractor instanceof RegexCorrelationExtractor) || extractor.getTarget() == null) {
+      return false;
+    }
+    Class<?> extractorClass = extractor.getClass();
+    try {
+      return extractorClass.getMethod("process", HTTPSamplerBase.class, List.class,
+          SampleResult.class, JMeterVariables.class).getDeclaringClass()
+          == RegexCorrelationExtractor.class
+          && extractorClass.getMethod("process", HTTPSamplerBase.class, List.class,
+          SampleResult.class, JMeterVariables.class, ResultFieldCache.class).getDeclaringClass()
+          == CorrelationExtractor.class;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  public void process(HTTPSamplerBase sampler, List<TestElement> children,
+      JMeterVariables vars, ResultFieldCache fields) {
+    int firstChildIndex = children.size();
+    extract(sampler, children, vars, fields);
+    if (consolidateExtractors) {
+      ConsolidatedRegexExtractor.consolidate(children, firstChildIndex);
+    }
+  }
+
+  /**
+   * Makes the extractions only storing the extracted values in the variables, as done while
+   * replaying, so no elements are created for the sampler.
+   *
+   * <p>Extractors that customize the way they process a sample still get a children list, which
+   * is discarded afterwards.
+   */
+  public void processVariables(HTTPSamplerBase sampler, JMeterVariables vars,
+      ResultFieldCache fields) {
+    extract(sampler, null, vars, fields);
+  }
+
+  private void extract(HTTPSamplerBase sampler, List<TestElement> children,
+      JMeterVariables vars, ResultFieldCache fields) {
+    List<?>[] matches = new List<?>[extractors.length];
+    boolean[] grouped = new boolean[extractors.length];
+    int[] enabledIndexes = new int[groupedCount];
+    CharSequence[] enabledInputs = new CharSequence[groupedCount];
+    int enabledCount = 0;
+    long enabledInputsLength = 0;
+    for (int i = 0; i < groupsFields.length; i++) {
+      RegexCorrelationExtractor<?>[] group = fieldGroups[i];
+      CharSequence[] groupInputs = new CharSequence[group.length];
+      boolean[] groupEnabled = new boolean[group.length];
+      CharSequence longestInput = null;
+      for (int j = 0; j < group.length; j++) {
+        grouped[fieldGroupsIndexes[i][j]] = true;
+        if (group[j].isExtractionEnabled()) {
+          // lengths are obtained here since body characters are decoded as they are needed
+          groupInputs[j] = group[j].findInput(fields);
+          groupEnabled[j] = true;
+          if (groupInputs[j] != null
+              && (longestInput == null || groupInputs[j].length() > longestInput.length())) {
+            longestInput = groupInputs[j];
+          }
+        }
+      }
+      boolean[] candidates = longestInput != null
+          ? getFieldLiterals(i).findCandidates(longestInput) : null;
+      // extractors of a group share the same field, so it is only counted once
+      long groupInputLength = 0;
+      for (int j = 0; j < group.length; j++) {
+        int extractorIndex = fieldGroupsIndexes[i][j];
+        if (!groupEnabled[j]) {
+          continue;
+        }
+        if (candidates != null && !candidates[j]) {
+          matches[extractorIndex] = Collections.emptyList();
+          continue;
+        }
+        enabledIndexes[enabledCount] = extractorIndex;
+        enabledInputs[enabledCount++] = groupInputs[j];
+        groupInputLength = Math.max(groupInputLength,
+            groupInputs[j] != null ? groupInputs[j].length() : 0);
+      }
+      enabledInputsLength += groupInputLength;
+    }
+
+    FindMatchesAction findMatches = new FindMatchesAction(enabledIndexes, enabledInputs, matches,
+        0, enabledCount);
+    if (pool != null && enabledCount > 1 && enabledInputsLength >= parallelMinLength) {
+      pool.invoke(findMatches);
+    } else {
+      findMatches.compute();
+    }
+
+    List<TestElement> discardedChildren = children == null ? new ArrayList<>() : null;
+    for (int i = 0; i < extractors.length; i++) {
+      if (!grouped[i]) {
+        extractors[i].process(sampler, children != null ? children : discardedChildren,
+            fields.getResult(), vars, fields);
+      } else if (matches[i] != null) {
+        @SuppressWarnings("unchecked")
+        List<String> extractorMatches = (List<String>) matches[i];
+        ((RegexCorrelationExtractor<?>) extractors[i]).applyMatches(extractorMatches, children,
+            vars);
+      }
+    }
+  }
+
+  private FieldLiterals getFieldLiterals(int groupIndex) {
+    FieldLiterals ret = fieldLiterals[groupIndex];
+    // regexes may be changed after compiling the stage, so literals are taken again when they do
+    if (ret == null || !ret.isTakenFrom(fieldGroups[groupIndex])) {
+      ret = new FieldLiterals(fieldGroups[groupIndex]);
+      fieldLiterals[groupIndex] = ret;
+    }
+    return ret;
+  }
+
+  /**
+   * Literals required by the regexes of the extractors of a field group, which are looked for all
+   * at once in a single pass over the field, so only the extractors whose literals appear in it
+   * evaluate their regex.
+   *
+   * <p>Extractors whose required literals can't be determined always evaluate their regex, and
+   * when less than two extractors have required literals no combined pass is made, since each
+   * extractor prefilter looks for its own literals anyway.
+   */
+  private static final class FieldLiterals {
+
+    private final RegexPrefilter[] prefilters;
+    private final int[][] extractorsLiterals;
+    private final MultiLiteralMatcher matcher;
+
+    private FieldLiterals(RegexCorrelationExtractor<?>[] group) {
+      prefilters = new RegexPrefilter[group.length];
+      extractorsLiterals = new int[group.length][];
+      Map<String, Integer> literalsPositions = new LinkedHashMap<>();
+      int filteredCount = 0;
+      for (int i = 0; i < group.length; i++) {
+        prefilters[i] = group[i].getPrefilter();
+        List<String> literals = prefilters[i].getLiterals();
+        extractorsLiterals[i] = new int[literals.size()];
+        for (int j = 0; j < literals.size(); j++) {
+          Integer position = literalsPositions.get(literals.get(j));
+          if (position == null) {
+            position = literalsPositions.size();
+            literalsPositions.put(literals.get(j), position);
+          }
+          extractorsLiterals[i][j] = position;
+        }
+        if (!literals.isEmpty()) {
+          filteredCount++;
+        }
+      }
+      matcher = filteredCount > 1 ? new MultiLiteralMatcher(literalsPositions.keySet()) : null;
+    }
+
+    private boolean isTakenFrom(RegexCorrelationExtractor<?>[] group) {
+      for (int i = 0; i < group.length; i++) {
+        if (group[i].getPrefilter() != prefilters[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Tells which extractors may match the given field.
+     *
+     * @return the flags of the extractors containing all their required literals, or null when no
+     * combined pass is made and all of them have to be evaluated
+     */
+    private boolean[] findCandidates(CharSequence input) {
+      if (matcher == null) {
+        return null;
+      }
+      boolean[] contained = matcher.findContained(input);
+      boolean[] ret = new boolean[extractorsLiterals.length];
+      for (int i = 0; i < extractorsLiterals.length; i++) {
+        ret[i] = true;
+        for (int literal : extractorsLiterals[i]) {
+          if (!contained[literal]) {
+            ret[i] = false;
+            break;
+          }
+        }
+      }
+      return ret;
+    }
+  }
+
+  /**
+   * Finds the matches of a range of the enabled extractors, splitting the range in halves to be
+   * matched in parallel when run in a fork join pool.
+   */
+  private final class FindMatchesAction extends RecursiveAction {
+
+    private final int[] extractorsIndexes;
+    private final CharSequence[] inputs;
+    private final List<?>[] matches;
+    private final int from;
+    private final int to;
+
+    private FindMatchesAction(int[] extractorsIndexes, CharSequence[] inputs,
+        List<?>[] matches, int from, int to) {
+      this.extractorsIndexes = extractorsIndexes;
+      this.inputs = inputs;
+      this.matches = matches;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1 && inForkJoinPool()) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new FindMatchesAction(extractorsIndexes, inputs, matches, from, middle),
+            new FindMatchesAction(extractorsIndexes, inputs, matches, middle, to));
+        return;
+      }
+      for (int i = from; i < to; i++) {
+        int extractorIndex = extractorsIndexes[i];
+        matches[extractorIndex] = ((RegexCorrelationExtractor<?>) extractors[extractorIndex])
+            .findMatches(inputs[i]);
+      }
+    }
+  }
+}
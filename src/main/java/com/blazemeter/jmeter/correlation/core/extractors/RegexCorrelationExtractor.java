@@ -2,19 +2,21 @@ package com.blazemeter.jmeter.correlation.core.extractors;
 
 import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
 import com.blazemeter.jmeter.correlation.core.CorrelationContext;
+import com.blazemeter.jmeter.correlation.core.CorrelationVariables;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.CheckBoxParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.ComboParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.TextParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.RegexMatcher;
+import com.blazemeter.jmeter.correlation.core.RegexPrefilter;
+import com.blazemeter.jmeter.correlation.core.regex.RegexEngine;
 import com.blazemeter.jmeter.correlation.gui.CorrelationRuleTestElement;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.Set;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import org.apache.jmeter.extractor.RegexExtractor;
@@ -23,6 +25,7 @@ import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +39,7 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
 
   public static final String MATCH_NUMBER_NAME = EXTRACTOR_PREFIX + "matchNr";
   public static final String MULTIVALUED_NAME = EXTRACTOR_PREFIX + "multiValued";
+  public static final String MAX_SCAN_LENGTH_PROPERTY = "CorrelationEngine.maxScanLength";
   protected static final String GROUP_NUMBER_NAME = EXTRACTOR_PREFIX + "groupNr";
   protected static final String GROUP_NUMBER_DESCRIPTION = "Group number";
   protected static final String MATCH_NUMBER_DESCRIPTION = "Match number";
@@ -48,7 +52,7 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
   protected static final String MULTIVALUED_DESCRIPTION = "Multivalued";
   protected static final boolean DEFAULT_MULTIVALUED = false;
   private static final Function<String, Pattern> VARIABLE_PATTERN_PROVIDER =
-      (variableName) -> Pattern.compile(variableName + "_(\\d|matchNr)");
+      (variableName) -> Pattern.compile(Pattern.quote(variableName) + "_(\\d+|matchNr)");
   private static final Logger LOG = LoggerFactory.getLogger(RegexCorrelationExtractor.class);
   private static final String REGEX_EXTRACTOR_GUI_CLASS = RegexExtractorGui.class.getName();
   private static final int DEFAULT_MATCH_NUMBER = 1;
@@ -59,6 +63,8 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
   protected int groupNr;
   private transient JMeterVariables currentVars;
   private transient List<TestElement> currentSamplersChild;
+  private transient RegexMatcher regexMatcher;
+  private transient ReferenceSettings referenceSettings;
 
   /**
    * Default constructor added in order to satisfy the JSON conversion.
@@ -137,6 +143,7 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
 
   @Override
   public void setParams(List<String> params) {
+    referenceSettings = null;
     regex = params.size() > 0 ? params.get(0) : REGEX_DEFAULT_VALUE;
     matchNr = params.size() > 1 ? parseInteger(params.get(1), DEFAULT_MATCH_NUMBER_NAME,
         DEFAULT_MATCH_NUMBER) : DEFAULT_MATCH_NUMBER;
@@ -198,35 +205,130 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
   @Override
   public void process(HTTPSamplerBase sampler, List<TestElement> children, SampleResult result,
       JMeterVariables vars) {
-    if (regex.isEmpty()) {
+    extract(children, vars, new ResultFieldCache(result));
+  }
+
+  /**
+   * Extracts the values from the target field and stores them in the variables, adding the
+   * {@link RegexExtractor} Post Processor to the children when needed.
+   *
+   * @param children list of children added to the sampler
+   * @param vars stored variables shared between requests during recording
+   * @param fields lazily obtained fields of the result
+   */
+  protected void extract(List<TestElement> children, JMeterVariables vars,
+      ResultFieldCache fields) {
+    if (!isExtractionEnabled()) {
       return;
     }
+    applyMatches(findMatches(findInput(fields)), children, vars);
+  }
+
+  /**
+   * Gets the part of the target field where the values are looked for.
+   *
+   * <p>Only the first characters of the field are matched when a maximum scan length is set with
+   * the <code>CorrelationEngine.maxScanLength</code> JMeter property, or with
+   * <code>CorrelationEngine.maxScanLength.&lt;reference variable&gt;</code> for the rules of a
+   * given reference variable. In that case, or when the regex engine doesn't need a String, the
+   * body is not decoded further than needed.
+   */
+  CharSequence findInput(ResultFieldCache fields) {
+    ReferenceSettings settings = getReferenceSettings();
+    return settings.maxScanLength > 0 || settings.engine.isIncremental()
+        ? fields.getSequence(target, settings.maxScanLength) : fields.get(target);
+  }
+
+  private ReferenceSettings getReferenceSettings() {
+    ReferenceSettings settings = referenceSettings;
+    if (settings == null || !Objects.equals(settings.referenceName, variableName)) {
+      settings = new ReferenceSettings(variableName);
+      referenceSettings = settings;
+    }
+    return settings;
+  }
+
+  boolean isExtractionEnabled() {
+    if (regex.isEmpty()) {
+      return false;
+    }
     if (matchNr == 0) {
       LOG.warn("Extracting random appearances is not supported. Returning null instead.");
-      return;
+      return false;
     }
+    return true;
+  }
+
+  /**
+   * Finds the values matched by this extractor in the given input, without modifying any state.
+   *
+   * <p>When the match number is positive, at most one value is returned. Otherwise, all the
+   * matched values are returned in order of appearance.
+   */
+  List<String> findMatches(CharSequence input) {
+    RegexMatcher matcher = getRegexMatcher();
+    if (matchNr >= 0) {
+      String match = matcher.findMatch(input, matchNr);
+      return match != null ? Collections.singletonList(match) : Collections.emptyList();
+    }
+    return matcher.findMatches(input);
+  }
+
+  /**
+   * Finds all the values matched by this extractor in the target field, no matter the match
+   * number, using the regex engine and maximum scan length configured for its reference variable.
+   *
+   * @param fields lazily obtained fields of the result
+   * @return the matched values in order of appearance
+   */
+  protected List<String> findAllMatches(ResultFieldCache fields) {
+    return getRegexMatcher().findMatches(findInput(fields));
+  }
+
+  /**
+   * Gets the prefilter of the current regex, which tells the literals any match has to contain.
+   */
+  RegexPrefilter getPrefilter() {
+    return getRegexMatcher().getPrefilter();
+  }
+
+  private RegexMatcher getRegexMatcher() {
+    RegexMatcher matcher = regexMatcher;
+    RegexEngine engine = getReferenceSettings().engine;
+    if (matcher == null || !matcher.getRegex().equals(regex) || matcher.getGroup() != groupNr
+        || matcher.getEngine() != engine) {
+      matcher = new RegexMatcher(regex, groupNr, engine);
+      regexMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  /**
+   * Stores the values found by {@link #findMatches(CharSequence)} into the variables and adds the
+   * {@link RegexExtractor} Post Processor to the children, when needed.
+   *
+   * @param children list of children added to the sampler, or null to only store the values in
+   * the variables, as done while replaying
+   */
+  void applyMatches(List<String> matches, List<TestElement> children, JMeterVariables vars) {
     this.currentVars = vars;
     this.currentSamplersChild = children;
 
-    RegexMatcher regexMatcher = new RegexMatcher(regex, groupNr);
     String varName = multiValued ? generateVariableName() : variableName;
     if (matchNr >= 0) {
-      String match = regexMatcher.findMatch(target.getField(result), matchNr);
+      String match = matches.isEmpty() ? null : matches.get(0);
       if (match != null && !match.equals(vars.get(varName))) {
-        addVarAndChildPostProcessor(match, varName,
-            createPostProcessor(varName, matchNr));
+        addVarAndChildPostProcessor(match, varName, varName, matchNr);
       }
     } else {
-      ArrayList<String> matches = regexMatcher.findMatches(target.getField(result));
       if (matches.size() == 1) {
-        addVarAndChildPostProcessor(matches.get(0), varName,
-            createPostProcessor(varName, 1));
+        addVarAndChildPostProcessor(matches.get(0), varName, varName, 1);
       } else if (matches.size() > 1) {
         if (!multiValued) {
           clearJMeterVariables(vars);
         }
-        addVarAndChildPostProcessor(String.valueOf(matches.size()),
-            varName + "_matchNr", createPostProcessor(varName, matchNr));
+        addVarAndChildPostProcessor(String.valueOf(matches.size()), varName + "_matchNr",
+            varName, matchNr);
         int matchNr = 1;
         for (String match : matches) {
           vars.put(varName + "_" + matchNr, match);
@@ -234,21 +336,28 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
         }
       }
     }
-
   }
 
   private void clearJMeterVariables(JMeterVariables vars) {
-    Set<Entry<String, Object>> entries = new HashSet<>(vars.entrySet());
-    entries.forEach(e -> {
-      if (VARIABLE_PATTERN_PROVIDER.apply(variableName).matcher(e.getKey()).matches()) {
-        vars.remove(e.getKey());
+    if (vars instanceof CorrelationVariables) {
+      ((CorrelationVariables) vars).removeMatchVariables(variableName);
+      return;
+    }
+    Pattern variablePattern = VARIABLE_PATTERN_PROVIDER.apply(variableName);
+    List<String> names = new ArrayList<>();
+    for (Entry<String, Object> entry : vars.entrySet()) {
+      if (variablePattern.matcher(entry.getKey()).matches()) {
+        names.add(entry.getKey());
       }
-    });
+    }
+    names.forEach(vars::remove);
   }
 
   private void addVarAndChildPostProcessor(String match, String variableName,
-      RegexExtractor postProcessor) {
-    currentSamplersChild.add(postProcessor);
+      String extractorVarName, int extractorMatchNr) {
+    if (currentSamplersChild != null) {
+      currentSamplersChild.add(createPostProcessor(extractorVarName, extractorMatchNr));
+    }
     currentVars.put(variableName, match);
   }
 
@@ -281,6 +390,7 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
   @Override
   public void update(CorrelationRuleTestElement testElem) {
     super.update(testElem);
+    referenceSettings = null;
     regex = testElem.getPropertyAsString(EXTRACTOR_REGEX_NAME);
     matchNr = getMatchNumber(testElem);
     groupNr = getGroupNumber(testElem);
@@ -321,4 +431,28 @@ public class RegexCorrelationExtractor<T extends BaseCorrelationContext> extends
   public Class<? extends CorrelationContext> getSupportedContext() {
     return BaseCorrelationContext.class;
   }
+
+  /*
+   * Settings configured with JMeter properties for a reference variable, resolved only once since
+   * they are needed for every processed sample.
+   */
+  private static final class ReferenceSettings {
+
+    private final String referenceName;
+    private final RegexEngine engine;
+    private final int maxScanLength;
+
+    private ReferenceSettings(String referenceName) {
+      this.referenceName = referenceName;
+      this.engine = RegexEngine.forReferenceName(referenceName);
+      this.maxScanLength = getMaxScanLength(referenceName);
+    }
+
+    private static int getMaxScanLength(String referenceName) {
+      int defaultLength = JMeterUtils.getPropDefault(MAX_SCAN_LENGTH_PROPERTY, 0);
+      return referenceName == null || referenceName.isEmpty() ? defaultLength
+          : JMeterUtils.getPropDefault(MAX_SCAN_LENGTH_PROPERTY + "." + referenceName,
+              defaultLength);
+    }
+  }
 }
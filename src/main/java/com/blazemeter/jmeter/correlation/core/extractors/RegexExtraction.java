@@ -0,0 +1,83 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import org.apache.jmeter.testelement.AbstractTestElement;
+
+/**
+ * One of the extractions made by a {@link ConsolidatedRegexExtractor}, with the same settings as
+ * a {@link org.apache.jmeter.extractor.RegexExtractor} using <code>$group$</code> as template.
+ */
+public class RegexExtraction extends AbstractTestElement {
+
+  private static final String REFERENCE_NAME = "RegexExtraction.referenceName";
+  private static final String REGEX = "RegexExtraction.regex";
+  private static final String GROUP_NUMBER = "RegexExtraction.groupNumber";
+  private static final String MATCH_NUMBER = "RegexExtraction.matchNumber";
+  private static final String DEFAULT_VALUE = "RegexExtraction.defaultValue";
+  private static final String FIELD = "RegexExtraction.field";
+
+  public RegexExtraction() {
+  }
+
+  public RegexExtraction(String referenceName, String regex, int groupNumber, int matchNumber,
+      String defaultValue, ResultField field) {
+    setName(referenceName);
+    setReferenceName(referenceName);
+    setRegex(regex);
+    setGroupNumber(String.valueOf(groupNumber));
+    setMatchNumber(String.valueOf(matchNumber));
+    setDefaultValue(defaultValue);
+    setField(field.name());
+  }
+
+  public String getReferenceName() {
+    return getPropertyAsString(REFERENCE_NAME);
+  }
+
+  public void setReferenceName(String referenceName) {
+    setProperty(REFERENCE_NAME, referenceName);
+  }
+
+  public String getRegex() {
+    return getPropertyAsString(REGEX);
+  }
+
+  public void setRegex(String regex) {
+    setProperty(REGEX, regex);
+  }
+
+  public String getGroupNumber() {
+    return getPropertyAsString(GROUP_NUMBER);
+  }
+
+  public void setGroupNumber(String groupNumber) {
+    setProperty(GROUP_NUMBER, groupNumber);
+  }
+
+  public String getMatchNumber() {
+    return getPropertyAsString(MATCH_NUMBER);
+  }
+
+  public void setMatchNumber(String matchNumber) {
+    setProperty(MATCH_NUMBER, matchNumber);
+  }
+
+  public String getDefaultValue() {
+    return getPropertyAsString(DEFAULT_VALUE);
+  }
+
+  public void setDefaultValue(String defaultValue) {
+    setProperty(DEFAULT_VALUE, defaultValue);
+  }
+
+  /**
+   * Gets the name of the {@link ResultField} to extract the values from.
+   */
+  public String getField() {
+    return getPropertyAsString(FIELD);
+  }
+
+  public void setField(String field) {
+    setProperty(FIELD, field);
+  }
+
+}
@@ -0,0 +1,217 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Characters of a response body, decoded from its bytes as they are accessed.
+ *
+ * <p>Unlike {@link org.apache.jmeter.samplers.SampleResult#getResponseDataAsString()}, the body
+ * is not decoded in full when only its first characters are needed, and ASCII text (like most
+ * JSON, HTML or XML responses) is read directly from the response bytes, without keeping a decoded
+ * copy of it. Only the characters after the first non ASCII byte are decoded, in chunks.
+ *
+ * <p>Instances are not thread safe: the characters to be read by other threads have to be decoded
+ * first (for instance with {@link #length()} or {@link #head(int)}).
+ */
+final class ResponseBodyCharSequence implements CharSequence {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final char[] NO_CHARS = new char[0];
+
+  private final byte[] data;
+  private final boolean bytesAreChars;
+  private final CharsetDecoder decoder;
+  private int directLength;
+  private boolean directEnded;
+  private ByteBuffer pendingBytes;
+  private char[] decoded = NO_CHARS;
+  private int decodedLength;
+  private int available;
+  private boolean complete;
+
+  ResponseBodyCharSequence(byte[] data, String encoding) {
+    this.data = data;
+    Charset charset = findCharset(encoding);
+    this.bytesAreChars = StandardCharsets.ISO_8859_1.equals(charset);
+    this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    if (!bytesAreChars && !StandardCharsets.UTF_8.equals(charset)
+        && !StandardCharsets.US_ASCII.equals(charset)) {
+      startDecoding();
+    }
+    complete = data.length == 0;
+  }
+
+  private static Charset findCharset(String encoding) {
+    try {
+      return Charset.forName(encoding);
+    } catch (IllegalArgumentException e) {
+      return Charset.defaultCharset();
+    }
+  }
+
+  private void startDecoding() {
+    directEnded = true;
+    pendingBytes = ByteBuffer.wrap(data, directLength, data.length - directLength);
+    pendingBytes.limit(pendingBytes.position());
+  }
+
+  @Override
+  public int length() {
+    if (!complete) {
+      decodeUpTo(Integer.MAX_VALUE);
+    }
+    return available;
+  }
+
+  /**
+   * Gets the first characters of the body, decoding at most the given amount of them.
+   *
+   * @param maxLength maximum number of characters to return
+   * @return this sequence when it is not longer than the given length, otherwise a view of its
+   * first characters
+   */
+  CharSequence head(int maxLength) {
+    decodeUpTo(maxLength);
+    return complete && available <= maxLength ? this : new Slice(0, maxLength);
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index >= available) {
+      decodeUpTo(index + 1);
+    }
+    if (index < 0 || index >= available) {
+      throw new IndexOutOfBoundsException("index: " + index + ", length: " + available);
+    }
+    return index < directLength ? (char) (data[index] & 0xff) : decoded[index - directLength];
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    decodeUpTo(end);
+    checkRange(start, end, available);
+    return new Slice(start, end);
+  }
+
+  private static void checkRange(int start, int end, int length) {
+    if (start < 0 || start > end || end > length) {
+      throw new IndexOutOfBoundsException(
+          "start: " + start + ", end: " + end + ", length: " + length);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toString(0, length());
+  }
+
+  private String toString(int start, int end) {
+    char[] chars = new char[end - start];
+    int directEnd = Math.min(end, directLength);
+    for (int i = start; i < directEnd; i++) {
+      chars[i - start] = (char) (data[i] & 0xff);
+    }
+    int decodedStart = Math.max(start, directLength);
+    if (decodedStart < end) {
+      System.arraycopy(decoded, decodedStart - directLength, chars, decodedStart - start,
+          end - decodedStart);
+    }
+    return new String(chars);
+  }
+
+  private void decodeUpTo(int length) {
+    while (!complete && available < length) {
+      if (directEnded) {
+        decodeChunk();
+      } else {
+        readDirectChunk();
+      }
+    }
+  }
+
+  private void readDirectChunk() {
+    int chunkEnd = Math.min(data.length, directLength + CHUNK_SIZE);
+    while (directLength < chunkEnd && (bytesAreChars || data[directLength] >= 0)) {
+      directLength++;
+    }
+    available = directLength;
+    if (directLength == data.length) {
+      complete = true;
+    } else if (directLength < chunkEnd) {
+      startDecoding();
+    }
+  }
+
+  private void decodeChunk() {
+    boolean endOfInput = data.length - pendingBytes.limit() <= CHUNK_SIZE;
+    pendingBytes.limit(endOfInput ? data.length : pendingBytes.limit() + CHUNK_SIZE);
+    CharBuffer out;
+    CoderResult result;
+    do {
+      ensureDecodedCapacity(
+          (int) Math.ceil(pendingBytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+      out = CharBuffer.wrap(decoded, decodedLength, decoded.length - decodedLength);
+      result = decoder.decode(pendingBytes, out, endOfInput);
+      if (!result.isOverflow() && endOfInput) {
+        result = decoder.flush(out);
+      }
+      decodedLength = out.position();
+    } while (result.isOverflow());
+    available = directLength + decodedLength;
+    complete = endOfInput;
+  }
+
+  private void ensureDecodedCapacity(int extraChars) {
+    int required = decodedLength + extraChars;
+    if (required > decoded.length) {
+      decoded = Arrays.copyOf(decoded, Math.max(required, decoded.length * 2));
+    }
+  }
+
+  /**
+   * View of a range of the characters, which are decoded by the time the view is created.
+   */
+  private final class Slice implements CharSequence {
+
+    private final int start;
+    private final int end;
+
+    private Slice(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int length() {
+      return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= end - start) {
+        throw new IndexOutOfBoundsException("index: " + index + ", length: " + (end - start));
+      }
+      return ResponseBodyCharSequence.this.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int subStart, int subEnd) {
+      checkRange(subStart, subEnd, end - start);
+      return new Slice(start + subStart, start + subEnd);
+    }
+
+    @Override
+    public String toString() {
+      return ResponseBodyCharSequence.this.toString(start, end);
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import java.nio.CharBuffer;
+import org.apache.jmeter.samplers.SampleResult;
+
+/**
+ * Lazily obtains, at most once, each {@link ResultField} of a sample.
+ *
+ * <p>Some fields are expensive to obtain (decoding, unescaping or parsing the whole response), so
+ * one instance is created for every processed sample and shared between all the Correlation
+ * Extractors and Contexts that need its fields.
+ *
+ * <p>Fields can also be obtained as {@link CharSequence}s limited to their first characters, in
+ * which case the body is decoded from the response bytes only up to the needed characters (unless
+ * it was already obtained as a String).
+ */
+public final class ResultFieldCache {
+
+  private static final ResultField[] FIELDS = ResultField.values();
+
+  private final SampleResult result;
+  private final String[] values = new String[FIELDS.length];
+  private final boolean[] computed = new boolean[FIELDS.length];
+  private ResponseBodyCharSequence body;
+
+  public ResultFieldCache(SampleResult result) {
+    this.result = result;
+  }
+
+  public SampleResult getResult() {
+    return result;
+  }
+
+  public String get(ResultField field) {
+    int index = field.ordinal();
+    if (!computed[index]) {
+      values[index] = field.getField(result);
+      computed[index] = true;
+    }
+    return values[index];
+  }
+
+  /**
+   * Gets the first characters of a field, without decoding the whole body when not already done.
+   *
+   * @param field the field to get
+   * @param maxLength maximum number of characters to get, or 0 for no limit
+   * @return the field characters, or null when the field is not available
+   */
+  public CharSequence getSequence(ResultField field, int maxLength) {
+    if (field == ResultField.BODY && !computed[field.ordinal()]) {
+      if (body == null) {
+        body = new ResponseBodyCharSequence(result.getResponseData(),
+            result.getDataEncodingWithDefault());
+      }
+      return maxLength > 0 ? body.head(maxLength) : body;
+    }
+    String value = get(field);
+    return value != null && maxLength > 0 && value.length() > maxLength
+        ? CharBuffer.wrap(value, 0, maxLength) : value;
+  }
+}
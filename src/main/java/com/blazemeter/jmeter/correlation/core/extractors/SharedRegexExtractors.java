@@ -0,0 +1,103 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.testelement.TestElement;
+
+/**
+ * Keeps track of the {@link RegexExtractor}s added to the recorded samplers, to share the ones
+ * that are added again and again with the same definition, so they are added only once at the
+ * level of the recording target controller instead of to each sampler.
+ *
+ * <p>A shared extractor applies to every sampler in its scope, so only the extractors of a single
+ * match (with a <code>$group$</code> template and parent scope) are shared, and they have no
+ * default value. This way they only update the variable when a response matches, which is what
+ * happened while recording, instead of setting the default value on the responses that don't
+ * match. An extractor is only shared once its definition is added to a second sampler, keeping the
+ * first one as it is, so the extractors matching just once don't run on every sampler. Other
+ * extractors are kept in their samplers.
+ *
+ * <p>The recorder shares the extractors when the <code>CorrelationEngine.shareExtractors</code>
+ * JMeter property is set to true.
+ */
+public final class SharedRegexExtractors {
+
+  private static final Pattern GROUP_TEMPLATE_PATTERN = Pattern.compile("\\$\\d+\\$");
+
+  private final Set<String> addedDefinitions = new HashSet<>();
+  private final Set<String> sharedDefinitions = new HashSet<>();
+  private final List<RegexExtractor> newSharedExtractors = new ArrayList<>();
+
+  /**
+   * Removes the {@link RegexExtractor}s in the given children whose definition is shared.
+   *
+   * @param children the children of a sampler
+   * @param fromIndex the position of the first child to consider
+   */
+  public synchronized void share(List<TestElement> children, int fromIndex) {
+    for (int i = children.size() - 1; i >= fromIndex; i--) {
+      TestElement child = children.get(i);
+      if (child instanceof RegexExtractor && isShareable((RegexExtractor) child)
+          && isShared((RegexExtractor) child)) {
+        children.remove(i);
+      }
+    }
+  }
+
+  private static boolean isShareable(RegexExtractor extractor) {
+    return extractor.getMatchNumber() > 0
+        && GROUP_TEMPLATE_PATTERN.matcher(extractor.getTemplate()).matches()
+        && extractor.isScopeParent(extractor.fetchScope());
+  }
+
+  private boolean isShared(RegexExtractor extractor) {
+    String definition = buildDefinition(extractor);
+    if (sharedDefinitions.contains(definition)) {
+      return true;
+    }
+    // the first time it is added we keep it in the sampler and wait to see if it repeats
+    if (addedDefinitions.add(definition)) {
+      return false;
+    }
+    sharedDefinitions.add(definition);
+    newSharedExtractors.add(buildSharedExtractor(extractor));
+    return true;
+  }
+
+  private static String buildDefinition(RegexExtractor extractor) {
+    return String.join("\n", extractor.getRefName(), extractor.getRegex(),
+        extractor.getTemplate(), String.valueOf(extractor.getMatchNumber()),
+        ConsolidatedRegexExtractor.findField(extractor).name());
+  }
+
+  private static RegexExtractor buildSharedExtractor(RegexExtractor extractor) {
+    RegexExtractor ret = (RegexExtractor) extractor.clone();
+    ret.setName(extractor.getName() + " (shared)");
+    ret.setDefaultValue("");
+    return ret;
+  }
+
+  /**
+   * Gets the extractors shared since the last call, which need to be added to the target
+   * controller.
+   */
+  public synchronized List<RegexExtractor> pollNewSharedExtractors() {
+    if (newSharedExtractors.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<RegexExtractor> ret = new ArrayList<>(newSharedExtractors);
+    newSharedExtractors.clear();
+    return ret;
+  }
+
+  public synchronized void clear() {
+    addedDefinitions.clear();
+    sharedDefinitions.clear();
+    newSharedExtractors.clear();
+  }
+
+}
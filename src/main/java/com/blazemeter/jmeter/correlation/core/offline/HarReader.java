@@ -0,0 +1,330 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.samplers.SampleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the entries of a HAR (HTTP Archive) file, as the ones exported by browsers developer
+ * tools, converting each of them to the result JMeter would have got when recording it.
+ *
+ * <p>The file is parsed with a streaming parser, and each entry is converted and handed over as
+ * soon as it is read, so only one entry is kept in memory at a time. Entries are provided in the
+ * order they appear in the file, which the HAR specification defines as sorted by their start
+ * time.
+ */
+final class HarReader {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HarReader.class);
+  private static final JsonFactory JSON_FACTORY = new JsonFactory()
+      .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+  private static final String BASE64_ENCODING = "base64";
+
+  private final StringBuilder headersBuilder = new StringBuilder();
+
+  /**
+   * Reads all the entries of a HAR.
+   *
+   * @param har the HAR contents, which is not closed after reading it
+   * @param resultConsumer receives the result of each entry, in the order they are read
+   * @throws IOException when the HAR can't be read or is not valid JSON
+   */
+  void read(InputStream har, Consumer<HTTPSampleResult> resultConsumer) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(har)) {
+      readObject(parser, field -> {
+        if ("log".equals(field)) {
+          readObject(parser, logField -> {
+            if ("entries".equals(logField)) {
+              readEntries(parser, resultConsumer);
+            } else {
+              parser.skipChildren();
+            }
+          });
+        } else {
+          parser.skipChildren();
+        }
+      });
+    }
+  }
+
+  private static void readObject(JsonParser parser, FieldReader fieldReader) throws IOException {
+    JsonToken token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      fieldReader.read(field);
+    }
+  }
+
+  private static void readArray(JsonParser parser, ElementReader elementReader)
+      throws IOException {
+    JsonToken token = parser.currentToken();
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    if (token != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "Expected a JSON array but found " + token);
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      elementReader.read();
+    }
+  }
+
+  private void readEntries(JsonParser parser, Consumer<HTTPSampleResult> resultConsumer)
+      throws IOException {
+    readArray(parser, () -> {
+      HTTPSampleResult result = readEntry(parser);
+      if (result != null) {
+        resultConsumer.accept(result);
+      }
+    });
+  }
+
+  private HTTPSampleResult readEntry(JsonParser parser) throws IOException {
+    HTTPSampleResult result = new HTTPSampleResult();
+    long[] startAndTime = new long[2];
+    boolean[] validUrl = {true};
+    readObject(parser, field -> {
+      switch (field) {
+        case "startedDateTime":
+          startAndTime[0] = parseTimestamp(parser.getValueAsString());
+          break;
+        case "time":
+          startAndTime[1] = parser.getValueAsLong();
+          break;
+        case "request":
+          validUrl[0] = readRequest(parser, result);
+          break;
+        case "response":
+          readResponse(parser, result);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    });
+    if (!validUrl[0]) {
+      return null;
+    }
+    result.setStampAndTime(startAndTime[0], startAndTime[1]);
+    return result;
+  }
+
+  private static long parseTimestamp(String dateTime) {
+    try {
+      return OffsetDateTime.parse(dateTime).toInstant().toEpochMilli();
+    } catch (DateTimeParseException | NullPointerException e) {
+      LOG.debug("Ignoring invalid HAR entry start time {}", dateTime);
+      return 0;
+    }
+  }
+
+  private boolean readRequest(JsonParser parser, HTTPSampleResult result) throws IOException {
+    String[] url = new String[1];
+    StringBuilder cookies = new StringBuilder();
+    headersBuilder.setLength(0);
+    readObject(parser, field -> {
+      switch (field) {
+        case "method":
+          result.setHTTPMethod(parser.getValueAsString());
+          break;
+        case "url":
+          url[0] = parser.getValueAsString();
+          break;
+        case "headers":
+          readNameValues(parser, this::appendHeader);
+          break;
+        case "cookies":
+          readNameValues(parser, (name, value) -> {
+            if (cookies.length() > 0) {
+              cookies.append("; ");
+            }
+            cookies.append(name).append('=').append(value);
+          });
+          break;
+        case "postData":
+          readObject(parser, postDataField -> {
+            if ("text".equals(postDataField)) {
+              result.setQueryString(parser.getValueAsString());
+            } else {
+              parser.skipChildren();
+            }
+          });
+          break;
+        default:
+          parser.skipChildren();
+      }
+    });
+    result.setRequestHeaders(headersBuilder.toString());
+    result.setCookies(cookies.toString());
+    return setUrl(url[0], result);
+  }
+
+  private static void readNameValues(JsonParser parser, BiConsumer<String, String> consumer)
+      throws IOException {
+    readArray(parser, () -> {
+      String[] nameValue = new String[2];
+      readObject(parser, field -> {
+        if ("name".equals(field)) {
+          nameValue[0] = parser.getValueAsString();
+        } else if ("value".equals(field)) {
+          nameValue[1] = parser.getValueAsString();
+        } else {
+          parser.skipChildren();
+        }
+      });
+      if (nameValue[0] != null) {
+        consumer.accept(nameValue[0], nameValue[1] != null ? nameValue[1] : "");
+      }
+    });
+  }
+
+  private void appendHeader(String name, String value) {
+    // HTTP/2 pseudo headers (eg: :authority) are not actual headers to send
+    if (!name.startsWith(":")) {
+      headersBuilder.append(name).append(": ").append(value).append('\n');
+    }
+  }
+
+  private static boolean setUrl(String url, HTTPSampleResult result) {
+    if (url == null || !url.startsWith("http://") && !url.startsWith("https://")) {
+      LOG.debug("Ignoring HAR entry with non HTTP URL {}", url);
+      return false;
+    }
+    try {
+      URL parsedUrl = new URL(url);
+      result.setURL(parsedUrl);
+      result.setSampleLabel(parsedUrl.getPath().isEmpty() ? "/" : parsedUrl.getPath());
+      return true;
+    } catch (MalformedURLException e) {
+      LOG.warn("Ignoring HAR entry with invalid URL {}", url, e);
+      return false;
+    }
+  }
+
+  private void readResponse(JsonParser parser, HTTPSampleResult result) throws IOException {
+    String[] statusLine = {"HTTP/1.1", "", ""};
+    headersBuilder.setLength(0);
+    readObject(parser, field -> {
+      switch (field) {
+        case "status":
+          statusLine[1] = parser.getValueAsString();
+          break;
+        case "statusText":
+          statusLine[2] = parser.getValueAsString();
+          break;
+        case "httpVersion":
+          String httpVersion = parser.getValueAsString();
+          if (httpVersion != null && !httpVersion.isEmpty()) {
+            statusLine[0] = httpVersion;
+          }
+          break;
+        case "headers":
+          readNameValues(parser, this::appendHeader);
+          break;
+        case "content":
+          readContent(parser, result);
+          break;
+        case "redirectURL":
+          String redirectUrl = parser.getValueAsString();
+          if (redirectUrl != null && !redirectUrl.isEmpty()) {
+            result.setRedirectLocation(redirectUrl);
+          }
+          break;
+        default:
+          parser.skipChildren();
+      }
+    });
+    result.setResponseCode(statusLine[1]);
+    result.setResponseMessage(statusLine[2]);
+    result.setSuccessful(isSuccessCode(statusLine[1]));
+    headersBuilder.insert(0, statusLine[0] + " " + statusLine[1] + " " + statusLine[2] + "\n");
+    result.setResponseHeaders(headersBuilder.toString());
+  }
+
+  private static boolean isSuccessCode(String code) {
+    return code.length() == 3 && (code.charAt(0) == '2' || code.charAt(0) == '3');
+  }
+
+  private static void readContent(JsonParser parser, HTTPSampleResult result)
+      throws IOException {
+    String[] textAndEncoding = new String[2];
+    readObject(parser, field -> {
+      switch (field) {
+        case "mimeType":
+          String mimeType = parser.getValueAsString();
+          if (mimeType != null && !mimeType.isEmpty()) {
+            result.setContentType(mimeType);
+            result.setEncodingAndType(mimeType);
+          }
+          break;
+        case "text":
+          textAndEncoding[0] = parser.getValueAsString();
+          break;
+        case "encoding":
+          textAndEncoding[1] = parser.getValueAsString();
+          break;
+        default:
+          parser.skipChildren();
+      }
+    });
+    String text = textAndEncoding[0];
+    if (text == null) {
+      result.setResponseData(new byte[0]);
+    } else if (BASE64_ENCODING.equals(textAndEncoding[1])) {
+      result.setDataType(SampleResult.BINARY);
+      try {
+        result.setResponseData(Base64.getMimeDecoder().decode(text));
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Ignoring invalid base64 content of {}", result.getUrlAsString(), e);
+        result.setResponseData(new byte[0]);
+      }
+    } else {
+      result.setDataType(SampleResult.TEXT);
+      if (result.getDataEncodingNoDefault() == null) {
+        // HAR text is already decoded, so we keep it as is instead of using HTTP default encoding
+        result.setDataEncoding(StandardCharsets.UTF_8.name());
+      }
+      try {
+        result.setResponseData(text.getBytes(result.getDataEncodingNoDefault()));
+      } catch (UnsupportedEncodingException e) {
+        result.setDataEncoding(StandardCharsets.UTF_8.name());
+        result.setResponseData(text.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface FieldReader {
+
+    void read(String field) throws IOException;
+  }
+
+  @FunctionalInterface
+  private interface ElementReader {
+
+    void read() throws IOException;
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import org.apache.jmeter.protocol.http.control.Header;
+import org.apache.jmeter.protocol.http.control.HeaderManager;
+import org.apache.jmeter.protocol.http.control.gui.HttpTestSampleGui;
+import org.apache.jmeter.protocol.http.gui.HeaderPanel;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerProxy;
+import org.apache.jmeter.protocol.http.util.HTTPConstants;
+import org.apache.jmeter.testelement.TestElement;
+
+/**
+ * Builds the sampler, and the Header Manager, to send the request of a recorded result, like the
+ * JMeter recorder does with the requests received by the proxy.
+ */
+final class RecordedSamplerFactory {
+
+  private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+  private static final String CHARSET_PARAMETER = "charset=";
+  // cookies are handled by the Cookie Manager and the rest are computed when sending the request
+  private static final Set<String> EXCLUDED_HEADERS = new HashSet<>(Arrays.asList(
+      HTTPConstants.HEADER_COOKIE.toLowerCase(Locale.US),
+      HTTPConstants.HEADER_CONTENT_LENGTH.toLowerCase(Locale.US),
+      HTTPConstants.HEADER_HOST.toLowerCase(Locale.US), "if-modified-since", "if-none-match",
+      "proxy-connection"));
+  private static final Set<String> METHODS_WITHOUT_BODY = new HashSet<>(Arrays.asList(
+      HTTPConstants.GET, HTTPConstants.HEAD, HTTPConstants.OPTIONS, HTTPConstants.TRACE));
+
+  private final boolean followRedirects;
+  private final boolean autoRedirects;
+
+  RecordedSamplerFactory(boolean followRedirects, boolean autoRedirects) {
+    this.followRedirects = followRedirects;
+    this.autoRedirects = autoRedirects;
+  }
+
+  HTTPSamplerBase buildSampler(HTTPSampleResult result) {
+    HTTPSamplerProxy sampler = new HTTPSamplerProxy();
+    sampler.setProperty(TestElement.GUI_CLASS, HttpTestSampleGui.class.getName());
+    sampler.setProperty(TestElement.TEST_CLASS, HTTPSamplerProxy.class.getName());
+    sampler.setName(result.getSampleLabel());
+    URL url = result.getURL();
+    sampler.setProtocol(url.getProtocol());
+    sampler.setDomain(url.getHost());
+    if (url.getPort() != -1) {
+      sampler.setPort(url.getPort());
+    }
+    String method = result.getHTTPMethod();
+    sampler.setMethod(method);
+    sampler.setFollowRedirects(followRedirects);
+    sampler.setAutoRedirects(autoRedirects);
+    sampler.setUseKeepAlive(true);
+    String query = url.getQuery();
+    if (METHODS_WITHOUT_BODY.contains(method)) {
+      sampler.setPath(url.getPath());
+      if (query != null && !query.isEmpty()) {
+        sampler.parseArguments(query);
+      }
+    } else {
+      sampler.setPath(query != null && !query.isEmpty() ? url.getPath() + "?" + query
+          : url.getPath());
+      setBody(sampler, result.getQueryString(), findContentType(result.getRequestHeaders()));
+    }
+    return sampler;
+  }
+
+  private static String findContentType(String requestHeaders) {
+    for (String line : requestHeaders.split("\n")) {
+      int separator = line.indexOf(':');
+      if (separator > 0 && HTTPConstants.HEADER_CONTENT_TYPE
+          .equalsIgnoreCase(line.substring(0, separator).trim())) {
+        return line.substring(separator + 1).trim();
+      }
+    }
+    return "";
+  }
+
+  private static void setBody(HTTPSamplerBase sampler, String body, String contentType) {
+    String lowerContentType = contentType.toLowerCase(Locale.US);
+    int charsetPos = lowerContentType.indexOf(CHARSET_PARAMETER);
+    String encoding = charsetPos >= 0
+        ? contentType.substring(charsetPos + CHARSET_PARAMETER.length()).split(";")[0].trim()
+        : null;
+    if (encoding != null) {
+      sampler.setContentEncoding(encoding);
+    }
+    if (body == null || body.isEmpty()) {
+      return;
+    }
+    if (lowerContentType.startsWith(FORM_CONTENT_TYPE) && encoding != null) {
+      sampler.parseArguments(body, encoding);
+    } else if (lowerContentType.startsWith(FORM_CONTENT_TYPE)) {
+      sampler.parseArguments(body);
+    } else {
+      sampler.setPostBodyRaw(true);
+      sampler.addNonEncodedArgument("", body, "");
+    }
+  }
+
+  HeaderManager buildHeaderManager(HTTPSampleResult result) {
+    HeaderManager ret = new HeaderManager();
+    ret.setProperty(TestElement.GUI_CLASS, HeaderPanel.class.getName());
+    ret.setProperty(TestElement.TEST_CLASS, HeaderManager.class.getName());
+    ret.setName("Browser-derived headers");
+    for (String line : result.getRequestHeaders().split("\n")) {
+      int separator = line.indexOf(':');
+      if (separator <= 0) {
+        continue;
+      }
+      String name = line.substring(0, separator).trim();
+      if (!EXCLUDED_HEADERS.contains(name.toLowerCase(Locale.US))) {
+        ret.add(new Header(name, line.substring(separator + 1).trim()));
+      }
+    }
+    return ret;
+  }
+
+}
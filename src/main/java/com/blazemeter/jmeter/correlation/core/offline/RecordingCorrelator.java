@@ -0,0 +1,281 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import com.blazemeter.jmeter.correlation.CorrelationProxyControl;
+import com.blazemeter.jmeter.correlation.core.CorrelationEngine;
+import com.blazemeter.jmeter.correlation.core.RulesGroup;
+import com.blazemeter.jmeter.correlation.core.proxy.CookieTracker;
+import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiPredicate;
+import org.apache.jmeter.control.LoopController;
+import org.apache.jmeter.control.gui.LoopControlPanel;
+import org.apache.jmeter.control.gui.TestPlanGui;
+import org.apache.jmeter.protocol.http.control.CookieManager;
+import org.apache.jmeter.protocol.http.gui.CookiePanel;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.reporters.ResultCollector;
+import org.apache.jmeter.reporters.ResultCollectorHelper;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.TestPlan;
+import org.apache.jmeter.threads.ThreadGroup;
+import org.apache.jmeter.threads.gui.ThreadGroupGui;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.jmeter.visualizers.Visualizer;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.SearchByClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates the correlated test plan of a recording saved in a JTL (XML) or HAR file, applying
+ * the correlation rules to each recorded sample like the recorder does, without the need of
+ * recording again.
+ *
+ * <p>Samples are read, correlated and written one at a time, so the memory used doesn't depend on
+ * the size of the recording. JTLs need to include the request headers, cookies and sampler data,
+ * and the response headers and data, for the correlation rules to work as when recording.
+ */
+public class RecordingCorrelator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RecordingCorrelator.class);
+  private static final String HAR_EXTENSION = ".har";
+
+  private final CorrelationEngine correlationEngine = new CorrelationEngine();
+  private final String responseFilter;
+  private final BiPredicate<HTTPSamplerBase, SampleResult> recordingFilter;
+  private final RecordedSamplerFactory samplerFactory;
+  private final boolean attemptRedirectDisabling = JMeterUtils
+      .getPropDefault("proxy.redirect.disabling", true);
+
+  public RecordingCorrelator(List<RulesGroup> groups, String responseFilter) {
+    this(groups, responseFilter, (sampler, result) -> true, true, false);
+  }
+
+  private RecordingCorrelator(List<RulesGroup> groups, String responseFilter,
+      BiPredicate<HTTPSamplerBase, SampleResult> recordingFilter, boolean followRedirects,
+      boolean autoRedirects) {
+    correlationEngine.setCorrelationRules(groups, CorrelationComponentsRegistry.getInstance());
+    this.responseFilter = responseFilter;
+    this.recordingFilter = recordingFilter;
+    this.samplerFactory = new RecordedSamplerFactory(followRedirects, autoRedirects);
+  }
+
+  /**
+   * Creates an instance with the correlation rules and the filters (URL patterns, content types
+   * and response filter) configured in a recorder.
+   */
+  public static RecordingCorrelator fromRecorder(CorrelationProxyControl recorder) {
+    return new RecordingCorrelator(recorder.getGroups(), recorder.getResponseFilter(),
+        recorder::isRecordable, recorder.getSamplerFollowRedirects(),
+        recorder.getSamplerRedirectAutomatically());
+  }
+
+  /**
+   * Generates the correlated test plan of the samples in a JTL.
+   *
+   * @param jtl the XML results of the recording
+   * @param testPlan where to write the generated test plan (JMX)
+   * @throws IOException when the JTL can't be read or the test plan can't be written
+   */
+  public void correlateJtl(InputStream jtl, OutputStream testPlan) throws IOException {
+    correlate(testPlan, sampleCorrelator -> SaveService.loadTestResults(jtl,
+        new ResultCollectorHelper(new ResultCollector(), sampleCorrelator)));
+  }
+
+  /**
+   * Generates the correlated test plan of the entries in a HAR.
+   *
+   * @param har the HTTP archive of the recording
+   * @param testPlan where to write the generated test plan (JMX)
+   * @throws IOException when the HAR can't be read or the test plan can't be written
+   */
+  public void correlateHar(InputStream har, OutputStream testPlan) throws IOException {
+    correlate(testPlan, sampleCorrelator -> new HarReader().read(har, sampleCorrelator::add));
+  }
+
+  private void correlate(OutputStream testPlan, SamplesLoader samplesLoader) throws IOException {
+    correlationEngine.reset();
+    StreamingTestPlanWriter writer = new StreamingTestPlanWriter(testPlan);
+    writer.writeStart(buildTestPlan(), buildThreadGroup(),
+        Collections.singletonList(buildCookieManager()));
+    SampleCorrelator sampleCorrelator = new SampleCorrelator(writer);
+    samplesLoader.load(sampleCorrelator);
+    if (sampleCorrelator.writeError != null) {
+      throw sampleCorrelator.writeError;
+    }
+    writer.writeEnd();
+    LOG.info("Correlated {} recorded samples", sampleCorrelator.samplesCount);
+  }
+
+  private static TestPlan buildTestPlan() {
+    TestPlan ret = new TestPlan("Correlated Test Plan");
+    ret.setProperty(TestElement.GUI_CLASS, TestPlanGui.class.getName());
+    ret.setProperty(TestElement.TEST_CLASS, TestPlan.class.getName());
+    return ret;
+  }
+
+  private static ThreadGroup buildThreadGroup() {
+    LoopController loopController = new LoopController();
+    loopController.setProperty(TestElement.GUI_CLASS, LoopControlPanel.class.getName());
+    loopController.setProperty(TestElement.TEST_CLASS, LoopController.class.getName());
+    loopController.setName("Loop Controller");
+    loopController.setLoops(1);
+    loopController.setContinueForever(false);
+    ThreadGroup ret = new ThreadGroup();
+    ret.setProperty(TestElement.GUI_CLASS, ThreadGroupGui.class.getName());
+    ret.setProperty(TestElement.TEST_CLASS, ThreadGroup.class.getName());
+    ret.setName("Thread Group");
+    ret.setNumThreads(1);
+    ret.setRampUp(1);
+    ret.setSamplerController(loopController);
+    return ret;
+  }
+
+  private static CookieManager buildCookieManager() {
+    CookieManager ret = new CookieManager();
+    ret.setProperty(TestElement.GUI_CLASS, CookiePanel.class.getName());
+    ret.setProperty(TestElement.TEST_CLASS, CookieManager.class.getName());
+    ret.setName("HTTP Cookie Manager");
+    return ret;
+  }
+
+  /**
+   * Generates the correlated test plan of a JTL, or a HAR when the file has <code>.har</code>
+   * extension, with the rules of the first recorder found in a test plan.
+   *
+   * <p>JMeter and the plugins used by the rules need to be in the classpath, eg: <code>java -cp
+   * "$JMETER_HOME/lib/*:$JMETER_HOME/lib/ext/*" ...RecordingCorrelator $JMETER_HOME recorder.jmx
+   * recording.jtl correlated.jmx</code>.
+   *
+   * @param args JMeter home, the test plan with the recorder, the recording and the test plan to
+   * generate
+   * @throws IOException when some of the files can't be read or written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4) {
+      System.err.println("Usage: RecordingCorrelator <jmeterHome> <recorderTestPlan.jmx> "
+          + "<recording.jtl|recording.har> <correlatedTestPlan.jmx>");
+      System.exit(1);
+    }
+    JMeterUtils.setJMeterHome(args[0]);
+    JMeterUtils.loadJMeterProperties(
+        new File(args[0], "bin" + File.separator + "jmeter.properties").getPath());
+    JMeterUtils.initLocale();
+    RecordingCorrelator correlator = fromRecorder(findRecorder(new File(args[1])));
+    try (InputStream recording = new FileInputStream(args[2]);
+        OutputStream testPlan = new FileOutputStream(args[3])) {
+      if (args[2].toLowerCase(Locale.US).endsWith(HAR_EXTENSION)) {
+        correlator.correlateHar(recording, testPlan);
+      } else {
+        correlator.correlateJtl(recording, testPlan);
+      }
+    }
+  }
+
+  private static CorrelationProxyControl findRecorder(File testPlan) throws IOException {
+    HashTree tree = SaveService.loadTree(testPlan);
+    SearchByClass<CorrelationProxyControl> search = new SearchByClass<>(
+        CorrelationProxyControl.class);
+    tree.traverse(search);
+    Iterator<CorrelationProxyControl> recorders = search.getSearchResults().iterator();
+    if (!recorders.hasNext()) {
+      throw new IllegalArgumentException("No Correlation Recorder found in " + testPlan);
+    }
+    return recorders.next();
+  }
+
+  private final class SampleCorrelator implements Visualizer {
+
+    private final StreamingTestPlanWriter writer;
+    private final CookieTracker cookieTracker = new CookieTracker();
+    private String lastRedirect;
+    private long samplesCount;
+    // kept to be thrown after loading the results, since errors in the visualizer are wrapped
+    private IOException writeError;
+
+    private SampleCorrelator(StreamingTestPlanWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void add(SampleResult sample) {
+      SampleResult[] subResults = sample.getSubResults();
+      if (subResults.length > 0) {
+        for (SampleResult subResult : subResults) {
+          add(subResult);
+        }
+      } else if (writeError == null && sample instanceof HTTPSampleResult
+          && sample.getURL() != null) {
+        correlate((HTTPSampleResult) sample);
+      }
+    }
+
+    private void correlate(HTTPSampleResult result) {
+      HTTPSamplerBase sampler = samplerFactory.buildSampler(result);
+      if (!recordingFilter.test(sampler, result)) {
+        return;
+      }
+      disableFollowedRedirect(sampler, result);
+      List<TestElement> children = new ArrayList<>();
+      children.add(samplerFactory.buildHeaderManager(result));
+      cookieTracker.addMissingCookies(result, children);
+      correlationEngine.process(sampler, children, result, responseFilter);
+      try {
+        for (TestElement extractor : correlationEngine.pollSharedExtractors()) {
+          writer.writeThreadGroupElement(extractor);
+        }
+        writer.writeSampler(sampler, children);
+        samplesCount++;
+      } catch (IOException e) {
+        writeError = e;
+      }
+    }
+
+    // same logic as the one used by JMeter recorder
+    private void disableFollowedRedirect(HTTPSamplerBase sampler, HTTPSampleResult result) {
+      if (!attemptRedirectDisabling
+          || !sampler.getFollowRedirects() && !sampler.getAutoRedirects()) {
+        return;
+      }
+      if (result.getUrlAsString().equals(lastRedirect)) {
+        sampler.setEnabled(false);
+        sampler.setComment("Detected a redirect from the previous sample");
+      } else {
+        lastRedirect = null;
+      }
+      if (result.isRedirect()) {
+        if (lastRedirect == null) {
+          sampler.setComment("Detected the start of a redirect chain");
+        }
+        lastRedirect = result.getRedirectLocation();
+      } else {
+        lastRedirect = null;
+      }
+    }
+
+    @Override
+    public boolean isStats() {
+      return false;
+    }
+  }
+
+  @FunctionalInterface
+  private interface SamplesLoader {
+
+    void load(SampleCorrelator sampleCorrelator) throws IOException;
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.util.JMeterUtils;
+
+/**
+ * Writes a test plan (JMX) with a thread group, adding the samplers to the thread group as they
+ * are generated, instead of building the whole tree in memory as {@link SaveService#saveTree}
+ * requires.
+ *
+ * <p>Each element is serialized with {@link SaveService}, so the result is the same as saving the
+ * test plan from JMeter.
+ */
+final class StreamingTestPlanWriter {
+
+  private static final String XML_DECLARATION_END = "?>";
+
+  private final String encoding = SaveService.getFileEncoding(StandardCharsets.UTF_8.name());
+  private final OutputStream out;
+  private final Writer writer;
+
+  StreamingTestPlanWriter(OutputStream out) throws IOException {
+    this.out = out;
+    this.writer = new OutputStreamWriter(out, encoding);
+  }
+
+  void writeStart(TestElement testPlan, TestElement threadGroup,
+      List<TestElement> threadGroupConfigs) throws IOException {
+    writer.write("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n");
+    writer.write("<jmeterTestPlan version=\"1.2\" properties=\""
+        + SaveService.getPropertiesVersion() + "\" jmeter=\"" + JMeterUtils.getJMeterVersion()
+        + "\">\n");
+    writer.write("<hashTree>\n");
+    writeElement(testPlan);
+    writer.write("<hashTree>\n");
+    writeElement(threadGroup);
+    writer.write("<hashTree>\n");
+    for (TestElement config : threadGroupConfigs) {
+      writeThreadGroupElement(config);
+    }
+  }
+
+  private void writeElement(TestElement element) throws IOException {
+    ByteArrayOutputStream elementOut = new ByteArrayOutputStream();
+    SaveService.saveElement(element, elementOut);
+    String xml = elementOut.toString(encoding);
+    int start = xml.indexOf(XML_DECLARATION_END) + XML_DECLARATION_END.length();
+    writer.write(xml, start, xml.length() - start);
+    writer.write('\n');
+  }
+
+  void writeThreadGroupElement(TestElement element) throws IOException {
+    writeElement(element);
+    writer.write("<hashTree/>\n");
+  }
+
+  void writeSampler(TestElement sampler, List<TestElement> children) throws IOException {
+    writeElement(sampler);
+    writer.write("<hashTree>\n");
+    for (TestElement child : children) {
+      writeElement(child);
+      writer.write("<hashTree/>\n");
+    }
+    writer.write("</hashTree>\n");
+  }
+
+  void writeEnd() throws IOException {
+    writer.write("</hashTree>\n</hashTree>\n</hashTree>\n</jmeterTestPlan>\n");
+    writer.flush();
+    out.flush();
+  }
+
+}
@@ -0,0 +1,170 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.testelement.TestElement;
+
+/**
+ * Keeps the last value of each cookie seen while recording, identified by its domain and name.
+ *
+ * <p>Cookies are parsed from the headers scanning them in place, without splitting them into
+ * intermediate strings, and only the names and values of the parsed cookies are copied. Cookies
+ * without name and value separator are ignored, and cookie pairs not followed by a <code>;</code>
+ * (like the last ones) extend up to the end of the header.
+ */
+public class CookieTracker {
+
+  private static final String SET_COOKIE_HEADER = "set-cookie";
+
+  private final Map<String, Map<String, ComparableCookie>> domainsCookies = new HashMap<>();
+
+  /**
+   * Stores the cookie, replacing any previous value of the cookie with the same domain and name.
+   */
+  public void put(ComparableCookie cookie) {
+    domainsCookies.computeIfAbsent(cookie.getDomain(), d -> new LinkedHashMap<>())
+        .put(cookie.getName(), cookie);
+  }
+
+  /**
+   * Adds a {@link SetCookiePreProcessor} for each cookie sent in the request of the result which
+   * was not set by previous responses, and stores the cookies sent in the request and set by the
+   * response.
+   *
+   * @param result recorded result of the request
+   * @param children children of the sampler, where the pre processors are added
+   */
+  public void addMissingCookies(HTTPSampleResult result, List<TestElement> children) {
+    /*
+     we can't use CookieManager, CookieSpec or even HttpCookie since they treat the different
+     cookies just as attributes, and then is not possible to get the values.
+     */
+    String host = result.getURL().getHost();
+    for (ComparableCookie cookie : findNewCookies(result.getCookies(), host)) {
+      children.add(SetCookiePreProcessor.fromNameAndValue(cookie.getName(), cookie.getValue()));
+      put(cookie);
+    }
+    putSetCookies(result.getResponseHeaders(), host);
+  }
+
+  /**
+   * Finds the cookies sent in a <code>Cookie</code> request header which are not stored, or are
+   * stored with a different value.
+   *
+   * @param cookieHeader value of the header, in the form <code>name1=value1; name2=value2</code>
+   * @param domain domain the cookies were sent to
+   * @return the new cookies, in the order they appear in the header
+   */
+  public List<ComparableCookie> findNewCookies(String cookieHeader, String domain) {
+    if (cookieHeader == null) {
+      return Collections.emptyList();
+    }
+    Map<String, ComparableCookie> cookies = domainsCookies.getOrDefault(domain,
+        Collections.emptyMap());
+    List<ComparableCookie> ret = new ArrayList<>();
+    int pos = 0;
+    while (pos < cookieHeader.length()) {
+      int pairEnd = cookieHeader.indexOf(';', pos);
+      if (pairEnd < 0) {
+        pairEnd = cookieHeader.length();
+      }
+      ComparableCookie cookie = parseCookiePair(cookieHeader, pos, pairEnd, domain);
+      if (cookie != null) {
+        ComparableCookie stored = cookies.get(cookie.getName());
+        if (stored == null || !stored.getValue().equals(cookie.getValue())) {
+          ret.add(cookie);
+        }
+      }
+      pos = pairEnd + 1;
+    }
+    return ret;
+  }
+
+  private static ComparableCookie parseCookiePair(String text, int start, int end,
+      String domain) {
+    int separator = text.indexOf('=', start);
+    if (separator < 0 || separator >= end) {
+      return null;
+    }
+    int nameStart = skipWhitespace(text, start, separator);
+    int nameEnd = trimWhitespace(text, nameStart, separator);
+    if (nameStart == nameEnd) {
+      return null;
+    }
+    int valueStart = skipWhitespace(text, separator + 1, end);
+    int valueEnd = trimWhitespace(text, valueStart, end);
+    return new ComparableCookie(text.substring(nameStart, nameEnd),
+        text.substring(valueStart, valueEnd), domain);
+  }
+
+  private static int skipWhitespace(String text, int start, int end) {
+    while (start < end && Character.isWhitespace(text.charAt(start))) {
+      start++;
+    }
+    return start;
+  }
+
+  private static int trimWhitespace(String text, int start, int end) {
+    while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Stores the cookies set by the <code>Set-Cookie</code> headers of a response.
+   *
+   * @param responseHeaders the response headers, one per line
+   * @param domain domain which set the cookies
+   */
+  public void putSetCookies(String responseHeaders, String domain) {
+    if (responseHeaders == null) {
+      return;
+    }
+    int lineStart = 0;
+    while (lineStart < responseHeaders.length()) {
+      int lineEnd = responseHeaders.indexOf('\n', lineStart);
+      if (lineEnd < 0) {
+        lineEnd = responseHeaders.length();
+      }
+      int valueStart = findSetCookieValueStart(responseHeaders, lineStart, lineEnd);
+      if (valueStart >= 0) {
+        int pairEnd = responseHeaders.indexOf(';', valueStart);
+        ComparableCookie cookie = parseCookiePair(responseHeaders, valueStart,
+            pairEnd >= 0 && pairEnd < lineEnd ? pairEnd : lineEnd, domain);
+        if (cookie != null) {
+          put(cookie);
+        }
+      }
+      lineStart = lineEnd + 1;
+    }
+  }
+
+  private static int findSetCookieValueStart(String headers, int lineStart, int lineEnd) {
+    int nameStart = skipWhitespace(headers, lineStart, lineEnd);
+    int nameEnd = nameStart + SET_COOKIE_HEADER.length();
+    if (nameEnd > lineEnd
+        || !headers.regionMatches(true, nameStart, SET_COOKIE_HEADER, 0,
+        SET_COOKIE_HEADER.length())) {
+      return -1;
+    }
+    int separator = skipWhitespace(headers, nameEnd, lineEnd);
+    return separator < lineEnd && headers.charAt(separator) == ':' ? separator + 1 : -1;
+  }
+
+  public Collection<ComparableCookie> getCookies() {
+    List<ComparableCookie> ret = new ArrayList<>();
+    domainsCookies.values().forEach(cookies -> ret.addAll(cookies.values()));
+    return ret;
+  }
+
+  public void clear() {
+    domainsCookies.clear();
+  }
+}
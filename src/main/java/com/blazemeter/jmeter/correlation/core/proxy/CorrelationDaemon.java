@@ -0,0 +1,182 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.jmeter.protocol.http.proxy.Daemon;
+import org.apache.jmeter.protocol.http.proxy.Proxy;
+import org.apache.jmeter.protocol.http.proxy.ProxyControl;
+import org.apache.jorphan.util.JOrphanUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recording server which runs the proxy of each accepted connection in an executor, instead of
+ * starting a new thread for each of them as JMeter {@link Daemon} does.
+ *
+ * <p>Depending on the {@link ExecutionMode}, proxies run in virtual threads (when supported by the
+ * JVM) or in a pool of reused threads, avoiding the cost of starting a thread for each request and
+ * the limit of threads when browsers open many connections. In both cases the order of the
+ * recorded requests is kept by {@link CorrelationProxy}, the same way it is done when each proxy
+ * runs in its own thread.
+ */
+public class CorrelationDaemon extends Daemon {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CorrelationDaemon.class);
+  private static final Field MAIN_SOCKET_FIELD = ReflectionUtils
+      .getField(Daemon.class, "mainSocket");
+  private static final Method CONFIGURE_METHOD = ReflectionUtils.getMethod(Proxy.class,
+      "configure", Socket.class, ProxyControl.class, Map.class, Map.class);
+
+  private final ProxyControl target;
+  private final ExecutorService executor;
+  private volatile boolean running;
+
+  public CorrelationDaemon(int port, ProxyControl target, ExecutorService executor)
+      throws IOException {
+    super(port, target, CorrelationProxy.class);
+    ReflectionUtils.checkFields(Daemon.class, MAIN_SOCKET_FIELD);
+    ReflectionUtils.checkMethods(Proxy.class, CONFIGURE_METHOD);
+    this.target = target;
+    this.executor = executor;
+  }
+
+  @Override
+  public void run() {
+    running = true;
+    ServerSocket mainSocket = getMainSocket();
+    // these are shared by all proxies, as JMeter Daemon does
+    Map<String, String> pageEncodings = Collections.synchronizedMap(new HashMap<>());
+    Map<String, String> formEncodings = Collections.synchronizedMap(new HashMap<>());
+    try {
+      LOG.info("Proxy up and running!");
+      while (running) {
+        try {
+          Socket clientSocket = mainSocket.accept();
+          if (running) {
+            Proxy proxy = new CorrelationProxy();
+            configure(proxy, clientSocket, pageEncodings, formEncodings);
+            executor.execute(proxy);
+          } else {
+            JOrphanUtils.closeQuietly(clientSocket);
+          }
+        } catch (InterruptedIOException e) {
+          // accept timed out, so we can check if the server is still running
+        }
+      }
+      LOG.info("Proxy Server stopped");
+    } catch (Exception e) {
+      LOG.warn("Proxy Server stopped", e);
+    } finally {
+      JOrphanUtils.closeQuietly(mainSocket);
+      executor.shutdown();
+    }
+  }
+
+  private ServerSocket getMainSocket() {
+    try {
+      return (ServerSocket) MAIN_SOCKET_FIELD.get(this);
+    } catch (IllegalAccessException e) {
+      // this should never happen since we modify the visibility of the field
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void configure(Proxy proxy, Socket clientSocket, Map<String, String> pageEncodings,
+      Map<String, String> formEncodings) {
+    try {
+      CONFIGURE_METHOD.invoke(proxy, clientSocket, target, pageEncodings, formEncodings);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw (Error) cause;
+      }
+    }
+  }
+
+  @Override
+  public void stopServer() {
+    running = false;
+    super.stopServer();
+  }
+
+  /**
+   * Defines where the proxy of each accepted connection runs.
+   */
+  public enum ExecutionMode {
+    /**
+     * A new thread for each connection, as JMeter does.
+     */
+    THREAD {
+      @Override
+      public Daemon buildDaemon(int port, ProxyControl target) throws IOException {
+        return new Daemon(port, target, CorrelationProxy.class);
+      }
+    },
+    /**
+     * A pool of threads reused between connections.
+     */
+    POOL {
+      @Override
+      public Daemon buildDaemon(int port, ProxyControl target) throws IOException {
+        return new CorrelationDaemon(port, target, buildThreadPool());
+      }
+    },
+    /**
+     * A virtual thread for each connection, or a pool of threads when virtual threads are not
+     * supported by the JVM.
+     */
+    VIRTUAL {
+      @Override
+      public Daemon buildDaemon(int port, ProxyControl target) throws IOException {
+        ExecutorService executor;
+        try {
+          executor = (ExecutorService) Executors.class
+              .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+          LOG.info("Virtual threads are not supported by this JVM, using a pool of threads for "
+              + "the proxy instead.");
+          executor = buildThreadPool();
+        }
+        return new CorrelationDaemon(port, target, executor);
+      }
+    };
+
+    private static final AtomicInteger THREADS_COUNT = new AtomicInteger();
+
+    public abstract Daemon buildDaemon(int port, ProxyControl target) throws IOException;
+
+    private static ExecutorService buildThreadPool() {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable,
+            "Correlation Recorder Proxy-" + THREADS_COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    public static ExecutionMode fromName(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.US));
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Unknown proxy execution mode {}, using {} instead.", name, THREAD);
+        return THREAD;
+      }
+    }
+  }
+}
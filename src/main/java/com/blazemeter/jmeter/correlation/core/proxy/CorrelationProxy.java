@@ -51,7 +51,8 @@ public class CorrelationProxy extends Proxy {
     CorrelationProxyControl proxyControl = getField(TARGET_FIELD, CorrelationProxyControl.class);
     wrapClientSocketWithProxyControlNotifierSocket(proxyControl);
     super.run();
-    proxyControl.endedProxy(this);
+    // the running thread is used instead of this instance, since it may run in a pool thread
+    proxyControl.endedProxy(Thread.currentThread());
   }
 
   private void wrapClientSocketWithProxyControlNotifierSocket(
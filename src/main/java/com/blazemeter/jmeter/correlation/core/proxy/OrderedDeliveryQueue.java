@@ -0,0 +1,250 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the delivery (correlation and addition to the test plan) of recorded samples in a
+ * dedicated thread, in the same order they were submitted.
+ *
+ * <p>This way proxy threads only need to enqueue the completed samples and can return immediately,
+ * instead of waiting for the correlation of their own (and other proxies) samples.
+ *
+ * <p>The queue is bounded, and when it is full the submitting thread either waits for room
+ * ({@link BackpressurePolicy#BLOCK}) or delivers the queued samples and its own one
+ * ({@link BackpressurePolicy#CALLER_RUNS}). In both cases the submission order is kept. A queue
+ * with no capacity delivers every sample in the submitting thread.
+ */
+public class OrderedDeliveryQueue {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OrderedDeliveryQueue.class);
+
+  private final int capacity;
+  private final BackpressurePolicy backpressurePolicy;
+  private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final Condition delivered = lock.newCondition();
+  // only one delivery runs at a time, either in the worker or in a submitting thread
+  private final Object deliveryLock = new Object();
+  private int undeliveredCount;
+  private Thread worker;
+
+  public OrderedDeliveryQueue(int capacity, BackpressurePolicy backpressurePolicy) {
+    this.capacity = capacity;
+    this.backpressurePolicy = backpressurePolicy;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public BackpressurePolicy getBackpressurePolicy() {
+    return backpressurePolicy;
+  }
+
+  /**
+   * Enqueues a delivery, to be run after all the previously submitted ones.
+   *
+   * <p>Must be invoked by a single thread at a time (or synchronized by the caller) to keep the
+   * order between submissions of different threads.
+   *
+   * @param delivery the delivery to run
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   */
+  public void submit(Runnable delivery) throws InterruptedException {
+    lock.lock();
+    try {
+      undeliveredCount++;
+      if (capacity > 0 && (queue.size() < capacity
+          || backpressurePolicy == BackpressurePolicy.BLOCK)) {
+        while (queue.size() >= capacity) {
+          notFull.await();
+        }
+        queue.add(delivery);
+        startWorkerIfNeeded();
+        notEmpty.signal();
+        return;
+      }
+    } catch (InterruptedException e) {
+      undeliveredCount--;
+      delivered.signalAll();
+      throw e;
+    } finally {
+      lock.unlock();
+    }
+    synchronized (deliveryLock) {
+      Runnable queued = pollQueued();
+      while (queued != null) {
+        deliver(queued);
+        queued = pollQueued();
+      }
+      deliver(delivery);
+    }
+  }
+
+  /**
+   * Enqueues a task, to be run in the worker thread after all the previously submitted deliveries.
+   *
+   * <p>Unlike {@link #submit(Runnable)}, it never waits for room in the queue nor runs anything in
+   * the invoking thread, so it can be used from threads the deliveries may wait for (like the
+   * Swing event dispatch thread, used to add the samples to the test plan).
+   *
+   * @param task the task to run
+   */
+  public void submitTask(Runnable task) {
+    lock.lock();
+    try {
+      undeliveredCount++;
+      queue.add(task);
+      startWorkerIfNeeded();
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void startWorkerIfNeeded() {
+    if (worker == null) {
+      worker = new Thread(this::runWorker, "Correlation Recorder Delivery");
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  private void runWorker() {
+    while (true) {
+      lock.lock();
+      try {
+        while (queue.isEmpty()) {
+          if (worker != Thread.currentThread()) {
+            return;
+          }
+          notEmpty.await();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+      /*
+       deliveries are always taken from the head of the queue while holding the delivery lock, so
+       the ones run by submitting threads can't overtake the one taken by the worker.
+       */
+      synchronized (deliveryLock) {
+        Runnable queued = pollQueued();
+        if (queued != null) {
+          deliver(queued);
+        }
+      }
+    }
+  }
+
+  private Runnable pollQueued() {
+    lock.lock();
+    try {
+      Runnable ret = queue.poll();
+      if (ret != null) {
+        notFull.signal();
+      }
+      return ret;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void deliver(Runnable delivery) {
+    try {
+      delivery.run();
+    } catch (RuntimeException e) {
+      LOG.error("Problem delivering recorded sample", e);
+    } finally {
+      lock.lock();
+      try {
+        undeliveredCount--;
+        delivered.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Waits until all the submitted deliveries have been run.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void awaitDelivered() throws InterruptedException {
+    lock.lock();
+    try {
+      while (undeliveredCount > 0) {
+        delivered.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until all the submitted deliveries have been run and stops the worker thread.
+   *
+   * <p>The queue can still be used after stopped, in which case a new worker thread is started.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void stop() throws InterruptedException {
+    awaitDelivered();
+    Thread stoppedWorker;
+    lock.lock();
+    try {
+      stoppedWorker = worker;
+      worker = null;
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (stoppedWorker != null) {
+      stoppedWorker.join();
+    }
+  }
+
+  /**
+   * Stops the queue, like {@link #stop()}, from a new thread.
+   *
+   * <p>This way the invoking thread doesn't wait for the deliveries, which is required when the
+   * deliveries may wait for the invoking thread themselves (like the Swing event dispatch thread,
+   * used to add the samples to the test plan). Actions to run once the pending deliveries are done
+   * can be submitted with {@link #submitTask(Runnable)} before stopping.
+   */
+  public void stopInBackground() {
+    Thread stopper = new Thread(() -> {
+      try {
+        stop();
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting for recorded samples to be delivered", e);
+        Thread.currentThread().interrupt();
+      }
+    }, "Correlation Recorder Delivery Stop");
+    stopper.setDaemon(true);
+    stopper.start();
+  }
+
+  public enum BackpressurePolicy {
+    BLOCK, CALLER_RUNS;
+
+    public static BackpressurePolicy fromName(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.US).replace('-', '_'));
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Unknown backpressure policy {}, using {} instead.", name, BLOCK);
+        return BLOCK;
+      }
+    }
+  }
+}
@@ -0,0 +1,228 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the proxies being recorded in the order their requests were received, to release them in
+ * that same order once they are complete.
+ *
+ * <p>Each proxy gets a sequence number when added, and completed proxies are only released when
+ * all the proxies with a lower sequence number have been released. No lock is shared between
+ * proxies: adding, updating and completing a proxy don't wait for other proxies, and only one
+ * thread at a time releases the completed proxies (in order), while the rest just leave their
+ * proxies complete for it to release.
+ *
+ * <p>A proxy that takes long to complete (like long polling or streaming requests) holds the
+ * release of all the following ones. To avoid this, an ordering deadline can be set: when a proxy
+ * is completed and the first pending one was added more than the deadline ago, the latter is
+ * overtaken by the following proxies and released out of order whenever it completes. The
+ * deadline is also checked periodically while deadline checks are scheduled, so completed proxies
+ * are not held (with their results) until another proxy completes, when no other request is made
+ * after the first pending one (like a page doing long polling while it is idle).
+ */
+public class PendingProxies {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PendingProxies.class);
+
+  private final long orderingDeadlineNanos;
+  private final AtomicLong nextSequence = new AtomicLong();
+  private final Map<Object, PendingProxy> proxies = new ConcurrentHashMap<>();
+  private final Map<Long, PendingProxy> sequencedProxies = new ConcurrentHashMap<>();
+  private final Queue<PendingProxy> overtakenCompletedProxies = new ConcurrentLinkedQueue<>();
+  private final AtomicLong overtakenCount = new AtomicLong();
+  private final AtomicBoolean releasing = new AtomicBoolean();
+  private volatile long nextRelease;
+  private ScheduledExecutorService deadlineChecker;
+
+  public PendingProxies() {
+    this(0);
+  }
+
+  /**
+   * Creates an instance which releases proxies following their order, unless the first pending
+   * one takes more than the given deadline.
+   *
+   * @param orderingDeadlineMillis milliseconds a pending proxy can hold the release of the
+   * following ones, or 0 to always keep the order
+   */
+  public PendingProxies(long orderingDeadlineMillis) {
+    this.orderingDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(orderingDeadlineMillis);
+  }
+
+  public void add(Object proxy, PendingProxy pendingProxy) {
+    long sequence = nextSequence.getAndIncrement();
+    pendingProxy.setSequence(sequence);
+    pendingProxy.setAddedNanos(System.nanoTime());
+    proxies.put(proxy, pendingProxy);
+    sequencedProxies.put(sequence, pendingProxy);
+  }
+
+  public PendingProxy get(Object proxy) {
+    return proxies.get(proxy);
+  }
+
+  /**
+   * Marks a proxy as complete and releases the completed proxies which are not preceded by
+   * incomplete ones (or only by ones that exceeded the ordering deadline).
+   *
+   * <p>Proxies without result (since their request was not recorded) are not released, but they
+   * don't hold the release of the following ones either.
+   *
+   * @param proxy the completed proxy
+   * @param release invoked, one at a time, with each of the released proxies
+   */
+  public void complete(Object proxy, Consumer<PendingProxy> release) {
+    PendingProxy pendingProxy = proxies.remove(proxy);
+    /*
+    this may happen if proxy had an issue parsing request or some other case where
+    getOutputStream is not invoked for used clientSocket
+     */
+    if (pendingProxy == null) {
+      return;
+    }
+    boolean overtaken;
+    // synchronized with the check of the deadline, so the proxy is either overtaken or completed
+    synchronized (pendingProxy) {
+      pendingProxy.setComplete(true);
+      overtaken = pendingProxy.isOvertaken();
+    }
+    if (overtaken) {
+      overtakenCompletedProxies.add(pendingProxy);
+    }
+    release(release);
+  }
+
+  private void release(Consumer<PendingProxy> release) {
+    /*
+     if another thread is releasing proxies it may have missed this one, but it checks again for
+     the proxies to release after it stops releasing, so no proxy is left behind.
+     */
+    while (hasReleasableProxies() && releasing.compareAndSet(false, true)) {
+      try {
+        releaseProxies(release);
+      } finally {
+        releasing.set(false);
+      }
+    }
+  }
+
+  private boolean hasReleasableProxies() {
+    PendingProxy next = sequencedProxies.get(nextRelease);
+    return !overtakenCompletedProxies.isEmpty()
+        || next != null && (next.isComplete() || isOrderingDeadlineExceeded(next));
+  }
+
+  private boolean isOrderingDeadlineExceeded(PendingProxy proxy) {
+    return orderingDeadlineNanos > 0
+        && System.nanoTime() - proxy.getAddedNanos() > orderingDeadlineNanos;
+  }
+
+  private void releaseProxies(Consumer<PendingProxy> release) {
+    PendingProxy overtaken = overtakenCompletedProxies.poll();
+    while (overtaken != null) {
+      LOG.debug("Releasing request #{} out of order", overtaken.getSequence());
+      releaseIfRecorded(overtaken, release);
+      overtaken = overtakenCompletedProxies.poll();
+    }
+    PendingProxy next = sequencedProxies.get(nextRelease);
+    while (next != null && (next.isComplete() || overtake(next))) {
+      sequencedProxies.remove(nextRelease);
+      nextRelease++;
+      // overtaken proxies are released by the overtaken completed proxies queue
+      if (!next.isOvertaken()) {
+        releaseIfRecorded(next, release);
+      }
+      next = sequencedProxies.get(nextRelease);
+    }
+  }
+
+  private boolean overtake(PendingProxy proxy) {
+    if (!isOrderingDeadlineExceeded(proxy)) {
+      return false;
+    }
+    synchronized (proxy) {
+      if (proxy.isComplete()) {
+        return false;
+      }
+      proxy.setOvertaken(true);
+    }
+    overtakenCount.incrementAndGet();
+    LOG.warn("Request #{} not completed in {} ms, recording following requests before it.",
+        proxy.getSequence(), TimeUnit.NANOSECONDS.toMillis(orderingDeadlineNanos));
+    return true;
+  }
+
+  private static void releaseIfRecorded(PendingProxy proxy, Consumer<PendingProxy> release) {
+    if (proxy.getResult() != null) {
+      release.accept(proxy);
+    }
+  }
+
+  /**
+   * Starts checking the ordering deadline periodically (every deadline period), to release the
+   * completed proxies held by a pending one which exceeded it, even if no other proxy completes.
+   *
+   * <p>Does nothing when there is no ordering deadline or the checks are already scheduled.
+   *
+   * @param release invoked, one at a time, with each of the released proxies
+   */
+  public synchronized void scheduleDeadlineChecks(Consumer<PendingProxy> release) {
+    if (orderingDeadlineNanos <= 0 || deadlineChecker != null) {
+      return;
+    }
+    deadlineChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread ret = new Thread(r, "Correlation Recorder Ordering Deadline");
+      ret.setDaemon(true);
+      return ret;
+    });
+    deadlineChecker.scheduleWithFixedDelay(() -> {
+      try {
+        release(release);
+      } catch (RuntimeException e) {
+        LOG.error("Problem releasing proxies which exceeded the ordering deadline", e);
+      }
+    }, orderingDeadlineNanos, orderingDeadlineNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public synchronized void stopDeadlineChecks() {
+    if (deadlineChecker != null) {
+      deadlineChecker.shutdownNow();
+      deadlineChecker = null;
+    }
+  }
+
+  /**
+   * Gets how many proxies have been overtaken by the following ones, since they exceeded the
+   * ordering deadline, after the last time the pending proxies were cleared.
+   */
+  public long getOvertakenCount() {
+    return overtakenCount.get();
+  }
+
+  /**
+   * Discards all the pending proxies, which should only be done while no proxy is running.
+   */
+  public void clear() {
+    proxies.clear();
+    sequencedProxies.clear();
+    overtakenCompletedProxies.clear();
+    overtakenCount.set(0);
+    nextRelease = nextSequence.get();
+  }
+
+  public Map<Object, PendingProxy> asMap() {
+    return Collections.unmodifiableMap(proxies);
+  }
+}
@@ -11,7 +11,10 @@ public class PendingProxy {
   private HTTPSamplerBase sampler;
   private TestElement[] testElements;
   private SampleResult result;
-  private boolean complete;
+  private volatile boolean complete;
+  private long sequence;
+  private long addedNanos;
+  private boolean overtaken;
 
   public PendingProxy(JMeterTreeNode target) {
     this.target = target;
@@ -36,6 +39,30 @@ public class PendingProxy {
     this.complete = complete;
   }
 
+  long getSequence() {
+    return sequence;
+  }
+
+  void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  long getAddedNanos() {
+    return addedNanos;
+  }
+
+  void setAddedNanos(long addedNanos) {
+    this.addedNanos = addedNanos;
+  }
+
+  boolean isOvertaken() {
+    return overtaken;
+  }
+
+  void setOvertaken(boolean overtaken) {
+    this.overtaken = overtaken;
+  }
+
   public HTTPSamplerBase getSampler() {
     return sampler;
   }
@@ -0,0 +1,90 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.apache.jmeter.processor.PreProcessor;
+import org.apache.jmeter.protocol.http.control.Cookie;
+import org.apache.jmeter.protocol.http.control.CookieManager;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.samplers.Sampler;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testbeans.gui.TestBeanGUI;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre Processor that adds a cookie to the Cookie Manager used by the sampler, for the host the
+ * sampler sends the request to.
+ *
+ * <p>The recorder adds it for the cookies sent by the browser which were not set by previous
+ * responses (eg: cookies set by javascript). Unlike a JSR223 Pre Processor, it doesn't require
+ * compiling a script for each recorded cookie when the test plan runs.
+ */
+public class SetCookiePreProcessor extends AbstractTestElement implements PreProcessor, TestBean {
+
+  public static final String COOKIE_NAME_PROPERTY = "cookieName";
+  public static final String COOKIE_VALUE_PROPERTY = "cookieValue";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SetCookiePreProcessor.class);
+
+  private String cookieName;
+  private String cookieValue;
+
+  public static SetCookiePreProcessor fromNameAndValue(String name, String value) {
+    SetCookiePreProcessor ret = new SetCookiePreProcessor();
+    ret.setProperty(GUI_CLASS, TestBeanGUI.class.getName());
+    ret.setName("Set cookie - " + name);
+    ret.setProperty(COOKIE_NAME_PROPERTY, name);
+    ret.setProperty(COOKIE_VALUE_PROPERTY, value);
+    return ret;
+  }
+
+  @Override
+  public void process() {
+    Sampler sampler = getThreadContext().getCurrentSampler();
+    if (!(sampler instanceof HTTPSamplerBase)) {
+      return;
+    }
+    HTTPSamplerBase httpSampler = (HTTPSamplerBase) sampler;
+    CookieManager cookieManager = httpSampler.getCookieManager();
+    if (cookieManager == null) {
+      LOG.warn("No cookie manager found for {}, so cookie {} can't be set.",
+          httpSampler.getName(), cookieName);
+      return;
+    }
+    try {
+      URL url = getRequestUrl(httpSampler);
+      cookieManager.add(new Cookie(cookieName, cookieValue, url.getHost(), "",
+          HTTPSamplerBase.isSecure(url), 0));
+    } catch (MalformedURLException e) {
+      LOG.warn("Could not set cookie {} for {}.", cookieName, httpSampler.getName(), e);
+    }
+  }
+
+  /*
+   we use this instead of sampler url to avoid premature resolution of url parameters and allow
+   other pre processors to affect rest of url
+   */
+  private static URL getRequestUrl(HTTPSamplerBase sampler) throws MalformedURLException {
+    String path = sampler.getPath();
+    return path.startsWith("http://") || path.startsWith("https://") ? new URL(path)
+        : new URL(sampler.getProtocol() + "://" + sampler.getDomain());
+  }
+
+  public String getCookieName() {
+    return cookieName;
+  }
+
+  public void setCookieName(String cookieName) {
+    this.cookieName = cookieName;
+  }
+
+  public String getCookieValue() {
+    return cookieValue;
+  }
+
+  public void setCookieValue(String cookieValue) {
+    this.cookieValue = cookieValue;
+  }
+}
@@ -0,0 +1,20 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import java.beans.PropertyDescriptor;
+import org.apache.jmeter.testbeans.BeanInfoSupport;
+
+public class SetCookiePreProcessorBeanInfo extends BeanInfoSupport {
+
+  public SetCookiePreProcessorBeanInfo() {
+    super(SetCookiePreProcessor.class);
+    createPropertyGroup("cookie", new String[]{SetCookiePreProcessor.COOKIE_NAME_PROPERTY,
+        SetCookiePreProcessor.COOKIE_VALUE_PROPERTY});
+    PropertyDescriptor p = property(SetCookiePreProcessor.COOKIE_NAME_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+    p = property(SetCookiePreProcessor.COOKIE_VALUE_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+  }
+
+}
@@ -0,0 +1,94 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of characters, represented by sorted and non overlapping ranges, used by character classes
+ * of {@link LinearRegex}.
+ */
+final class CharRanges {
+
+  static final CharRanges DIGITS = new CharRanges(new char[]{'0', '9'});
+  static final CharRanges WORD_CHARS = new CharRanges(
+      new char[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+  static final CharRanges SPACES = new CharRanges(
+      new char[]{'\t', '\n', '\f', '\r', ' ', ' '});
+
+  private final char[] bounds;
+
+  private CharRanges(char[] bounds) {
+    this.bounds = bounds;
+  }
+
+  boolean contains(char c) {
+    int low = 0;
+    int high = bounds.length / 2 - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (c < bounds[middle * 2]) {
+        high = middle - 1;
+      } else if (c > bounds[middle * 2 + 1]) {
+        low = middle + 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  CharRanges negate() {
+    List<char[]> ranges = new ArrayList<>();
+    int from = 0;
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (bounds[i] > from) {
+        ranges.add(new char[]{(char) from, (char) (bounds[i] - 1)});
+      }
+      from = bounds[i + 1] + 1;
+    }
+    if (from <= Character.MAX_VALUE) {
+      ranges.add(new char[]{(char) from, Character.MAX_VALUE});
+    }
+    return fromRanges(ranges);
+  }
+
+  void addTo(Builder builder) {
+    for (int i = 0; i < bounds.length; i += 2) {
+      builder.add(bounds[i], bounds[i + 1]);
+    }
+  }
+
+  private static CharRanges fromRanges(List<char[]> ranges) {
+    char[] bounds = new char[ranges.size() * 2];
+    for (int i = 0; i < ranges.size(); i++) {
+      bounds[i * 2] = ranges.get(i)[0];
+      bounds[i * 2 + 1] = ranges.get(i)[1];
+    }
+    return new CharRanges(bounds);
+  }
+
+  static final class Builder {
+
+    private final List<char[]> ranges = new ArrayList<>();
+
+    Builder add(char from, char to) {
+      ranges.add(new char[]{from, to});
+      return this;
+    }
+
+    CharRanges build() {
+      Collections.sort(ranges, (r1, r2) -> Character.compare(r1[0], r2[0]));
+      List<char[]> merged = new ArrayList<>();
+      for (char[] range : ranges) {
+        char[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+        if (last != null && range[0] <= last[1] + 1) {
+          last[1] = (char) Math.max(last[1], range[1]);
+        } else {
+          merged.add(new char[]{range[0], range[1]});
+        }
+      }
+      return fromRanges(merged);
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+/**
+ * Regular expression compiled by a {@link RegexEngine}, which can be safely shared between
+ * threads.
+ */
+public interface CompiledRegex {
+
+  String getRegex();
+
+  /**
+   * Creates the matches of the regex over an input.
+   *
+   * @param input text where the regex is evaluated
+   * @param fromIndex offset of the input where the first match is looked for
+   * @return the matches, which are found on demand
+   */
+  RegexMatches matcher(CharSequence input, int fromIndex);
+}
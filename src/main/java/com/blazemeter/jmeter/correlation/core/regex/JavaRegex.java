@@ -0,0 +1,77 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.oro.text.regex.MalformedPatternException;
+
+/**
+ * Regex evaluated with {@link java.util.regex}.
+ */
+final class JavaRegex implements CompiledRegex {
+
+  private final Pattern pattern;
+
+  private JavaRegex(Pattern pattern) {
+    this.pattern = pattern;
+  }
+
+  static JavaRegex compile(String regex) throws MalformedPatternException {
+    try {
+      return new JavaRegex(Pattern.compile(regex));
+    } catch (PatternSyntaxException e) {
+      throw new MalformedPatternException(e.getMessage());
+    }
+  }
+
+  @Override
+  public String getRegex() {
+    return pattern.pattern();
+  }
+
+  @Override
+  public RegexMatches matcher(CharSequence input, int fromIndex) {
+    return new JavaMatches(pattern.matcher(input), fromIndex);
+  }
+
+  private static final class JavaMatches implements RegexMatches {
+
+    private final Matcher matcher;
+    private int nextIndex;
+
+    private JavaMatches(Matcher matcher, int fromIndex) {
+      this.matcher = matcher;
+      this.nextIndex = fromIndex;
+    }
+
+    @Override
+    public boolean find() {
+      if (nextIndex < 0) {
+        return matcher.find();
+      }
+      boolean found = nextIndex <= matcher.regionEnd() && matcher.find(nextIndex);
+      nextIndex = -1;
+      return found;
+    }
+
+    @Override
+    public String group(int group) {
+      return group <= matcher.groupCount() ? matcher.group(group) : null;
+    }
+
+    @Override
+    public int start(int group) {
+      return group <= matcher.groupCount() ? matcher.start(group) : -1;
+    }
+
+    @Override
+    public int end(int group) {
+      return group <= matcher.groupCount() ? matcher.end(group) : -1;
+    }
+
+    @Override
+    public int groupCount() {
+      return matcher.groupCount();
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import java.util.Arrays;
+
+/**
+ * Regex evaluated with a Thompson automaton simulation (Pike VM), which takes time proportional
+ * to the input length times the regex length, no matter the regex or the input.
+ *
+ * <p>Matches follow the same leftmost, priority based semantics of Perl regexes (lazy and greedy
+ * quantifiers, first alternative preferred), so for the supported subset the results are the same
+ * as the ones obtained with ORO. Constructions where ORO departs from those semantics (like
+ * elements following an end anchor) are left out of that subset. The regex is compiled by
+ * {@link LinearRegexCompiler}.
+ */
+final class LinearRegex implements CompiledRegex {
+
+  static final int CHAR = 0;
+  static final int ANY = 1;
+  static final int CLASS = 2;
+  static final int SPLIT = 3;
+  static final int JUMP = 4;
+  static final int SAVE = 5;
+  static final int MATCH = 6;
+  static final int BEGIN = 7;
+  static final int END_OR_FINAL_LINE_BREAK = 8;
+  static final int WORD_BOUNDARY = 9;
+  static final int NOT_WORD_BOUNDARY = 10;
+
+  private final String regex;
+  private final int[] ops;
+  private final int[] args;
+  private final int[] altArgs;
+  private final CharRanges[] classes;
+  private final int slotsCount;
+
+  LinearRegex(String regex, int[] ops, int[] args, int[] altArgs, CharRanges[] classes,
+      int groupsCount) {
+    this.regex = regex;
+    this.ops = ops;
+    this.args = args;
+    this.altArgs = altArgs;
+    this.classes = classes;
+    this.slotsCount = (groupsCount + 1) * 2;
+  }
+
+  @Override
+  public String getRegex() {
+    return regex;
+  }
+
+  @Override
+  public RegexMatches matcher(CharSequence input, int fromIndex) {
+    return new LinearMatches(input, fromIndex);
+  }
+
+  private static boolean isWordChar(CharSequence input, int pos) {
+    if (pos < 0 || pos >= input.length()) {
+      return false;
+    }
+    char c = input.charAt(pos);
+    return c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9';
+  }
+
+  /**
+   * List of threads of the automaton for a position of the input, in priority order.
+   */
+  private static final class ThreadList {
+
+    private final int[] pcs;
+    private final int[][] slots;
+    private final int[] positionByPc;
+    private int size;
+
+    private ThreadList(int programSize) {
+      pcs = new int[programSize];
+      slots = new int[programSize][];
+      positionByPc = new int[programSize];
+    }
+
+    private boolean contains(int pc) {
+      int position = positionByPc[pc];
+      return position < size && pcs[position] == pc;
+    }
+
+    private void mark(int pc) {
+      positionByPc[pc] = size;
+      pcs[size] = pc;
+      slots[size++] = null;
+    }
+
+    private void clear() {
+      size = 0;
+    }
+  }
+
+  private final class LinearMatches implements RegexMatches {
+
+    private final CharSequence input;
+    private final int[] stackPcs = new int[ops.length * 2 + 2];
+    private final int[][] stackSlots = new int[ops.length * 2 + 2][];
+    private ThreadList current = new ThreadList(ops.length);
+    private ThreadList next = new ThreadList(ops.length);
+    private int nextIndex;
+    private int forbiddenEmptyMatchIndex = -1;
+    private int[] match;
+
+    private LinearMatches(CharSequence input, int fromIndex) {
+      this.input = input;
+      this.nextIndex = fromIndex;
+    }
+
+    /*
+     * As ORO does, the search continues where the previous match ended, but an empty match is not
+     * accepted at that position, so the same empty match is never found twice.
+     */
+    @Override
+    public boolean find() {
+      if (nextIndex > input.length()) {
+        match = null;
+        return false;
+      }
+      match = search(nextIndex);
+      if (match == null) {
+        nextIndex = input.length() + 1;
+        return false;
+      }
+      nextIndex = match[1];
+      forbiddenEmptyMatchIndex = match[1];
+      return true;
+    }
+
+    private int[] search(int from) {
+      int[] matched = null;
+      current.clear();
+      for (int pos = from; pos <= input.length(); pos++) {
+        if (matched == null) {
+          int[] initialSlots = new int[slotsCount];
+          Arrays.fill(initialSlots, -1);
+          addThread(current, 0, initialSlots, pos);
+        }
+        if (current.size == 0) {
+          break;
+        }
+        next.clear();
+        char c = pos < input.length() ? input.charAt(pos) : 0;
+        for (int i = 0; i < current.size; i++) {
+          int pc = current.pcs[i];
+          int[] slots = current.slots[i];
+          if (slots == null) {
+            continue;
+          }
+          int op = ops[pc];
+          if (op == MATCH) {
+            if (slots[0] == forbiddenEmptyMatchIndex && slots[1] == forbiddenEmptyMatchIndex) {
+              continue;
+            }
+            matched = slots;
+            break;
+          }
+          if (pos < input.length() && (op == CHAR && c == args[pc]
+              || op == ANY && c != '\n'
+              || op == CLASS && classes[args[pc]].contains(c))) {
+            addThread(next, pc + 1, slots, pos + 1);
+          }
+        }
+        ThreadList swap = current;
+        current = next;
+        next = swap;
+      }
+      return matched;
+    }
+
+    /*
+     * Follows the instructions that don't consume input, with an explicit stack so big programs
+     * don't overflow the call stack. Threads are marked in the list before being followed, so the
+     * first (highest priority) path reaching an instruction wins.
+     */
+    private void addThread(ThreadList list, int startPc, int[] startSlots, int pos) {
+      int top = 0;
+      stackPcs[top] = startPc;
+      stackSlots[top++] = startSlots;
+      while (top > 0) {
+        int pc = stackPcs[--top];
+        int[] slots = stackSlots[top];
+        stackSlots[top] = null;
+        if (list.contains(pc)) {
+          continue;
+        }
+        int index = list.size;
+        list.mark(pc);
+        switch (ops[pc]) {
+          case JUMP:
+            stackPcs[top] = args[pc];
+            stackSlots[top++] = slots;
+            break;
+          case SPLIT:
+            stackPcs[top] = altArgs[pc];
+            stackSlots[top++] = slots;
+            stackPcs[top] = args[pc];
+            stackSlots[top++] = slots;
+            break;
+          case SAVE:
+            int[] newSlots = slots.clone();
+            newSlots[args[pc]] = pos;
+            stackPcs[top] = pc + 1;
+            stackSlots[top++] = newSlots;
+            break;
+          case BEGIN:
+          case END_OR_FINAL_LINE_BREAK:
+          case WORD_BOUNDARY:
+          case NOT_WORD_BOUNDARY:
+            if (isAssertionMet(ops[pc], pos)) {
+              stackPcs[top] = pc + 1;
+              stackSlots[top++] = slots;
+            }
+            break;
+          default:
+            list.slots[index] = slots;
+        }
+      }
+    }
+
+    private boolean isAssertionMet(int op, int pos) {
+      switch (op) {
+        case BEGIN:
+          return pos == 0;
+        case END_OR_FINAL_LINE_BREAK:
+          return pos == input.length()
+              || pos == input.length() - 1 && input.charAt(pos) == '\n';
+        case WORD_BOUNDARY:
+          return isWordChar(input, pos - 1) != isWordChar(input, pos);
+        default:
+          return isWordChar(input, pos - 1) == isWordChar(input, pos);
+      }
+    }
+
+    @Override
+    public String group(int group) {
+      int start = start(group);
+      return start < 0 ? null : input.subSequence(start, end(group)).toString();
+    }
+
+    @Override
+    public int start(int group) {
+      return group * 2 < slotsCount && match[group * 2 + 1] >= 0 ? match[group * 2] : -1;
+    }
+
+    @Override
+    public int end(int group) {
+      return group * 2 < slotsCount && match[group * 2] >= 0 ? match[group * 2 + 1] : -1;
+    }
+
+    @Override
+    public int groupCount() {
+      return slotsCount / 2 - 1;
+    }
+  }
+}
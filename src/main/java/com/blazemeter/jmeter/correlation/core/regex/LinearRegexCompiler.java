@@ -0,0 +1,524 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles the subset of Perl 5 regexes supported by {@link LinearRegex} into the program of its
+ * automaton.
+ *
+ * <p>Supported constructions are literals and escaped characters, <code>.</code>, character
+ * classes (including <code>\d \w \s</code> and their negations), capturing and non capturing
+ * groups, alternations, greedy and lazy quantifiers (<code>* + ? {n} {n,} {n,m}</code>) and the
+ * <code>^ $ \A \Z \b \B</code> anchors, with <code>$</code> and <code>\Z</code> only at the end
+ * of the regex. Back references, look arounds, inline modifiers and any other construction, as
+ * well as repeating an element that can match the empty string (like <code>(a*)+</code>), make
+ * the compilation fail with {@link UnsupportedRegexException}.
+ */
+final class LinearRegexCompiler {
+
+  private static final int MAX_PROGRAM_SIZE = 20000;
+  private static final int MAX_REPETITIONS = 1000;
+
+  private final String regex;
+  private final List<CharRanges> classes = new ArrayList<>();
+  private int pos;
+  private int groupsCount;
+  private int[] ops = new int[16];
+  private int[] args = new int[16];
+  private int[] altArgs = new int[16];
+  private int size;
+
+  private LinearRegexCompiler(String regex) {
+    this.regex = regex;
+  }
+
+  static LinearRegex compile(String regex) throws UnsupportedRegexException {
+    LinearRegexCompiler compiler = new LinearRegexCompiler(regex);
+    Node root = compiler.parseAlternation();
+    if (compiler.pos < regex.length()) {
+      throw new UnsupportedRegexException("Unexpected character at " + compiler.pos);
+    }
+    compiler.emit(LinearRegex.SAVE, 0);
+    root.emit(compiler);
+    compiler.emit(LinearRegex.SAVE, 1);
+    compiler.emit(LinearRegex.MATCH, 0);
+    return compiler.buildRegex();
+  }
+
+  private LinearRegex buildRegex() {
+    int[] programOps = new int[size];
+    int[] programArgs = new int[size];
+    int[] programAltArgs = new int[size];
+    System.arraycopy(ops, 0, programOps, 0, size);
+    System.arraycopy(args, 0, programArgs, 0, size);
+    System.arraycopy(altArgs, 0, programAltArgs, 0, size);
+    return new LinearRegex(regex, programOps, programArgs, programAltArgs,
+        classes.toArray(new CharRanges[0]), groupsCount);
+  }
+
+  private Node parseAlternation() throws UnsupportedRegexException {
+    List<Node> alternatives = new ArrayList<>();
+    alternatives.add(parseConcatenation());
+    while (pos < regex.length() && regex.charAt(pos) == '|') {
+      pos++;
+      alternatives.add(parseConcatenation());
+    }
+    return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+  }
+
+  private Node parseConcatenation() throws UnsupportedRegexException {
+    List<Node> nodes = new ArrayList<>();
+    while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+      nodes.add(parseRepetition());
+    }
+    return new Concatenation(nodes);
+  }
+
+  private Node parseRepetition() throws UnsupportedRegexException {
+    Node atom = parseAtom();
+    if (pos >= regex.length()) {
+      return atom;
+    }
+    int min;
+    int max;
+    char c = regex.charAt(pos);
+    if (c == '*') {
+      min = 0;
+      max = -1;
+      pos++;
+    } else if (c == '+') {
+      min = 1;
+      max = -1;
+      pos++;
+    } else if (c == '?') {
+      min = 0;
+      max = 1;
+      pos++;
+    } else if (c == '{' && isCountedRepetition()) {
+      int end = regex.indexOf('}', pos);
+      String range = regex.substring(pos + 1, end);
+      int comma = range.indexOf(',');
+      min = parseRepetitions(comma < 0 ? range : range.substring(0, comma));
+      max = comma < 0 ? min
+          : comma == range.length() - 1 ? -1 : parseRepetitions(range.substring(comma + 1));
+      if (max >= 0 && max < min) {
+        throw new UnsupportedRegexException("Invalid repetition range " + range);
+      }
+      pos = end + 1;
+    } else {
+      return atom;
+    }
+    boolean greedy = true;
+    if (pos < regex.length() && regex.charAt(pos) == '?') {
+      greedy = false;
+      pos++;
+    }
+    if (pos < regex.length() && "*+?".indexOf(regex.charAt(pos)) >= 0) {
+      throw new UnsupportedRegexException("Nested quantifier at " + pos);
+    }
+    /*
+     * Perl engines stop repeating an element when an iteration matches the empty string, which
+     * can't be replicated by the automaton.
+     */
+    if (max != 1 && atom.canMatchEmpty()) {
+      throw new UnsupportedRegexException("Repetition of element matching empty string at " + pos);
+    }
+    return new Repetition(atom, min, max, greedy);
+  }
+
+  private boolean isCountedRepetition() {
+    int end = regex.indexOf('}', pos);
+    return end > 0 && regex.substring(pos + 1, end).matches("\\d+(,\\d*)?");
+  }
+
+  private static int parseRepetitions(String value) throws UnsupportedRegexException {
+    if (value.length() > 4 || Integer.parseInt(value) > MAX_REPETITIONS) {
+      throw new UnsupportedRegexException("Too many repetitions " + value);
+    }
+    return Integer.parseInt(value);
+  }
+
+  private Node parseAtom() throws UnsupportedRegexException {
+    char c = regex.charAt(pos++);
+    switch (c) {
+      case '(':
+        return parseGroup();
+      case '[':
+        return new CharClass(addClass(parseCharacterClass()));
+      case '.':
+        return new Instruction(LinearRegex.ANY, 0);
+      case '^':
+        return new Instruction(LinearRegex.BEGIN, 0);
+      case '$':
+        return parseEndAnchor();
+      case '\\':
+        return parseEscape();
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw new UnsupportedRegexException("Quantifier without element at " + (pos - 1));
+      default:
+        return new Instruction(LinearRegex.CHAR, c);
+    }
+  }
+
+  private Node parseGroup() throws UnsupportedRegexException {
+    int group = -1;
+    if (regex.startsWith("?:", pos)) {
+      pos += 2;
+    } else if (pos < regex.length() && regex.charAt(pos) == '?') {
+      throw new UnsupportedRegexException("Unsupported group construction at " + pos);
+    } else {
+      group = ++groupsCount;
+    }
+    Node node = parseAlternation();
+    if (pos >= regex.length() || regex.charAt(pos) != ')') {
+      throw new UnsupportedRegexException("Unclosed group");
+    }
+    pos++;
+    return group < 0 ? node : new Group(group, node);
+  }
+
+  private Node parseEscape() throws UnsupportedRegexException {
+    if (pos >= regex.length()) {
+      throw new UnsupportedRegexException("Trailing backslash");
+    }
+    char c = regex.charAt(pos++);
+    switch (c) {
+      case 'b':
+        return new Instruction(LinearRegex.WORD_BOUNDARY, 0);
+      case 'B':
+        return new Instruction(LinearRegex.NOT_WORD_BOUNDARY, 0);
+      case 'A':
+        return new Instruction(LinearRegex.BEGIN, 0);
+      case 'Z':
+        return parseEndAnchor();
+      // ORO takes \z as a literal z instead of the end of input, so it is left to ORO
+      default:
+        CharRanges shorthand = findShorthandClass(c);
+        if (shorthand != null) {
+          return new CharClass(addClass(shorthand));
+        }
+        return new Instruction(LinearRegex.CHAR, parseEscapedChar(c));
+    }
+  }
+
+  /*
+   ORO doesn't always match the elements following an end anchor (like the final line break) as
+   the automaton does, so the end anchor is only supported when nothing else follows it
+   */
+  private Node parseEndAnchor() throws UnsupportedRegexException {
+    for (int i = pos; i < regex.length(); i++) {
+      if (regex.charAt(i) != ')') {
+        throw new UnsupportedRegexException("End anchor followed by other elements at " + i);
+      }
+    }
+    return new Instruction(LinearRegex.END_OR_FINAL_LINE_BREAK, 0);
+  }
+
+  private static CharRanges findShorthandClass(char c) {
+    switch (c) {
+      case 'd':
+        return CharRanges.DIGITS;
+      case 'D':
+        return CharRanges.DIGITS.negate();
+      case 'w':
+        return CharRanges.WORD_CHARS;
+      case 'W':
+        return CharRanges.WORD_CHARS.negate();
+      case 's':
+        return CharRanges.SPACES;
+      case 'S':
+        return CharRanges.SPACES.negate();
+      default:
+        return null;
+    }
+  }
+
+  private static char parseEscapedChar(char c) throws UnsupportedRegexException {
+    switch (c) {
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'f':
+        return '\f';
+      case 'e':
+        return '\u001B';
+      default:
+        if (Character.isLetterOrDigit(c)) {
+          throw new UnsupportedRegexException("Unsupported escape \\" + c);
+        }
+        return c;
+    }
+  }
+
+  private CharRanges parseCharacterClass() throws UnsupportedRegexException {
+    boolean negated = false;
+    if (pos < regex.length() && regex.charAt(pos) == '^') {
+      negated = true;
+      pos++;
+    }
+    CharRanges.Builder builder = new CharRanges.Builder();
+    boolean first = true;
+    while (true) {
+      if (pos >= regex.length()) {
+        throw new UnsupportedRegexException("Unclosed character class");
+      }
+      char c = regex.charAt(pos++);
+      if (c == ']' && !first) {
+        break;
+      }
+      first = false;
+      if (c == '[' && pos < regex.length() && ":=.".indexOf(regex.charAt(pos)) >= 0) {
+        throw new UnsupportedRegexException("Unsupported POSIX character class");
+      }
+      if (c == '\\') {
+        if (pos >= regex.length()) {
+          throw new UnsupportedRegexException("Trailing backslash");
+        }
+        char escaped = regex.charAt(pos++);
+        CharRanges shorthand = findShorthandClass(escaped);
+        if (shorthand != null) {
+          shorthand.addTo(builder);
+          continue;
+        }
+        c = escaped == 'b' ? '\b' : parseEscapedChar(escaped);
+      }
+      char to = c;
+      if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+        pos++;
+        to = regex.charAt(pos++);
+        if (to == '\\') {
+          if (pos >= regex.length() || findShorthandClass(regex.charAt(pos)) != null) {
+            throw new UnsupportedRegexException("Invalid range in character class");
+          }
+          to = parseEscapedChar(regex.charAt(pos++));
+        } else if (to == '[') {
+          throw new UnsupportedRegexException("Invalid range in character class");
+        }
+        if (to < c) {
+          throw new UnsupportedRegexException("Invalid range in character class");
+        }
+      }
+      builder.add(c, to);
+    }
+    CharRanges ranges = builder.build();
+    return negated ? ranges.negate() : ranges;
+  }
+
+  private int addClass(CharRanges ranges) {
+    classes.add(ranges);
+    return classes.size() - 1;
+  }
+
+  private int emit(int op, int arg) throws UnsupportedRegexException {
+    if (size == MAX_PROGRAM_SIZE) {
+      throw new UnsupportedRegexException("Regex is too big");
+    }
+    if (size == ops.length) {
+      ops = Arrays.copyOf(ops, size * 2);
+      args = Arrays.copyOf(args, size * 2);
+      altArgs = Arrays.copyOf(altArgs, size * 2);
+    }
+    ops[size] = op;
+    args[size] = arg;
+    return size++;
+  }
+
+  private interface Node {
+
+    void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException;
+
+    boolean canMatchEmpty();
+  }
+
+  private static final class Instruction implements Node {
+
+    private final int op;
+    private final int arg;
+
+    private Instruction(int op, int arg) {
+      this.op = op;
+      this.arg = arg;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      compiler.emit(op, arg);
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      return op != LinearRegex.CHAR && op != LinearRegex.ANY;
+    }
+  }
+
+  private static final class CharClass implements Node {
+
+    private final int classIndex;
+
+    private CharClass(int classIndex) {
+      this.classIndex = classIndex;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      compiler.emit(LinearRegex.CLASS, classIndex);
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      return false;
+    }
+  }
+
+  private static final class Group implements Node {
+
+    private final int group;
+    private final Node node;
+
+    private Group(int group, Node node) {
+      this.group = group;
+      this.node = node;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      compiler.emit(LinearRegex.SAVE, group * 2);
+      node.emit(compiler);
+      compiler.emit(LinearRegex.SAVE, group * 2 + 1);
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      return node.canMatchEmpty();
+    }
+  }
+
+  private static final class Concatenation implements Node {
+
+    private final List<Node> nodes;
+
+    private Concatenation(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      for (Node node : nodes) {
+        node.emit(compiler);
+      }
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      for (Node node : nodes) {
+        if (!node.canMatchEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class Alternation implements Node {
+
+    private final List<Node> alternatives;
+
+    private Alternation(List<Node> alternatives) {
+      this.alternatives = alternatives;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      List<Integer> jumps = new ArrayList<>();
+      for (int i = 0; i < alternatives.size() - 1; i++) {
+        int split = compiler.emit(LinearRegex.SPLIT, compiler.size + 1);
+        alternatives.get(i).emit(compiler);
+        jumps.add(compiler.emit(LinearRegex.JUMP, 0));
+        compiler.altArgs[split] = compiler.size;
+      }
+      alternatives.get(alternatives.size() - 1).emit(compiler);
+      for (int jump : jumps) {
+        compiler.args[jump] = compiler.size;
+      }
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      for (Node alternative : alternatives) {
+        if (alternative.canMatchEmpty()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class Repetition implements Node {
+
+    private final Node node;
+    private final int min;
+    private final int max;
+    private final boolean greedy;
+
+    private Repetition(Node node, int min, int max, boolean greedy) {
+      this.node = node;
+      this.min = min;
+      this.max = max;
+      this.greedy = greedy;
+    }
+
+    @Override
+    public void emit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      for (int i = 0; i < min; i++) {
+        node.emit(compiler);
+      }
+      if (max < 0) {
+        int split = emitSplit(compiler);
+        node.emit(compiler);
+        compiler.emit(LinearRegex.JUMP, split);
+        setSplitExit(compiler, split, compiler.size);
+        return;
+      }
+      List<Integer> splits = new ArrayList<>();
+      for (int i = min; i < max; i++) {
+        splits.add(emitSplit(compiler));
+        node.emit(compiler);
+      }
+      for (int split : splits) {
+        setSplitExit(compiler, split, compiler.size);
+      }
+    }
+
+    @Override
+    public boolean canMatchEmpty() {
+      return min == 0 || node.canMatchEmpty();
+    }
+
+    private int emitSplit(LinearRegexCompiler compiler) throws UnsupportedRegexException {
+      int split = compiler.emit(LinearRegex.SPLIT, compiler.size + 1);
+      compiler.altArgs[split] = compiler.size;
+      return split;
+    }
+
+    /*
+     * The preferred branch of a greedy repetition is repeating the element, while for a lazy one
+     * is continuing with the rest of the regex.
+     */
+    private void setSplitExit(LinearRegexCompiler compiler, int split, int exit) {
+      if (greedy) {
+        compiler.altArgs[split] = exit;
+      } else {
+        compiler.altArgs[split] = compiler.args[split];
+        compiler.args[split] = exit;
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.oro.text.MalformedCachePatternException;
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.apache.oro.text.regex.MatchResult;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.PatternMatcherInput;
+import org.apache.oro.text.regex.Perl5Compiler;
+import org.apache.oro.text.regex.Perl5Matcher;
+
+/**
+ * Regex evaluated with Jakarta ORO, the same engine used by JMeter's Regular Expression
+ * Extractor. Patterns are taken from JMeter's pattern cache.
+ *
+ * <p>ORO only matches Strings, so inputs of any other type are copied into a String first.
+ */
+final class OroRegex implements CompiledRegex {
+
+  private final String regex;
+  private final Pattern pattern;
+
+  private OroRegex(String regex, Pattern pattern) {
+    this.regex = regex;
+    this.pattern = pattern;
+  }
+
+  static OroRegex compile(String regex) throws MalformedPatternException {
+    try {
+      return new OroRegex(regex,
+          JMeterUtils.getPatternCache().getPattern(regex, Perl5Compiler.READ_ONLY_MASK));
+    } catch (MalformedCachePatternException e) {
+      throw new MalformedPatternException(e.getMessage());
+    }
+  }
+
+  @Override
+  public String getRegex() {
+    return regex;
+  }
+
+  @Override
+  public RegexMatches matcher(CharSequence input, int fromIndex) {
+    PatternMatcherInput matcherInput = new PatternMatcherInput(input.toString());
+    matcherInput.setCurrentOffset(fromIndex);
+    return new OroMatches(matcherInput);
+  }
+
+  private final class OroMatches implements RegexMatches {
+
+    private final Perl5Matcher matcher = new Perl5Matcher();
+    private final PatternMatcherInput input;
+    private MatchResult match;
+
+    private OroMatches(PatternMatcherInput input) {
+      this.input = input;
+    }
+
+    @Override
+    public boolean find() {
+      if (!matcher.contains(input, pattern)) {
+        match = null;
+        return false;
+      }
+      match = matcher.getMatch();
+      return true;
+    }
+
+    @Override
+    public String group(int group) {
+      return match.group(group);
+    }
+
+    @Override
+    public int start(int group) {
+      return match.beginOffset(group);
+    }
+
+    @Override
+    public int end(int group) {
+      return match.endOffset(group);
+    }
+
+    @Override
+    public int groupCount() {
+      return match.groups() - 1;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import java.util.Locale;
+import org.apache.jmeter.util.JMeterUtils;
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Engines available to evaluate the regexes of Correlation Extractors and Replacements.
+ *
+ * <p>The engine is selected globally with the <code>CorrelationEngine.regexEngine</code> JMeter
+ * property, and can be overridden for the rules of a given reference variable with
+ * <code>CorrelationEngine.regexEngine.&lt;reference variable&gt;</code>. Allowed values are
+ * <code>oro</code> (default, same behavior as JMeter's Regular Expression Extractor),
+ * <code>java</code> and <code>linear</code>.
+ */
+public enum RegexEngine {
+
+  /**
+   * Jakarta ORO, used by JMeter's Regular Expression Extractor.
+   */
+  ORO {
+    @Override
+    public CompiledRegex compile(String regex) throws MalformedPatternException {
+      return OroRegex.compile(regex);
+    }
+
+    @Override
+    public boolean isIncremental() {
+      return false;
+    }
+  },
+  /**
+   * {@link java.util.regex}, which supports a richer syntax than ORO, but backtracks as well.
+   */
+  JAVA {
+    @Override
+    public CompiledRegex compile(String regex) throws MalformedPatternException {
+      return JavaRegex.compile(regex);
+    }
+  },
+  /**
+   * Automaton based engine, which evaluates regexes in time proportional to the input length.
+   *
+   * <p>Regexes using constructions not supported by the automaton (like back references or look
+   * arounds) are evaluated with ORO instead.
+   */
+  LINEAR {
+    @Override
+    public CompiledRegex compile(String regex) throws MalformedPatternException {
+      try {
+        return LinearRegexCompiler.compile(regex);
+      } catch (UnsupportedRegexException e) {
+        LOG.debug("Using ORO for regex {} since it is not supported by linear engine: {}", regex,
+            e.getMessage());
+        return OroRegex.compile(regex);
+      }
+    }
+  };
+
+  public static final String ENGINE_PROPERTY = "CorrelationEngine.regexEngine";
+  private static final Logger LOG = LoggerFactory.getLogger(RegexEngine.class);
+
+  public abstract CompiledRegex compile(String regex) throws MalformedPatternException;
+
+  /**
+   * Tells if the engine reads the characters of the input as it needs them, instead of requiring
+   * a String copy of the whole input.
+   *
+   * <p>Regexes that the linear engine evaluates with ORO still copy the input.
+   */
+  public boolean isIncremental() {
+    return true;
+  }
+
+  public static RegexEngine getDefault() {
+    return fromName(JMeterUtils.getProperty(ENGINE_PROPERTY), ORO);
+  }
+
+  public static RegexEngine forReferenceName(String referenceName) {
+    RegexEngine defaultEngine = getDefault();
+    if (referenceName == null || referenceName.isEmpty()) {
+      return defaultEngine;
+    }
+    return fromName(JMeterUtils.getProperty(ENGINE_PROPERTY + "." + referenceName),
+        defaultEngine);
+  }
+
+  private static RegexEngine fromName(String name, RegexEngine defaultEngine) {
+    if (name == null || name.trim().isEmpty()) {
+      return defaultEngine;
+    }
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.US));
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unknown regex engine {}, using {} instead.", name, defaultEngine);
+      return defaultEngine;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+/**
+ * Iterates over the successive matches of a {@link CompiledRegex} in an input.
+ */
+public interface RegexMatches {
+
+  /**
+   * Looks for the next match in the input.
+   *
+   * @return true when a new match was found, false when there are no more matches
+   */
+  boolean find();
+
+  /**
+   * Gets the text captured by a group of the last match.
+   *
+   * @param group number of the group (0 for the whole match)
+   * @return the captured text or null when the group didn't participate in the match or
+   *     doesn't exist
+   */
+  String group(int group);
+
+  /**
+   * Gets the offset in the input where a group of the last match begins.
+   *
+   * @param group number of the group (0 for the whole match)
+   * @return the offset or -1 when the group didn't participate in the match or
+   *     doesn't exist
+   */
+  int start(int group);
+
+  /**
+   * Gets the offset in the input after the last character of a group of the last match.
+   *
+   * @param group number of the group (0 for the whole match)
+   * @return the offset or -1 when the group didn't participate in the match or
+   *     doesn't exist
+   */
+  int end(int group);
+
+  /**
+   * Gets the number of groups in the regex, without counting the whole match.
+   */
+  int groupCount();
+}
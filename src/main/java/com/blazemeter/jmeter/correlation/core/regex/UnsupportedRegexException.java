@@ -0,0 +1,11 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+/**
+ * Thrown when a regex uses a construction not supported by {@link LinearRegexCompiler}.
+ */
+class UnsupportedRegexException extends Exception {
+
+  UnsupportedRegexException(String message) {
+    super(message);
+  }
+}
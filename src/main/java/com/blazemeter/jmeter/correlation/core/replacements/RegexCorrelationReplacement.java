@@ -2,9 +2,14 @@ package com.blazemeter.jmeter.correlation.core.replacements;
 
 import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
 import com.blazemeter.jmeter.correlation.core.CorrelationContext;
+import com.blazemeter.jmeter.correlation.core.CorrelationVariables;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.CheckBoxParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.TextParameterDefinition;
+import com.blazemeter.jmeter.correlation.core.RegexPrefilter;
+import com.blazemeter.jmeter.correlation.core.regex.CompiledRegex;
+import com.blazemeter.jmeter.correlation.core.regex.RegexEngine;
+import com.blazemeter.jmeter.correlation.core.regex.RegexMatches;
 import com.blazemeter.jmeter.correlation.gui.CorrelationRuleTestElement;
 import com.google.common.annotations.VisibleForTesting;
 import java.util.Arrays;
@@ -17,13 +22,7 @@ import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterVariables;
-import org.apache.jmeter.util.JMeterUtils;
 import org.apache.oro.text.regex.MalformedPatternException;
-import org.apache.oro.text.regex.MatchResult;
-import org.apache.oro.text.regex.Pattern;
-import org.apache.oro.text.regex.PatternMatcher;
-import org.apache.oro.text.regex.PatternMatcherInput;
-import org.apache.oro.text.regex.Perl5Compiler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,11 +50,16 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
   private static final Logger LOG = LoggerFactory.getLogger(RegexCorrelationReplacement.class);
   private static final boolean IGNORE_VALUE_DEFAULT = false;
   private static final String REPLACEMENT_STRING_DEFAULT_VALUE = "";
+  private static final String MATCH_NUMBER_SUFFIX = "_matchNr";
+  private static final java.util.regex.Pattern FUNCTION_REF_PATTERN = java.util.regex.Pattern
+      .compile("(\\$\\{.+?})");
   protected String regex = REGEX_DEFAULT_VALUE;
   protected boolean ignoreValue = IGNORE_VALUE_DEFAULT;
   protected String replacementString = REPLACEMENT_STRING_DEFAULT_VALUE;
   private Function<String, String> expressionEvaluator =
       (expression) -> new CompoundVariable(expression).execute();
+  private transient CachedRegex cachedRegex;
+  private transient CachedRegex cachedPredicateRegex;
 
   /**
    * Default constructor added in order to satisfy the JSON conversion.
@@ -87,6 +91,7 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
 
   @Override
   public void setParams(List<String> params) {
+    clearCompiledRegexes();
     regex = !params.isEmpty() ? params.get(0) : REGEX_DEFAULT_VALUE;
     replacementString = params.size() > 1 ? params.get(1) : REPLACEMENT_STRING_DEFAULT_VALUE;
     ignoreValue = params.size() > 2 ? Boolean.parseBoolean(params.get(2)) : IGNORE_VALUE_DEFAULT;
@@ -177,83 +182,187 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
   protected String replaceWithRegex(String input, String regex,
       String variableName, JMeterVariables vars)
       throws MalformedPatternException {
-    PatternMatcher matcher = JMeterUtils.getMatcher();
-    Pattern pattern = new Perl5Compiler().compile(regex);
-    PatternMatcherInput patternMatcherInput = new PatternMatcherInput(input);
-    int beginOffset = patternMatcherInput.getBeginOffset();
-    char[] inputBuffer = patternMatcherInput.getBuffer();
+    cachedRegex = CachedRegex.compile(regex, variableName, cachedRegex);
+    RegexPrefilter regexPrefilter = cachedRegex.prefilter;
+    if (isValueDriven(regexPrefilter) && vars instanceof CorrelationVariables
+        && !((CorrelationVariables) vars).containsAnyValue(input)) {
+      return input;
+    }
+    int matchStart = regexPrefilter.findMatchStart(input);
+    if (matchStart < 0) {
+      return input;
+    }
+    RegexMatches match = cachedRegex.compiled.matcher(input, matchStart);
+    int beginOffset = 0;
     StringBuilder result = new StringBuilder();
     Function<String, String> expressionProvider = replaceExpressionProvider();
-    while (matcher.contains(patternMatcherInput, pattern)) {
-      MatchResult match = matcher.getMatch();
-      boolean hasMatch = false;
-      int varNr = 0;
-      while (varNr <= context.getVariableCount(variableName) && !hasMatch) {
-        /* varNr could be 0 if non MultiValuedExtractor is used
-         so this code is to support when yo use MultiValuedReplacement with 
-         SingleValuedExtractor */
-        String varName = varNr == 0 ? variableName : variableName + "#" + varNr;
-        String varMatchesCount = vars.get(varName + "_matchNr");
-        String literalMatched = match.group(1);
-        String replaceExpression = null;
-        if (varMatchesCount == null) {
-          if (vars.get(varName) != null && vars.get(varName).equals(literalMatched)
-              && replacementString.isEmpty()) {
-            replaceExpression = expressionProvider.apply(varName);
-            hasMatch = true;
-          } else if (ignoreValue && !replacementString.isEmpty()) {
-            replaceExpression = replacementString;
-            /* This case does not care if the value is 'matching'. Because ignore value is 
-            activated, therefore we need to step out of loop by setting hasMatch.*/
-            hasMatch = true;
-          } else if (computeStringReplacement(varName)
-              .equals(literalMatched) && !ignoreValue) {
-            replaceExpression = expressionProvider
-                .apply(buildReplacementStringForMultivalued(varName));
+    while (match.find()) {
+      String literalMatched = match.group(1);
+      boolean hasMatch;
+      if (isIndexedLookup(literalMatched, vars)) {
+        String varName = findVariableByValue(literalMatched, variableName,
+            (CorrelationVariables) vars);
+        hasMatch = varName != null;
+        if (hasMatch) {
+          replaceMatch(result, input, match, beginOffset, expressionProvider.apply(varName));
+        }
+      } else {
+        hasMatch = replaceWithMatchingVariable(result, input, match, beginOffset, variableName,
+            vars, expressionProvider);
+      }
+      if (!hasMatch) {
+        result.append(input, beginOffset, match.end(0));
+      }
+      beginOffset = match.end(0);
+    }
+    result.append(input, beginOffset, input.length());
+    return result.toString();
+  }
+
+  /*
+   * Without a replacement string, a match is replaced by the first variable, in the order they are
+   * checked by replaceWithMatchingVariable, holding the matched value. So, when the variables keep
+   * an index of their values, the candidates are taken from it instead of going through all the
+   * variables of the reference variable.
+   */
+  private boolean isIndexedLookup(String literalMatched, JMeterVariables vars) {
+    return vars instanceof CorrelationVariables && replacementString.isEmpty()
+        && literalMatched != null && !literalMatched.isEmpty();
+  }
+
+  private String findVariableByValue(String literalMatched, String variableName,
+      CorrelationVariables vars) {
+    int variableCount = context.getVariableCount(variableName);
+    String ret = null;
+    long retOrder = Long.MAX_VALUE;
+    for (String name : vars.getNamesByValue(literalMatched)) {
+      long order = findLookupOrder(name, variableName, variableCount, vars);
+      if (order >= 0 && order < retOrder) {
+        ret = name;
+        retOrder = order;
+      }
+    }
+    return ret;
+  }
+
+  /*
+   * Gets the position in which the variable is checked by replaceWithMatchingVariable, or -1 if it
+   * is never checked.
+   */
+  private static long findLookupOrder(String name, String variableName, int variableCount,
+      JMeterVariables vars) {
+    int varNr = findVariableNr(name, variableName, variableCount);
+    if (varNr >= 0) {
+      return vars.get(name + MATCH_NUMBER_SUFFIX) == null ? (long) varNr << 32 : -1;
+    }
+    int separatorIndex = name.lastIndexOf('_');
+    if (separatorIndex <= 0) {
+      return -1;
+    }
+    String baseName = name.substring(0, separatorIndex);
+    varNr = findVariableNr(baseName, variableName, variableCount);
+    int varMatch = parsePositiveNumber(name.substring(separatorIndex + 1));
+    int matchNr = parsePositiveNumber(vars.get(baseName + MATCH_NUMBER_SUFFIX));
+    return varNr >= 0 && varMatch > 0 && varMatch <= matchNr
+        ? ((long) varNr << 32) + varMatch : -1;
+  }
+
+  private static int findVariableNr(String name, String variableName, int variableCount) {
+    if (name.equals(variableName)) {
+      return 0;
+    }
+    String multivaluedPrefix = variableName + "#";
+    if (!name.startsWith(multivaluedPrefix)) {
+      return -1;
+    }
+    int varNr = parsePositiveNumber(name.substring(multivaluedPrefix.length()));
+    return varNr > 0 && varNr <= variableCount ? varNr : -1;
+  }
+
+  private static int parsePositiveNumber(String value) {
+    if (value == null || value.isEmpty() || value.length() > 9) {
+      return -1;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (!Character.isDigit(value.charAt(i))) {
+        return -1;
+      }
+    }
+    return Integer.parseInt(value);
+  }
+
+  private boolean replaceWithMatchingVariable(StringBuilder result, String input,
+      RegexMatches match, int beginOffset, String variableName, JMeterVariables vars,
+      Function<String, String> expressionProvider) {
+    String literalMatched = match.group(1);
+    boolean hasMatch = false;
+    int varNr = 0;
+    while (varNr <= context.getVariableCount(variableName) && !hasMatch) {
+      /* varNr could be 0 if non MultiValuedExtractor is used
+       so this code is to support when yo use MultiValuedReplacement with 
+       SingleValuedExtractor */
+      String varName = varNr == 0 ? variableName : variableName + "#" + varNr;
+      String varMatchesCount = vars.get(varName + MATCH_NUMBER_SUFFIX);
+      String replaceExpression = null;
+      if (varMatchesCount == null) {
+        if (vars.get(varName) != null && vars.get(varName).equals(literalMatched)
+            && replacementString.isEmpty()) {
+          replaceExpression = expressionProvider.apply(varName);
+          hasMatch = true;
+        } else if (ignoreValue && !replacementString.isEmpty()) {
+          replaceExpression = replacementString;
+          /* This case does not care if the value is 'matching'. Because ignore value is 
+          activated, therefore we need to step out of loop by setting hasMatch.*/
+          hasMatch = true;
+        } else if (computeStringReplacement(varName)
+            .equals(literalMatched) && !ignoreValue) {
+          replaceExpression = expressionProvider
+              .apply(buildReplacementStringForMultivalued(varName));
+          hasMatch = true;
+        }
+        if (replaceExpression != null) {
+          replaceMatch(result, input, match, beginOffset, replaceExpression);
+        }
+      } else {
+        int matchNr = Integer.parseInt(varMatchesCount);
+        int varMatch = 1;
+        while (varMatch <= matchNr && !hasMatch) {
+          String varNameMatch = varName + "_" + varMatch;
+          if (vars.get(varNameMatch).equals(literalMatched) && replacementString.isEmpty()) {
+            replaceExpression = varNameMatch;
             hasMatch = true;
-          }
-          if (replaceExpression != null) {
-            result = replaceMatch(result, patternMatcherInput, match,
-                beginOffset, inputBuffer, replaceExpression);
-          }
-        } else {
-          int matchNr = Integer.parseInt(varMatchesCount);
-          int varMatch = 1;
-          while (varMatch <= matchNr && !hasMatch) {
-            String varNameMatch = varName + "_" + varMatch;
-            if (vars.get(varNameMatch).equals(literalMatched) && replacementString.isEmpty()) {
-              replaceExpression = varNameMatch;
+          } else if (!ignoreValue && !replacementString.isEmpty()) {
+            if (computeStringReplacement(varNameMatch).equals(literalMatched)) {
+              replaceExpression = buildReplacementStringForMultivalued(varNameMatch);
               hasMatch = true;
-            } else if (!ignoreValue && !replacementString.isEmpty()) {
-              if (computeStringReplacement(varNameMatch).equals(literalMatched)) {
-                replaceExpression = buildReplacementStringForMultivalued(varNameMatch);
-                hasMatch = true;
-              }
-            }
-            if (replaceExpression != null) {
-              result = replaceMatch(result, patternMatcherInput, match,
-                  beginOffset, inputBuffer, expressionProvider.apply(replaceExpression));
             }
-            varMatch++;
           }
+          if (replaceExpression != null) {
+            replaceMatch(result, input, match, beginOffset,
+                expressionProvider.apply(replaceExpression));
+          }
+          varMatch++;
         }
-        varNr++;
       }
-      if (!hasMatch) {
-        result.append(inputBuffer, beginOffset,
-            patternMatcherInput.getMatchEndOffset() - beginOffset);
-      }
-      beginOffset = patternMatcherInput.getMatchEndOffset();
+      varNr++;
     }
-    result.append(inputBuffer, beginOffset, input.length() - beginOffset);
-    return result.toString();
+    return hasMatch;
+  }
+
+  /*
+   * Without a replacement string, matches are only replaced when the captured value is the one
+   * stored in some variable (or empty, when compared against the evaluation of the empty
+   * replacement string). So inputs without stored values can be skipped if the captured value is
+   * never empty.
+   */
+  private boolean isValueDriven(RegexPrefilter regexPrefilter) {
+    return replacementString.isEmpty() && regexPrefilter.isFirstGroupNonEmpty();
   }
 
   private Function<String, String> replaceExpressionProvider() {
-    return s -> replacementString == null
-        || !java.util.regex.Pattern.compile("(\\$\\{.+?})").matcher(replacementString).matches()
-        || replacementString.isEmpty()
-        ? FUNCTION_REF_PREFIX + s + FUNCTION_REF_SUFFIX : s;
+    boolean isFunctionRef = replacementString != null && !replacementString.isEmpty()
+        && FUNCTION_REF_PATTERN.matcher(replacementString).matches();
+    return s -> isFunctionRef ? s : FUNCTION_REF_PREFIX + s + FUNCTION_REF_SUFFIX;
   }
 
   private String computeStringReplacement(String varName) {
@@ -270,12 +379,11 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
     return replacementString;
   }
 
-  private StringBuilder replaceMatch(StringBuilder result, PatternMatcherInput patternMatcherInput,
-      MatchResult match, int beginOffset, char[] inputBuffer, String expression) {
-    return result.append(inputBuffer, beginOffset, match.beginOffset(1) - beginOffset)
+  private StringBuilder replaceMatch(StringBuilder result, String input, RegexMatches match,
+      int beginOffset, String expression) {
+    return result.append(input, beginOffset, match.start(1))
         .append(expression)
-        .append(inputBuffer, match.endOffset(1),
-            patternMatcherInput.getMatchEndOffset() - match.endOffset(1));
+        .append(input, match.end(1), match.end(0));
   }
 
   /**
@@ -295,34 +403,40 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
   protected String replaceWithRegexAndPredicate(String input, String regex, String expression,
       Predicate<String> matchCondition)
       throws MalformedPatternException {
-    PatternMatcher matcher = JMeterUtils.getMatcher();
-    Pattern pattern = new Perl5Compiler().compile(regex);
-    PatternMatcherInput patternMatcherInput = new PatternMatcherInput(input);
-    int beginOffset = patternMatcherInput.getBeginOffset();
-    char[] inputBuffer = patternMatcherInput.getBuffer();
+    cachedPredicateRegex = CachedRegex.compile(regex, variableName, cachedPredicateRegex);
+    int matchStart = cachedPredicateRegex.prefilter.findMatchStart(input);
+    if (matchStart < 0) {
+      return input;
+    }
+    RegexMatches match = cachedPredicateRegex.compiled.matcher(input, matchStart);
+    int beginOffset = 0;
     StringBuilder result = new StringBuilder();
-    while (matcher.contains(patternMatcherInput, pattern)) {
-      MatchResult match = matcher.getMatch();
+    while (match.find()) {
       if (matchCondition.test(match.group(1))) {
-        replaceMatch(result, patternMatcherInput, match, beginOffset, inputBuffer,
+        replaceMatch(result, input, match, beginOffset,
             FUNCTION_REF_PREFIX + expression + FUNCTION_REF_SUFFIX);
       } else {
-        result.append(inputBuffer, beginOffset,
-            patternMatcherInput.getMatchEndOffset() - beginOffset);
+        result.append(input, beginOffset, match.end(0));
       }
-      beginOffset = patternMatcherInput.getMatchEndOffset();
+      beginOffset = match.end(0);
     }
-    result.append(inputBuffer, beginOffset, input.length() - beginOffset);
+    result.append(input, beginOffset, input.length());
     return result.toString();
   }
 
   @Override
   public void update(CorrelationRuleTestElement testElem) {
+    clearCompiledRegexes();
     regex = testElem.getPropertyAsString(REPLACEMENT_REGEX_PROPERTY_NAME);
     replacementString = testElem.getPropertyAsString(REPLACEMENT_STRING_PROPERTY_NAME);
     ignoreValue = testElem.getPropertyAsBoolean(REPLACEMENT_IGNORE_VALUE_PROPERTY_NAME);
   }
 
+  private void clearCompiledRegexes() {
+    cachedRegex = null;
+    cachedPredicateRegex = null;
+  }
+
   @Override
   public String toString() {
     return "RegexCorrelationReplacement{" +
@@ -350,4 +464,37 @@ public class RegexCorrelationReplacement<T extends BaseCorrelationContext> exten
   public void setExpressionEvaluator(Function<String, String> expressionEvaluator) {
     this.expressionEvaluator = expressionEvaluator;
   }
+
+  /**
+   * Regular expression compiled by a {@link RegexEngine}, along with its {@link RegexPrefilter}.
+   */
+  private static final class CachedRegex {
+
+    private final String referenceName;
+    private final CompiledRegex compiled;
+    private final RegexPrefilter prefilter;
+
+    private CachedRegex(String referenceName, CompiledRegex compiled, RegexPrefilter prefilter) {
+      this.referenceName = referenceName;
+      this.compiled = compiled;
+      this.prefilter = prefilter;
+    }
+
+    /*
+     * Compiled regexes are kept and reused for all the processed requests. The previous one is
+     * reused when it was compiled from the same regex and for the same reference variable, so the
+     * engine (configured with JMeter properties per reference variable) is only resolved when the
+     * regex is compiled.
+     */
+    private static CachedRegex compile(String regex, String referenceName, CachedRegex previous)
+        throws MalformedPatternException {
+      if (previous != null && Objects.equals(previous.referenceName, referenceName)
+          && previous.compiled.getRegex().equals(regex)) {
+        return previous;
+      }
+      return new CachedRegex(referenceName,
+          RegexEngine.forReferenceName(referenceName).compile(regex),
+          RegexPrefilter.compile(regex));
+    }
+  }
 }
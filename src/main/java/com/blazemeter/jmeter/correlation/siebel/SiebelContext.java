@@ -1,6 +1,8 @@
 package com.blazemeter.jmeter.correlation.siebel;
 
 import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultFieldCache;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -33,8 +35,19 @@ public class SiebelContext extends BaseCorrelationContext {
    */
   @Override
   public void update(SampleResult sampleResult) {
+    update(sampleResult, new ResultFieldCache(sampleResult));
+  }
 
-    String responseAsString = sampleResult.getResponseDataAsString();
+  /**
+   * Same as {@link #update(SampleResult)}, but reusing the response body already decoded for the
+   * sample.
+   *
+   * @param sampleResult the result from the request obtained from the server
+   * @param fields lazily obtained fields of the result
+   */
+  @Override
+  public void update(SampleResult sampleResult, ResultFieldCache fields) {
+    String responseAsString = fields.get(ResultField.BODY);
     if (responseAsString.startsWith("@0")) {
       String delimiter = Pattern.quote(responseAsString.substring(2, 3));
       String[] parts = responseAsString.split(delimiter);
@@ -7,11 +7,8 @@ import com.blazemeter.jmeter.correlation.core.RegexMatcher;
 import com.blazemeter.jmeter.correlation.core.replacements.RegexCorrelationReplacement;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
-import org.apache.jmeter.modifiers.JSR223PreProcessor;
 import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
 import org.apache.jmeter.samplers.SampleResult;
-import org.apache.jmeter.testbeans.gui.TestBeanGUI;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterVariables;
 
@@ -60,28 +57,11 @@ public class SiebelCounterCorrelationReplacement extends
     }
   }
 
-  private JSR223PreProcessor createPreProcessor(Integer counter, int count) {
+  private SiebelCounterPreProcessor createPreProcessor(Integer counter, int count) {
     String variableName = getVariableName();
-    JSR223PreProcessor jSR223PreProcessor = new JSR223PreProcessor();
-    jSR223PreProcessor.setProperty(JSR223PreProcessor.GUI_CLASS, TestBeanGUI.class.getName());
-    jSR223PreProcessor.setName(String.format("Calculate %s", variableName));
-    StringBuilder script = new StringBuilder();
-    if (counter == null) {
-      script.append(String.format("int %s_var = %d;\n", variableName, count));
-    } else if (counter < count) {
-      script.append(String
-          .format("int %1$s_var = Integer.valueOf(vars.get(\"%1$s\")) + %2$d;\n", variableName,
-              count - counter));
-    } else if (counter > count) {
-      script.append(String
-          .format("int %1$s_var = Integer.valueOf(vars.get(\"%1$s\")) - %2$d;\n", variableName,
-              counter - count));
-    }
     context.setCounter(count);
-    script.append(String.format("vars.put(\"%1$s\", String.valueOf(%1$s_var));\n", variableName));
-    jSR223PreProcessor.setProperty("script", script.toString());
-    jSR223PreProcessor.setProperty("cacheKey", UUID.randomUUID().toString());
-    return jSR223PreProcessor;
+    return counter == null ? SiebelCounterPreProcessor.fromValue(variableName, count)
+        : SiebelCounterPreProcessor.fromDelta(variableName, count - counter);
   }
 
   @Override
@@ -0,0 +1,96 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import org.apache.jmeter.processor.PreProcessor;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testbeans.gui.TestBeanGUI;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre Processor that updates the Siebel CRM counter (SWEC) variable, either setting it to a given
+ * value or adding the difference between the recorded counters to its current value.
+ *
+ * <p>Used by {@link SiebelCounterCorrelationReplacement} instead of a JSR223 Pre Processor, to
+ * avoid compiling a script for each recorded counter change.
+ */
+public class SiebelCounterPreProcessor extends AbstractTestElement implements PreProcessor,
+    TestBean {
+
+  public static final String VARIABLE_NAME_PROPERTY = "variableName";
+  public static final String VALUE_PROPERTY = "value";
+  public static final String RELATIVE_PROPERTY = "relative";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SiebelCounterPreProcessor.class);
+
+  private String variableName;
+  private int value;
+  private boolean relative;
+
+  /**
+   * Creates a pre processor which sets the variable to the given value.
+   */
+  public static SiebelCounterPreProcessor fromValue(String variableName, int value) {
+    return build(variableName, value, false);
+  }
+
+  /**
+   * Creates a pre processor which adds the given delta (that may be negative) to the current
+   * value of the variable.
+   */
+  public static SiebelCounterPreProcessor fromDelta(String variableName, int delta) {
+    return build(variableName, delta, true);
+  }
+
+  private static SiebelCounterPreProcessor build(String variableName, int value,
+      boolean relative) {
+    SiebelCounterPreProcessor ret = new SiebelCounterPreProcessor();
+    ret.setProperty(GUI_CLASS, TestBeanGUI.class.getName());
+    ret.setName(String.format("Calculate %s", variableName));
+    ret.setProperty(VARIABLE_NAME_PROPERTY, variableName);
+    ret.setProperty(VALUE_PROPERTY, value);
+    ret.setProperty(RELATIVE_PROPERTY, relative);
+    return ret;
+  }
+
+  @Override
+  public void process() {
+    JMeterVariables vars = getThreadContext().getVariables();
+    if (!relative) {
+      vars.put(variableName, String.valueOf(value));
+      return;
+    }
+    String current = vars.get(variableName);
+    try {
+      vars.put(variableName, String.valueOf(Integer.parseInt(current) + value));
+    } catch (NumberFormatException e) {
+      LOG.warn("Could not update counter {} since its value ({}) is not a number.", variableName,
+          current);
+    }
+  }
+
+  public String getVariableName() {
+    return variableName;
+  }
+
+  public void setVariableName(String variableName) {
+    this.variableName = variableName;
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  public void setValue(int value) {
+    this.value = value;
+  }
+
+  public boolean isRelative() {
+    return relative;
+  }
+
+  public void setRelative(boolean relative) {
+    this.relative = relative;
+  }
+}
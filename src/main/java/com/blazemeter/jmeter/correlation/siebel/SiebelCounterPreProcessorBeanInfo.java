@@ -0,0 +1,23 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import java.beans.PropertyDescriptor;
+import org.apache.jmeter.testbeans.BeanInfoSupport;
+
+public class SiebelCounterPreProcessorBeanInfo extends BeanInfoSupport {
+
+  public SiebelCounterPreProcessorBeanInfo() {
+    super(SiebelCounterPreProcessor.class);
+    createPropertyGroup("counter", new String[]{SiebelCounterPreProcessor.VARIABLE_NAME_PROPERTY,
+        SiebelCounterPreProcessor.VALUE_PROPERTY, SiebelCounterPreProcessor.RELATIVE_PROPERTY});
+    PropertyDescriptor p = property(SiebelCounterPreProcessor.VARIABLE_NAME_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+    p = property(SiebelCounterPreProcessor.VALUE_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, 0);
+    p = property(SiebelCounterPreProcessor.RELATIVE_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, Boolean.FALSE);
+  }
+
+}
@@ -4,17 +4,16 @@ import com.blazemeter.jmeter.correlation.core.CorrelationContext;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.ComboParameterDefinition;
 import com.blazemeter.jmeter.correlation.core.ParameterDefinition.TextParameterDefinition;
-import com.blazemeter.jmeter.correlation.core.RegexMatcher;
 import com.blazemeter.jmeter.correlation.core.extractors.RegexCorrelationExtractor;
 import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultFieldCache;
 import com.blazemeter.jmeter.correlation.gui.CorrelationRuleTestElement;
+import com.blazemeter.jmeter.correlation.siebel.SiebelStarArrayPostProcessor.Row;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.UUID;
-import org.apache.jmeter.extractor.JSR223PostProcessor;
 import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
 import org.apache.jmeter.samplers.SampleResult;
-import org.apache.jmeter.testbeans.gui.TestBeanGUI;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterVariables;
 import org.slf4j.Logger;
@@ -71,26 +70,27 @@ public class SiebelRowCorrelationExtractor extends RegexCorrelationExtractor<Sie
   @Override
   public void process(HTTPSamplerBase sampler, List<TestElement> children, SampleResult result,
       JMeterVariables vars) {
-    super.process(sampler, children, result, vars);
+    process(sampler, children, result, vars, new ResultFieldCache(result));
+  }
+
+  @Override
+  public void process(HTTPSamplerBase sampler, List<TestElement> children, SampleResult result,
+      JMeterVariables vars, ResultFieldCache fields) {
+    extract(children, vars, fields);
     vars.remove(variableName);
-    JSR223PostProcessor jsr223PostProcessor = buildArrayParserPostProcessor(result, vars);
-    if (jsr223PostProcessor != null) {
-      children.add(jsr223PostProcessor);
+    SiebelStarArrayPostProcessor postProcessor = buildArrayParserPostProcessor(fields, vars);
+    if (postProcessor != null) {
+      children.add(postProcessor);
     }
   }
 
-  private JSR223PostProcessor buildArrayParserPostProcessor(SampleResult result,
+  private SiebelStarArrayPostProcessor buildArrayParserPostProcessor(ResultFieldCache fields,
       JMeterVariables vars) {
-    StringBuilder script = new StringBuilder();
-    JSR223PostProcessor jSR223PostProcessor = new JSR223PostProcessor();
-    jSR223PostProcessor.setProperty(JSR223PostProcessor.GUI_CLASS, TestBeanGUI.class.getName());
-    jSR223PostProcessor.setName("Parse Array Values");
-    script.append("import com.blazemeter.jmeter.correlation.siebel.SiebelArrayFunction;\n\n");
-    script.append("String stringToSplit = \"\";\n");
-    script.append("String rowId = \"\";");
-    int matchNumber = 1;
-    for (String match : new RegexMatcher(regex, groupNr)
-        .findMatches(target.getField(result))) {
+    List<Row> rows = new ArrayList<>();
+    int matchNumber = 0;
+    for (String match : findAllMatches(fields)) {
+      // rows keep the number of their match, since not every match is parsed
+      matchNumber++;
       if (match == null) {
         continue;
       }
@@ -98,26 +98,15 @@ public class SiebelRowCorrelationExtractor extends RegexCorrelationExtractor<Sie
         String varNamePrefix = variableName + context.getNextRowPrefixId();
         SiebelArrayFunction.split(match, varNamePrefix, vars);
         int numberOfVariables = Integer.parseInt(vars.get(varNamePrefix + "_n"));
-        script
-            .append(String.format("\n\n// Parsing Star Array parameter(s) using match number %1$d\n"
-                    + "stringToSplit = vars.get(\"%2$s_%1$d\");\n"
-                    + "if (stringToSplit != null) {\n"
-                    + "\tSiebelArrayFunction.split(stringToSplit, \"%3$s\", vars);\n"
-                    + "\trowIdValue = vars.get(\"%3$s_%4$d\");\n"
-                    + "\tvars.put(\"%3$s_rowId\", rowIdValue);"
-                    + "\n}", matchNumber, variableName, varNamePrefix,
-                numberOfVariables));
+        rows.add(new Row(matchNumber, varNamePrefix, numberOfVariables));
         String rowId = vars.get(varNamePrefix + "_" + numberOfVariables);
         context.addRowVar(rowId, varNamePrefix);
         vars.put(varNamePrefix + "_rowId", rowId);
-        matchNumber++;
       } catch (IllegalArgumentException e) {
         LOG.warn(e.getMessage());
       }
     }
-    jSR223PostProcessor.setProperty("script", script.toString());
-    jSR223PostProcessor.setProperty("cacheKey", UUID.randomUUID().toString());
-    return matchNumber > 1 ? jSR223PostProcessor : null;
+    return rows.isEmpty() ? null : SiebelStarArrayPostProcessor.fromRows(variableName, rows);
   }
 
   @Override
@@ -0,0 +1,155 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.processor.PostProcessor;
+import org.apache.jmeter.testbeans.TestBean;
+import org.apache.jmeter.testbeans.gui.TestBeanGUI;
+import org.apache.jmeter.testelement.AbstractTestElement;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Post Processor that parses the Siebel Star Arrays extracted in every match of a variable, with
+ * {@link SiebelArrayFunction#split(String, String, JMeterVariables)}, and stores the row id of each
+ * of them.
+ *
+ * <p>Rows are defined one per line, in the form <code>matchNr:prefix:rowIdIndex</code>, where the
+ * match number is the match of the variable to parse, the prefix is used for the parsed variables
+ * and the row id index is the parsed variable stored in <code>prefix_rowId</code>. Matches that
+ * couldn't be parsed while recording have no row, so they are not parsed either. This replaces the
+ * JSR223 Post Processor the recorder used to add with a script for each sampler.
+ */
+public class SiebelStarArrayPostProcessor extends AbstractTestElement implements PostProcessor,
+    TestBean {
+
+  public static final String VARIABLE_NAME_PROPERTY = "variableName";
+  public static final String ROWS_PROPERTY = "rows";
+
+  private static final Logger LOG = LoggerFactory.getLogger(SiebelStarArrayPostProcessor.class);
+  private static final char ROW_SEPARATOR = ':';
+
+  private String variableName;
+  private String rows;
+  private transient String parsedRows;
+  private transient List<Row> rowsList = Collections.emptyList();
+
+  /**
+   * Creates a post processor which parses the matches of the given variable.
+   *
+   * @param variableName name of the variable with the star arrays matches
+   * @param rows rows of the matches to parse
+   * @return the post processor
+   */
+  public static SiebelStarArrayPostProcessor fromRows(String variableName, List<Row> rows) {
+    SiebelStarArrayPostProcessor ret = new SiebelStarArrayPostProcessor();
+    ret.setProperty(GUI_CLASS, TestBeanGUI.class.getName());
+    ret.setName("Parse Array Values");
+    ret.setProperty(VARIABLE_NAME_PROPERTY, variableName);
+    StringBuilder rowsText = new StringBuilder();
+    for (Row row : rows) {
+      if (rowsText.length() > 0) {
+        rowsText.append('\n');
+      }
+      rowsText.append(row.matchNumber).append(ROW_SEPARATOR).append(row.prefix)
+          .append(ROW_SEPARATOR).append(row.rowIdIndex);
+    }
+    ret.setProperty(ROWS_PROPERTY, rowsText.toString());
+    return ret;
+  }
+
+  @Override
+  public void process() {
+    JMeterVariables vars = getThreadContext().getVariables();
+    for (Row row : getRowsList()) {
+      String stringToSplit = vars.get(variableName + "_" + row.matchNumber);
+      if (stringToSplit == null) {
+        continue;
+      }
+      try {
+        SiebelArrayFunction.split(stringToSplit, row.prefix, vars);
+      } catch (IllegalArgumentException e) {
+        LOG.warn("Could not parse match {} of {}: {}", row.matchNumber, variableName,
+            e.getMessage());
+        continue;
+      }
+      String rowId = vars.get(row.prefix + "_" + row.rowIdIndex);
+      if (rowId != null) {
+        vars.put(row.prefix + "_rowId", rowId);
+      } else {
+        vars.remove(row.prefix + "_rowId");
+      }
+    }
+  }
+
+  private List<Row> getRowsList() {
+    // rows are set before each execution, so we only parse them when they change
+    if (rows != null && !rows.equals(parsedRows)) {
+      rowsList = parseRows(rows);
+      parsedRows = rows;
+    }
+    return rowsList;
+  }
+
+  private static List<Row> parseRows(String rows) {
+    List<Row> ret = new ArrayList<>();
+    for (String line : rows.split("\n")) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      int prefixStart = line.indexOf(ROW_SEPARATOR) + 1;
+      int prefixEnd = line.lastIndexOf(ROW_SEPARATOR);
+      try {
+        ret.add(new Row(Integer.parseInt(line.substring(0, prefixStart - 1).trim()),
+            line.substring(prefixStart, prefixEnd),
+            Integer.parseInt(line.substring(prefixEnd + 1).trim())));
+      } catch (IndexOutOfBoundsException | NumberFormatException e) {
+        LOG.warn("Ignoring invalid star array row '{}', expected format is matchNr{}prefix{}"
+            + "rowIdIndex", line, ROW_SEPARATOR, ROW_SEPARATOR);
+      }
+    }
+    return ret;
+  }
+
+  public String getVariableName() {
+    return variableName;
+  }
+
+  public void setVariableName(String variableName) {
+    this.variableName = variableName;
+  }
+
+  public String getRows() {
+    return rows;
+  }
+
+  public void setRows(String rows) {
+    this.rows = rows;
+  }
+
+  /**
+   * Star array parsed, while recording, from a match of the variable.
+   */
+  public static final class Row {
+
+    private final int matchNumber;
+    private final String prefix;
+    private final int rowIdIndex;
+
+    /**
+     * Creates a row.
+     *
+     * @param matchNumber number of the match of the variable (starting from 1) to parse
+     * @param prefix prefix of the parsed variables
+     * @param rowIdIndex index of the parsed variable with the row id
+     */
+    public Row(int matchNumber, String prefix, int rowIdIndex) {
+      this.matchNumber = matchNumber;
+      this.prefix = prefix;
+      this.rowIdIndex = rowIdIndex;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import java.beans.PropertyDescriptor;
+import org.apache.jmeter.testbeans.BeanInfoSupport;
+import org.apache.jmeter.testbeans.gui.TypeEditor;
+
+public class SiebelStarArrayPostProcessorBeanInfo extends BeanInfoSupport {
+
+  public SiebelStarArrayPostProcessorBeanInfo() {
+    super(SiebelStarArrayPostProcessor.class);
+    createPropertyGroup("starArray",
+        new String[]{SiebelStarArrayPostProcessor.VARIABLE_NAME_PROPERTY,
+            SiebelStarArrayPostProcessor.ROWS_PROPERTY});
+    PropertyDescriptor p = property(SiebelStarArrayPostProcessor.VARIABLE_NAME_PROPERTY);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+    p = property(SiebelStarArrayPostProcessor.ROWS_PROPERTY, TypeEditor.TextAreaEditor);
+    p.setValue(NOT_UNDEFINED, Boolean.TRUE);
+    p.setValue(DEFAULT, "");
+  }
+
+}
@@ -1,6 +1,11 @@
 package com.blazemeter.jmeter.correlation;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.times;
@@ -9,6 +14,7 @@ import static org.mockito.Mockito.when;
 
 import com.blazemeter.jmeter.correlation.core.CorrelationEngine;
 import com.blazemeter.jmeter.correlation.core.CorrelationRule;
+import com.blazemeter.jmeter.correlation.core.CorrelationTemplatePostProcessor;
 import com.blazemeter.jmeter.correlation.core.RulesGroup;
 import com.blazemeter.jmeter.correlation.core.extractors.RegexCorrelationExtractor;
 import com.blazemeter.jmeter.correlation.core.proxy.ComparableCookie;
@@ -22,15 +28,19 @@ import com.blazemeter.jmeter.correlation.core.templates.TemplateVersion;
 import com.blazemeter.jmeter.correlation.core.templates.TemplateVersion.Builder;
 import com.blazemeter.jmeter.correlation.siebel.SiebelRowParamsCorrelationReplacement;
 import java.io.IOException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import org.apache.jmeter.exceptions.IllegalUserActionException;
 import org.apache.jmeter.gui.GuiPackage;
 import org.apache.jmeter.gui.tree.JMeterTreeModel;
 import org.apache.jmeter.gui.tree.JMeterTreeNode;
+import org.apache.jmeter.protocol.http.control.RecordingController;
 import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
 import org.apache.jmeter.protocol.http.sampler.HTTPSampler;
 import org.apache.jmeter.samplers.SampleResult;
@@ -42,6 +52,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -111,16 +122,20 @@ public class CorrelationProxyControlTest {
   }
 
   @Test
-  public void shouldNotInvokeCorrelationEngineProcessWhenSamplerIsNull() {
+  public void shouldNotInvokeCorrelationEngineProcessWhenSamplerIsNull()
+      throws InterruptedException {
     GuiPackage.initInstance(null, Mockito.mock(JMeterTreeModel.class));
     CorrelationProxyControl build = builder.build();
     build.startedProxy(Thread.currentThread());
     build.deliverSampler(null, testElements, sampleResult);
+    build.stopProxy();
+    build.awaitDeliveredSamples();
     verify(correlationEngine, never()).process(any(), any(), any(), any());
   }
 
   @Test
-  public void shouldInvokeCorrelationEngineProcessWhenSamplerIsNotNull() {
+  public void shouldInvokeCorrelationEngineProcessWhenSamplerIsNotNull()
+      throws InterruptedException {
     GuiPackage.initInstance(null, Mockito.mock(JMeterTreeModel.class));
     CorrelationProxyControl proxyControl = builder.withCorrelationEngine(correlationEngine)
         .build();
@@ -128,11 +143,41 @@ public class CorrelationProxyControlTest {
     proxyControl.startedProxy(Thread.currentThread());
     proxyControl.deliverSampler(sampler, testElements, sampleResult);
     proxyControl.endedProxy(Thread.currentThread());
+    proxyControl.stopProxy();
+    proxyControl.awaitDeliveredSamples();
     List<TestElement> children = new ArrayList<>();
     verify(correlationEngine, times(1))
         .process(sampler, children, sampleResult, DEFAULT_RESPONSE_FILTER);
   }
 
+  @Test
+  public void shouldResetEngineAfterPendingDeliveriesWhenRestartProxy() throws Exception {
+    CountDownLatch deliveryAllowed = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      deliveryAllowed.await();
+      return null;
+    }).when(correlationEngine).process(any(), any(), any(), any());
+    model = builder.withCorrelationEngine(correlationEngine).build();
+    model.setPort(1234);
+    sampleResult = new HTTPSampleResult();
+    sampleResult.setURL(new URL("http://localhost/"));
+    model.startedProxy(Thread.currentThread());
+    model.deliverSampler(sampler, testElements, sampleResult);
+    model.endedProxy(Thread.currentThread());
+    model.stopProxy();
+    try {
+      model.startProxy();
+    } catch (IOException e) {
+      //Is expected to throw an exception since 'keytool' command isn't allowed in this environment
+    }
+    verify(correlationEngine, never()).reset();
+    deliveryAllowed.countDown();
+    model.awaitDeliveredSamples();
+    InOrder inOrder = inOrder(correlationEngine);
+    inOrder.verify(correlationEngine).process(any(), any(), any(), any());
+    inOrder.verify(correlationEngine).reset();
+  }
+
   @Test
   public void shouldBuildCorrelationRulesWhenOnSaveTemplateWithRulesWithoutCorrelationExtractor()
       throws IOException, ConfigurationException {
@@ -272,6 +317,47 @@ public class CorrelationProxyControlTest {
     return Collections.singletonList(new RulesGroup.Builder().withRules(rules).build());
   }
 
+  @Test
+  public void shouldAddTemplatePostProcessorToTargetWhenStartProxyWithRuntimeExtraction()
+      throws IllegalUserActionException {
+    JMeterTreeModel treeModel = Mockito.mock(JMeterTreeModel.class);
+    GuiPackage.initInstance(null, treeModel);
+    when(treeModel.getNodesOfType(RecordingController.class))
+        .thenReturn(Collections.singletonList(target));
+    when(target.isEnabled()).thenReturn(true);
+    List<RulesGroup> groups = prepareGroupOfRulesWithoutCorrelationReplacements();
+    TemplateVersion template = new Builder()
+        .withRepositoryId(LOCAL_REPOSITORY_ID)
+        .withId(TEMPLATE_ID)
+        .withVersion(TEMPLATE_VERSION)
+        .withGroups(prepareGroupOfRulesWithoutCorrelationReplacements())
+        .build();
+    when(correlationEngine.isRuntimeExtraction()).thenReturn(true);
+    when(correlationComponentsRegistry.getInstalledTemplates())
+        .thenReturn(Collections.singletonList(template));
+    model = builder.withCorrelationEngine(correlationEngine).build();
+    model.setCorrelationGroups(groups);
+    try {
+      model.startProxy();
+    } catch (IOException e) {
+      //Is expected to throw an exception since 'keytool' command isn't allowed in this environment
+    }
+    verify(treeModel).addComponent(
+        argThat(e -> CorrelationTemplatePostProcessor.isFromTemplate(e, template)), same(target));
+  }
+
+  @Test
+  public void shouldNotStartProxyWhenRuntimeExtractionAndRulesDontMatchInstalledTemplate() {
+    when(correlationEngine.isRuntimeExtraction()).thenReturn(true);
+    when(correlationComponentsRegistry.getInstalledTemplates())
+        .thenReturn(Collections.emptyList());
+    model = builder.withCorrelationEngine(correlationEngine).build();
+    model.setCorrelationGroups(prepareGroupOfRulesWithoutCorrelationReplacements());
+    assertThatThrownBy(model::startProxy)
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("don't match any installed template");
+  }
+
   @Test
   public void shouldClearCustomCookiesWhenStartProxy() {
     model = builder.build();
@@ -291,7 +377,7 @@ public class CorrelationProxyControlTest {
     model = builder.withLocalConfiguration(localConfiguration).build();
     Thread proxy = Thread.currentThread();
     model.startedProxy(proxy);
-    LinkedHashMap<Object, PendingProxy> actualPending = model.getPendingProxies();
+    Map<Object, PendingProxy> actualPending = model.getPendingProxies();
     softly.assertThat(actualPending).isNotEmpty();
     softly.assertThat(actualPending).isEqualTo(proxy);
   }
@@ -145,6 +145,30 @@ public class CorrelationEngineTest {
     return Collections.singletonList(buildRuleWithEnable(enable));
   }
 
+  @Test
+  public void shouldNotAddExtractorsWhenProcessWithRuntimeExtraction() throws IOException {
+    engine.setCorrelationRules(createGroupWithRules(buildSingletonRulesListWithEnable(true)),
+        registry);
+    engine.setRuntimeExtraction(true);
+    List<TestElement> children = new ArrayList<>();
+    engine.process(createSampler(), children, buildSampleResult(), "");
+    assertThat(children).isEmpty();
+  }
+
+  @Test
+  public void shouldShareExtractorWhenProcessRepeatedExtractionWithSharedExtractors()
+      throws IOException {
+    engine.setCorrelationRules(createGroupWithRules(buildSingletonRulesListWithEnable(true)),
+        registry);
+    engine.setShareExtractors(true);
+    engine.process(createSampler(), new ArrayList<>(), buildSampleResult(), "");
+    engine.setVars(new JMeterVariables());
+    List<TestElement> children = new ArrayList<>();
+    engine.process(createSampler(), children, buildSampleResult(), "");
+    assertThat(Arrays.asList(children.size(), engine.pollSharedExtractors().size()))
+        .isEqualTo(Arrays.asList(0, 1));
+  }
+
   @Test
   public void shouldNotApplyExtractorWhenProcessWithDisabledRule() throws IOException {
     engine.setCorrelationRules(createGroupWithRules(buildSingletonRulesListWithEnable(false)),
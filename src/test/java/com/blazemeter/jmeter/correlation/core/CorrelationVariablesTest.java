@@ -0,0 +1,124 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CorrelationVariablesTest {
+
+  private static final String VARIABLE_NAME = "token";
+  private static final String VALUE = "abc123";
+  private static final String INPUT_WITH_VALUE = "param=abc123&other=1";
+  private static final String INPUT_WITHOUT_VALUE = "param=xyz&other=1";
+
+  private CorrelationVariables vars;
+
+  @Before
+  public void setup() {
+    vars = new CorrelationVariables();
+  }
+
+  @Test
+  public void shouldContainValueWhenInputHasStoredValue() {
+    vars.put(VARIABLE_NAME, VALUE);
+    assertThat(vars.containsAnyValue(INPUT_WITH_VALUE)).isTrue();
+  }
+
+  @Test
+  public void shouldNotContainValueWhenInputDoesNotHaveStoredValues() {
+    vars.put(VARIABLE_NAME, VALUE);
+    assertThat(vars.containsAnyValue(INPUT_WITHOUT_VALUE)).isFalse();
+  }
+
+  @Test
+  public void shouldNotContainValueWhenVariableIsRemoved() {
+    vars.put(VARIABLE_NAME, VALUE);
+    vars.containsAnyValue(INPUT_WITH_VALUE);
+    vars.remove(VARIABLE_NAME);
+    assertThat(vars.containsAnyValue(INPUT_WITH_VALUE)).isFalse();
+  }
+
+  @Test
+  public void shouldNotContainValueWhenOnlyMatchNumberHasIt() {
+    vars.put(VARIABLE_NAME + "_matchNr", "1");
+    assertThat(vars.containsAnyValue(INPUT_WITHOUT_VALUE)).isFalse();
+  }
+
+  @Test
+  public void shouldContainValueWhenEmptyValueIsStored() {
+    vars.put(VARIABLE_NAME, "");
+    assertThat(vars.containsAnyValue(INPUT_WITHOUT_VALUE)).isTrue();
+  }
+
+  @Test
+  public void shouldGetNamesByValueWhenValueIsStoredInVariables() {
+    vars.put(VARIABLE_NAME, VALUE);
+    vars.put(VARIABLE_NAME + "_1", VALUE);
+    assertThat(vars.getNamesByValue(VALUE)).containsExactly(VARIABLE_NAME, VARIABLE_NAME + "_1");
+  }
+
+  @Test
+  public void shouldUpdateNamesByValueWhenVariableValueChanges() {
+    vars.put(VARIABLE_NAME, VALUE);
+    vars.putAll(Collections.singletonMap(VARIABLE_NAME, "other"));
+    assertThat(vars.getNamesByValue(VALUE)).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepLastGenerationsWhenMaxGenerationsExceeded() {
+    vars = new CorrelationVariables(2);
+    vars.put(VARIABLE_NAME + "#1", "first");
+    vars.put(VARIABLE_NAME + "#2_matchNr", "1");
+    vars.put(VARIABLE_NAME + "#2_1", "second");
+    vars.put(VARIABLE_NAME + "#3", "third");
+    vars.put(VARIABLE_NAME + "#3", "other");
+    assertThat(Arrays.asList(vars.get(VARIABLE_NAME + "#1"), vars.get(VARIABLE_NAME + "#2_1"),
+        vars.get(VARIABLE_NAME + "#3"), vars.getEvictedCount()))
+        .isEqualTo(Arrays.asList(null, "second", "other", 1L));
+  }
+
+  @Test
+  public void shouldRemoveEvictedValuesFromIndexWhenMaxGenerationsExceeded() {
+    vars = new CorrelationVariables(1);
+    vars.put(VARIABLE_NAME + "#1", VALUE);
+    vars.put(VARIABLE_NAME + "#2", "second");
+    assertThat(vars.containsAnyValue(INPUT_WITH_VALUE)).isFalse();
+  }
+
+  @Test
+  public void shouldKeepAllGenerationsWhenNoMaxGenerations() {
+    int initialCount = vars.getVariablesCount();
+    for (int i = 1; i <= 10; i++) {
+      vars.put(VARIABLE_NAME + "#" + i, String.valueOf(i));
+    }
+    assertThat(Arrays.asList(vars.getVariablesCount() - initialCount, vars.getIndexedValuesCount(),
+        vars.getEvictedCount())).isEqualTo(Arrays.asList(10, 10, 0L));
+  }
+
+  @Test
+  public void shouldGetOnlyMatchVariablesOfReferenceWhenGetMatchVariableNames() {
+    vars.put(VARIABLE_NAME + "_matchNr", "12");
+    vars.put(VARIABLE_NAME + "_12", VALUE);
+    vars.put(VARIABLE_NAME + "_g1", VALUE);
+    vars.put(VARIABLE_NAME + "2_1", VALUE);
+    assertThat(new TreeSet<>(vars.getMatchVariableNames(VARIABLE_NAME)))
+        .isEqualTo(new TreeSet<>(Arrays.asList(VARIABLE_NAME + "_12", VARIABLE_NAME + "_matchNr")));
+  }
+
+  @Test
+  public void shouldKeepOtherVariablesWhenRemoveMatchVariables() {
+    vars.put(VARIABLE_NAME, VALUE);
+    vars.put(VARIABLE_NAME + "_matchNr", "1");
+    vars.put(VARIABLE_NAME + "_1", VALUE);
+    vars.put(VARIABLE_NAME + "2_1", VALUE);
+    vars.removeMatchVariables(VARIABLE_NAME);
+    assertThat(Arrays.asList(vars.get(VARIABLE_NAME), vars.get(VARIABLE_NAME + "_matchNr"),
+        vars.get(VARIABLE_NAME + "_1"), vars.get(VARIABLE_NAME + "2_1")))
+        .isEqualTo(Arrays.asList(VALUE, null, null, VALUE));
+  }
+
+}
@@ -0,0 +1,33 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class MultiLiteralMatcherTest {
+
+  @Test
+  public void shouldFindContainedLiteralsWhenOverlappingInInput() {
+    MultiLiteralMatcher matcher = new MultiLiteralMatcher(
+        Arrays.asList("token=", "ken", "other", "en="));
+    assertThat(toList(matcher.findContained("a token=1")))
+        .isEqualTo(Arrays.asList(true, true, false, true));
+  }
+
+  private static List<Boolean> toList(boolean[] values) {
+    Boolean[] ret = new Boolean[values.length];
+    for (int i = 0; i < values.length; i++) {
+      ret[i] = values[i];
+    }
+    return Arrays.asList(ret);
+  }
+
+  @Test
+  public void shouldFindEmptyLiteralContainedWhenInputIsEmpty() {
+    assertThat(toList(new MultiLiteralMatcher(Arrays.asList("", "token")).findContained("")))
+        .isEqualTo(Arrays.asList(true, false));
+  }
+
+}
@@ -0,0 +1,66 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class RegexPrefilterTest {
+
+  private static final String VIEW_STATE_REGEX = "name=\"__VIEWSTATE\" value=\"(.+?)\"";
+  private static final String VIEW_STATE_INPUT = "<input name=\"__VIEWSTATE\" value=\"123\"/>";
+
+  @Test
+  public void shouldReturnNoMatchWhenInputDoesNotContainRequiredLiteral() {
+    assertThat(RegexPrefilter.compile(VIEW_STATE_REGEX).findMatchStart("<input name=\"other\"/>"))
+        .isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldReturnNoMatchWhenRequiredLiteralsAreNotInOrder() {
+    assertThat(RegexPrefilter.compile("token=(\\d+)&end").findMatchStart("end&token=1"))
+        .isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldReturnFirstLiteralPositionWhenInputContainsRequiredLiterals() {
+    assertThat(RegexPrefilter.compile(VIEW_STATE_REGEX).findMatchStart(VIEW_STATE_INPUT))
+        .isEqualTo(VIEW_STATE_INPUT.indexOf("name="));
+  }
+
+  @Test
+  public void shouldReturnFirstLiteralPositionWhenInputIsNotString() {
+    assertThat(RegexPrefilter.compile(VIEW_STATE_REGEX)
+        .findMatchStart(new StringBuilder(VIEW_STATE_INPUT)))
+        .isEqualTo(VIEW_STATE_INPUT.indexOf("name="));
+  }
+
+  @Test
+  public void shouldConsiderFixedWidthPrefixWhenLiteralIsPrecededByIt() {
+    assertThat(RegexPrefilter.compile("\\d\\d-id=(\\d+)").findMatchStart("abc 12-id=3"))
+        .isEqualTo(4);
+  }
+
+  @Test
+  public void shouldReturnInputStartWhenLiteralIsPrecededByVariableWidthPrefix() {
+    assertThat(RegexPrefilter.compile("\\d+-id=(\\d+)").findMatchStart("abc 12-id=3"))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotRequireOptionalLiterals() {
+    assertThat(RegexPrefilter.compile("ab?c=(\\d)").findMatchStart("ac=1")).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotRequireLiteralsWhenRegexHasTopLevelAlternation() {
+    assertThat(RegexPrefilter.compile("id=(\\d)|token=(\\d)").findMatchStart("token=1"))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void shouldNotRequireLiteralsWhenRegexIsCaseInsensitive() {
+    assertThat(RegexPrefilter.compile("(?i)token=(\\d)").findMatchStart("TOKEN=1"))
+        .isEqualTo(0);
+  }
+
+}
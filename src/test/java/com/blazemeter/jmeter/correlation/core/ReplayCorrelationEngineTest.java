@@ -0,0 +1,80 @@
+package com.blazemeter.jmeter.correlation.core;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.blazemeter.jmeter.correlation.core.extractors.RegexCorrelationExtractor;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
+import com.blazemeter.jmeter.correlation.core.replacements.RegexCorrelationReplacement;
+import com.blazemeter.jmeter.correlation.gui.CorrelationComponentsRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampler;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReplayCorrelationEngineTest {
+
+  private static final String REGEX = "Test_SWEACn=(.*?)&";
+
+  @Mock
+  private CorrelationComponentsRegistry registry;
+  private JMeterVariables vars;
+  private HTTPSampler sampler;
+
+  @Before
+  public void setup() {
+    when(registry.getContext(BaseCorrelationContext.class))
+        .thenReturn(new BaseCorrelationContext());
+    vars = new JMeterVariables();
+    sampler = new HTTPSampler();
+    sampler.setPath("Test_SWEACn=${variable}&Test_Path=1");
+  }
+
+  @Test
+  public void shouldStoreExtractedValueInVariablesWhenProcess() {
+    ReplayCorrelationEngine engine = buildEngine(false);
+    engine.process(sampler, buildSampleResult("Test_SWEACn=456&"), vars);
+    assertThat(Arrays.asList(vars.get("variable"), sampler.getPath()))
+        .isEqualTo(Arrays.asList("456", "Test_SWEACn=${variable}&Test_Path=1"));
+  }
+
+  private ReplayCorrelationEngine buildEngine(boolean multiValued) {
+    CorrelationRule rule = new CorrelationRule("variable",
+        new RegexCorrelationExtractor<>(REGEX, "1", "1", ResultField.BODY.name(),
+            String.valueOf(multiValued)),
+        new RegexCorrelationReplacement<>(REGEX));
+    List<RulesGroup> groups = Collections.singletonList(new RulesGroup.Builder()
+        .withRules(Collections.singletonList(rule))
+        .isEnabled(true)
+        .build());
+    return new ReplayCorrelationEngine(groups, "", registry);
+  }
+
+  private static SampleResult buildSampleResult(String responseBody) {
+    SampleResult result = new SampleResult();
+    result.setResponseCode("200");
+    result.setResponseData(responseBody, SampleResult.DEFAULT_HTTP_ENCODING);
+    result.setContentType("text/html");
+    return result;
+  }
+
+  @Test
+  public void shouldNumberMultivaluedVariablesFromStartWhenReset() {
+    ReplayCorrelationEngine engine = buildEngine(true);
+    engine.process(sampler, buildSampleResult("Test_SWEACn=1&"), vars);
+    engine.process(sampler, buildSampleResult("Test_SWEACn=2&"), vars);
+    engine.reset();
+    engine.process(sampler, buildSampleResult("Test_SWEACn=3&"), vars);
+    assertThat(Arrays.asList(vars.get("variable#1"), vars.get("variable#2")))
+        .isEqualTo(Arrays.asList("3", "2"));
+  }
+
+}
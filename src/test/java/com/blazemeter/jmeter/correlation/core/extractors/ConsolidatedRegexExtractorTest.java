@@ -0,0 +1,136 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testbeans.TestBeanHelper;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConsolidatedRegexExtractorTest {
+
+  private static final String RESPONSE_BODY = "<input name=\"token\" value=\"abc123\">"
+      + "path=first&path=second&user=john";
+
+  private JMeterVariables vars;
+
+  @Before
+  public void setup() {
+    SampleResult result = new SampleResult();
+    result.setResponseCode("200");
+    result.setResponseHeaders("HTTP/1.1 200 OK\nSet-Cookie: session=xyz\n");
+    result.setResponseData(RESPONSE_BODY, SampleResult.DEFAULT_HTTP_ENCODING);
+    JMeterContextService.getContext().setPreviousResult(result);
+    resetVariables();
+  }
+
+  private void resetVariables() {
+    vars = new JMeterVariables();
+    vars.put("Path_matchNr", "5");
+    vars.put("Path_5", "old");
+    vars.put("Missing_g", "1");
+    vars.put("Missing_g1", "old");
+    JMeterContextService.getContext().setVariables(vars);
+  }
+
+  @Test
+  public void shouldSetSameVariablesAsRegexExtractorsWhenProcess() {
+    assertSameVariablesAsRegexExtractors(buildExtractors());
+  }
+
+  private void assertSameVariablesAsRegexExtractors(List<RegexExtractor> extractors) {
+    for (RegexExtractor extractor : extractors) {
+      extractor.process();
+    }
+    Map<String, Object> expectedVars = new HashMap<>();
+    vars.entrySet().forEach(e -> expectedVars.put(e.getKey(), e.getValue()));
+    resetVariables();
+    List<TestElement> children = new ArrayList<>();
+    for (RegexExtractor extractor : extractors) {
+      children.add((TestElement) extractor.clone());
+    }
+    ConsolidatedRegexExtractor.consolidate(children, 0);
+    ConsolidatedRegexExtractor consolidated = (ConsolidatedRegexExtractor) children.get(0);
+    TestBeanHelper.prepare(consolidated);
+    consolidated.process();
+    Map<String, Object> actualVars = new HashMap<>();
+    vars.entrySet().forEach(e -> actualVars.put(e.getKey(), e.getValue()));
+    assertThat(actualVars).isEqualTo(expectedVars);
+  }
+
+  @Test
+  public void shouldSetSameVariablesAsRegexExtractorsWhenProcessRegexesOnlySupportedByOro() {
+    SampleResult result = new SampleResult();
+    result.setResponseData("{\"token\":{\"id\":\"abc123\"},\"chars\":\"[x]\"}",
+        SampleResult.DEFAULT_HTTP_ENCODING);
+    JMeterContextService.getContext().setPreviousResult(result);
+    assertSameVariablesAsRegexExtractors(Arrays.asList(
+        buildExtractor("Token", "\"token\":{\"id\":\"(.+?)\"", "$1$", 1,
+            RegexExtractor.USE_BODY),
+        buildExtractor("Chars", "\"([[]\\w+])\"", "$1$", 1, RegexExtractor.USE_BODY)));
+    assertThat(Arrays.asList(vars.get("Token"), vars.get("Chars")))
+        .isEqualTo(Arrays.asList("abc123", "[x]"));
+  }
+
+  private static List<RegexExtractor> buildExtractors() {
+    return Arrays.asList(
+        buildExtractor("Token", "name=\"token\" value=\"(\\w+)\"", "$1$", 1,
+            RegexExtractor.USE_BODY),
+        buildExtractor("Path", "path=(\\w+)", "$1$", -1, RegexExtractor.USE_BODY),
+        buildExtractor("Missing", "missing=(\\w+)", "$1$", 1, RegexExtractor.USE_BODY),
+        buildExtractor("Pair", "(\\w+)=(\\w+)", "$2$", 2, RegexExtractor.USE_BODY),
+        buildExtractor("Session", "Set-Cookie: session=(\\w+)", "$1$", 1,
+            RegexExtractor.USE_HDRS),
+        buildExtractor("Code", "(\\d+)", "$1$", 1, RegexExtractor.USE_CODE));
+  }
+
+  private static RegexExtractor buildExtractor(String refName, String regex, String template,
+      int matchNumber, String field) {
+    RegexExtractor ret = new RegexExtractor();
+    ret.setRefName(refName);
+    ret.setRegex(regex);
+    ret.setTemplate(template);
+    ret.setMatchNumber(matchNumber);
+    ret.setDefaultValue(refName + "_NOT_FOUND");
+    ret.setUseField(field);
+    return ret;
+  }
+
+  @Test
+  public void shouldReplaceExtractorsInPlaceOfFirstOneWhenConsolidate() {
+    List<TestElement> children = new ArrayList<>(Arrays.asList(new ConfigTestElement(),
+        buildExtractor("Token", "token=(\\w+)", "$1$", 1, RegexExtractor.USE_BODY),
+        new ConfigTestElement(),
+        buildExtractor("Path", "path=(\\w+)", "$1$", 1, RegexExtractor.USE_BODY)));
+    ConsolidatedRegexExtractor.consolidate(children, 1);
+    assertThat(getClasses(children)).isEqualTo(Arrays.asList(ConfigTestElement.class,
+        ConsolidatedRegexExtractor.class, ConfigTestElement.class));
+  }
+
+  private static List<Class<?>> getClasses(List<TestElement> elements) {
+    List<Class<?>> ret = new ArrayList<>();
+    elements.forEach(e -> ret.add(e.getClass()));
+    return ret;
+  }
+
+  @Test
+  public void shouldNotConsolidateWhenExtractorWithCustomTemplate() {
+    List<TestElement> children = new ArrayList<>(Arrays.asList(
+        buildExtractor("Token", "token=(\\w+)", "$1$", 1, RegexExtractor.USE_BODY),
+        buildExtractor("Pair", "(\\w+)=(\\w+)", "$1$-$2$", 1, RegexExtractor.USE_BODY)));
+    ConsolidatedRegexExtractor.consolidate(children, 0);
+    assertThat(getClasses(children))
+        .isEqualTo(Arrays.asList(RegexExtractor.class, RegexExtractor.class));
+  }
+
+}
@@ -0,0 +1,187 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.blazemeter.jmeter.correlation.TestUtils;
+import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.samplers.SampleResult;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jmeter.testelement.property.CollectionProperty;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Test;
+
+public class ExtractionStageTest {
+
+  private static final String RESPONSE_BODY = "Test_SWEACn=123&Test_Path=1&Test_Path=2&";
+  private static final String SWEACN_REGEX = "Test_SWEACn=(.*?)&";
+
+  @Test
+  public void shouldExtractSameValuesAsProcessingEachExtractorWhenSharingField()
+      throws MalformedURLException {
+    assertSameValuesAsProcessingEachExtractor(ExtractionStage.compile(buildExtractors()));
+  }
+
+  @Test
+  public void shouldExtractSameValuesAsProcessingEachExtractorWhenMatchingInParallel()
+      throws MalformedURLException {
+    assertSameValuesAsProcessingEachExtractor(ExtractionStage.compile(buildExtractors(), 4, 0));
+  }
+
+  private void assertSameValuesAsProcessingEachExtractor(ExtractionStage stage)
+      throws MalformedURLException {
+    JMeterVariables stageVars = new JMeterVariables();
+    List<TestElement> stageChildren = new ArrayList<>();
+    stage.process(null, stageChildren, stageVars, new ResultFieldCache(buildSampleResult()));
+
+    JMeterVariables expectedVars = new JMeterVariables();
+    List<TestElement> expectedChildren = new ArrayList<>();
+    for (CorrelationExtractor<?> extractor : buildExtractors()) {
+      extractor.process(null, expectedChildren, buildSampleResult(), expectedVars);
+    }
+
+    assertThat(stageVars.entrySet()).isEqualTo(expectedVars.entrySet());
+    assertThat(TestUtils.comparableFrom(stageChildren))
+        .isEqualTo(TestUtils.comparableFrom(expectedChildren));
+  }
+
+  private CorrelationExtractor<?>[] buildExtractors() {
+    return new CorrelationExtractor<?>[]{
+        buildExtractor("SWEACn", SWEACN_REGEX, 1, ResultField.BODY),
+        buildExtractor("Path", "Test_Path=(.*?)&", -1, ResultField.BODY),
+        buildExtractor("Code", "(\\d+)", 1, ResultField.RESPONSE_CODE)};
+  }
+
+  private RegexCorrelationExtractor<?> buildExtractor(String variableName, String regex,
+      int matchNr, ResultField field) {
+    RegexCorrelationExtractor<?> extractor = new RegexCorrelationExtractor<>(regex, 1, matchNr,
+        field);
+    extractor.setVariableName(variableName);
+    return extractor;
+  }
+
+  private SampleResult buildSampleResult() throws MalformedURLException {
+    return RegexCorrelationExtractorTest.createSampleResultWithResponseBody(RESPONSE_BODY);
+  }
+
+  @Test
+  public void shouldMatchInProcessingThreadWhenSharedFieldIsShorterThanParallelMinLength()
+      throws MalformedURLException {
+    List<Thread> matchingThreads = Collections.synchronizedList(new ArrayList<>());
+    CorrelationExtractor<?>[] extractors = IntStream.range(0, 10)
+        .mapToObj(i -> new ThreadTrackingExtractor(SWEACN_REGEX, matchingThreads))
+        .toArray(CorrelationExtractor<?>[]::new);
+    ExtractionStage.compile(extractors, 4, RESPONSE_BODY.length() + 1)
+        .process(null, new ArrayList<>(), new JMeterVariables(),
+            new ResultFieldCache(buildSampleResult()));
+    assertThat(new HashSet<>(matchingThreads))
+        .isEqualTo(Collections.singleton(Thread.currentThread()));
+  }
+
+  @Test
+  public void shouldOnlyEvaluateRegexesWhoseLiteralsAreInFieldWhenSharingField()
+      throws MalformedURLException {
+    List<Thread> matchingThreads = new ArrayList<>();
+    ExtractionStage.compile(new CorrelationExtractor<?>[]{
+        new ThreadTrackingExtractor(SWEACN_REGEX, matchingThreads),
+        new ThreadTrackingExtractor("Test_Missing=(.*?)&", matchingThreads),
+        new ThreadTrackingExtractor("Test_Missing=(.*?)&Test_SWEACn", matchingThreads)}, 1, 0)
+        .process(null, new ArrayList<>(), new JMeterVariables(),
+            new ResultFieldCache(buildSampleResult()));
+    assertThat(matchingThreads.size()).isEqualTo(1);
+  }
+
+  private static class ThreadTrackingExtractor extends
+      RegexCorrelationExtractor<BaseCorrelationContext> {
+
+    private final List<Thread> matchingThreads;
+
+    private ThreadTrackingExtractor(String regex, List<Thread> matchingThreads) {
+      super(regex);
+      setVariableName("SWEACn");
+      this.matchingThreads = matchingThreads;
+    }
+
+    @Override
+    List<String> findMatches(CharSequence input) {
+      matchingThreads.add(Thread.currentThread());
+      return super.findMatches(input);
+    }
+
+  }
+
+  @Test
+  public void shouldStoreSameValuesWithoutCreatingExtractorsWhenProcessingVariables()
+      throws MalformedURLException {
+    List<String> createdExtractors = new ArrayList<>();
+    CorrelationExtractor<?>[] extractors = buildExtractors();
+    extractors[0] = new CreationTrackingExtractor(SWEACN_REGEX, createdExtractors);
+    JMeterVariables vars = new JMeterVariables();
+    ExtractionStage.compile(extractors, 1, 0)
+        .processVariables(null, vars, new ResultFieldCache(buildSampleResult()));
+
+    JMeterVariables expectedVars = new JMeterVariables();
+    ExtractionStage.compile(buildExtractors(), 1, 0)
+        .process(null, new ArrayList<>(), expectedVars,
+            new ResultFieldCache(buildSampleResult()));
+    assertThat(Arrays.asList(vars.entrySet(), createdExtractors))
+        .isEqualTo(Arrays.asList(expectedVars.entrySet(), Collections.emptyList()));
+  }
+
+  private static class CreationTrackingExtractor extends
+      RegexCorrelationExtractor<BaseCorrelationContext> {
+
+    private final List<String> createdExtractors;
+
+    private CreationTrackingExtractor(String regex, List<String> createdExtractors) {
+      super(regex);
+      setVariableName("SWEACn");
+      this.createdExtractors = createdExtractors;
+    }
+
+    @Override
+    protected RegexExtractor createPostProcessor(String varName, int matchNr) {
+      createdExtractors.add(varName);
+      return super.createPostProcessor(varName, matchNr);
+    }
+
+  }
+
+  @Test
+  public void shouldAddConsolidatedExtractorWhenConsolidatingExtractors()
+      throws MalformedURLException {
+    List<TestElement> children = new ArrayList<>();
+    ExtractionStage.compile(buildExtractors(), 1, 0, true)
+        .process(null, children, new JMeterVariables(),
+            new ResultFieldCache(buildSampleResult()));
+    assertThat(Arrays.asList(children.size(), children.get(0).getClass(),
+        ((CollectionProperty) children.get(0)
+            .getProperty(ConsolidatedRegexExtractor.EXTRACTIONS_PROPERTY)).size()))
+        .isEqualTo(Arrays.asList(1, ConsolidatedRegexExtractor.class, 3));
+  }
+
+  @Test
+  public void shouldProcessCustomExtractorWhenProcessingStage() throws MalformedURLException {
+    CorrelationExtractor<?> customExtractor = mock(CorrelationExtractor.class);
+    JMeterVariables vars = new JMeterVariables();
+    List<TestElement> children = new ArrayList<>();
+    SampleResult result = buildSampleResult();
+    ResultFieldCache fields = new ResultFieldCache(result);
+    ExtractionStage.compile(new CorrelationExtractor<?>[]{customExtractor})
+        .process(null, children, vars, fields);
+    verify(customExtractor)
+        .process(any(), same(children), same(result), same(vars), same(fields));
+  }
+
+}
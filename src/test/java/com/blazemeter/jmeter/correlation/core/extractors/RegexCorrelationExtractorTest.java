@@ -6,6 +6,7 @@ import static org.mockito.Mockito.when;
 
 import com.blazemeter.jmeter.correlation.TestUtils;
 import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
+import com.blazemeter.jmeter.correlation.core.CorrelationVariables;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -15,6 +16,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import org.apache.commons.httpclient.HttpStatus;
@@ -399,6 +401,25 @@ public class RegexCorrelationExtractorTest {
     assertThat(vars).isEqualTo(buildExpectedVariable());
   }
 
+  @Test
+  public void shouldRemoveLeftOverVariablesWhenMultipleMatchesWithCorrelationVariables()
+      throws Exception {
+    CorrelationVariables vars = new CorrelationVariables();
+    for (int i = 1; i <= 12; i++) {
+      vars.put(REFERENCE_NAME + "_" + i, "value" + i);
+    }
+    vars.put(REFERENCE_NAME + "_matchNr", "12");
+    RegexCorrelationExtractor<BaseCorrelationContext> regexExtractor =
+        new RegexCorrelationExtractor<>(RESPONSE_BODY_REGEX, "-1", "1", ResultField.BODY.name(),
+            "false");
+    regexExtractor.setContext(baseCorrelationContext);
+    regexExtractor.setVariableName(REFERENCE_NAME);
+    regexExtractor.process(null, new ArrayList<>(), createMultipleMatchSampleResult(), vars);
+    assertThat(new TreeSet<>(vars.getMatchVariableNames(REFERENCE_NAME))).isEqualTo(
+        new TreeSet<>(Arrays.asList(REFERENCE_NAME + "_1", REFERENCE_NAME + "_2",
+            REFERENCE_NAME + "_matchNr")));
+  }
+
   private JMeterVariables buildExpectedVariable() {
     ComparableJMeterVariables vars = new ComparableJMeterVariables();
     vars.put(REFERENCE_NAME + "_1", "123");
@@ -0,0 +1,51 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+public class ResponseBodyCharSequenceTest {
+
+  private static final String ASCII_BODY = "{\"token\":\"123\"}";
+  private static final String NON_ASCII_BODY = "{\"name\":\"Jos\u00e9\",\"price\":\"\u20ac 5\"}";
+
+  @Test
+  public void shouldGetSameCharsAsDecodedStringWhenAsciiBody() {
+    assertThat(buildSequence(ASCII_BODY, "UTF-8").toString()).isEqualTo(ASCII_BODY);
+  }
+
+  @Test
+  public void shouldGetSameCharsAsDecodedStringWhenNonAsciiBody() {
+    assertThat(buildSequence(NON_ASCII_BODY, "UTF-8").toString()).isEqualTo(NON_ASCII_BODY);
+  }
+
+  @Test
+  public void shouldGetSameCharsAsDecodedStringWhenNonAsciiCompatibleEncoding() {
+    assertThat(buildSequence(NON_ASCII_BODY, "UTF-16").toString()).isEqualTo(NON_ASCII_BODY);
+  }
+
+  @Test
+  public void shouldGetSameLengthAsDecodedStringWhenNonAsciiBody() {
+    assertThat(buildSequence(NON_ASCII_BODY, "UTF-8").length())
+        .isEqualTo(NON_ASCII_BODY.length());
+  }
+
+  @Test
+  public void shouldGetFirstCharsWhenHeadShorterThanBody() {
+    assertThat(buildSequence(NON_ASCII_BODY, "UTF-8").head(12).toString())
+        .isEqualTo(NON_ASCII_BODY.substring(0, 12));
+  }
+
+  @Test
+  public void shouldGetWholeBodyWhenHeadLongerThanBody() {
+    assertThat(buildSequence(NON_ASCII_BODY, "UTF-8").head(1000).toString())
+        .isEqualTo(NON_ASCII_BODY);
+  }
+
+  private ResponseBodyCharSequence buildSequence(String body, String encoding) {
+    return new ResponseBodyCharSequence(body.getBytes(Charset.forName(encoding)),
+        encoding);
+  }
+
+}
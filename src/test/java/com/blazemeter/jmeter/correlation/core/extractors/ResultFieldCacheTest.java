@@ -0,0 +1,37 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ResultFieldCacheTest {
+
+  private static final String RESPONSE_BODY = "Test Body";
+
+  @Mock
+  private SampleResult result;
+
+  @Test
+  public void shouldGetFieldFromResultOnlyOnceWhenGettingItSeveralTimes() {
+    when(result.getResponseDataAsString()).thenReturn(RESPONSE_BODY);
+    ResultFieldCache fields = new ResultFieldCache(result);
+    fields.get(ResultField.BODY);
+    fields.get(ResultField.BODY);
+    verify(result, times(1)).getResponseDataAsString();
+  }
+
+  @Test
+  public void shouldGetFieldValueWhenGettingField() {
+    when(result.getResponseDataAsString()).thenReturn(RESPONSE_BODY);
+    assertThat(new ResultFieldCache(result).get(ResultField.BODY)).isEqualTo(RESPONSE_BODY);
+  }
+
+}
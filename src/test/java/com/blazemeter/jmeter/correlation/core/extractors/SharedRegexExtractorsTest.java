@@ -0,0 +1,71 @@
+package com.blazemeter.jmeter.correlation.core.extractors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.config.ConfigTestElement;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.testelement.TestElement;
+import org.junit.Test;
+
+public class SharedRegexExtractorsTest {
+
+  private final SharedRegexExtractors sharedExtractors = new SharedRegexExtractors();
+
+  @Test
+  public void shouldKeepExtractorWhenAddedOnlyOnce() {
+    List<TestElement> children = share(buildExtractor("Token", 1));
+    assertThat(Arrays.asList(children.size(), sharedExtractors.pollNewSharedExtractors().size()))
+        .isEqualTo(Arrays.asList(1, 0));
+  }
+
+  private List<TestElement> share(TestElement... elements) {
+    List<TestElement> children = new ArrayList<>(Arrays.asList(elements));
+    sharedExtractors.share(children, 0);
+    return children;
+  }
+
+  private static RegexExtractor buildExtractor(String refName, int matchNumber) {
+    RegexExtractor ret = new RegexExtractor();
+    ret.setName("RegExp - " + refName);
+    ret.setRefName(refName);
+    ret.setRegex("token=(\\w+)");
+    ret.setTemplate("$1$");
+    ret.setMatchNumber(matchNumber);
+    ret.setDefaultValue(refName + "_NOT_FOUND");
+    ret.setUseField(RegexExtractor.USE_BODY);
+    return ret;
+  }
+
+  @Test
+  public void shouldShareExtractorWithoutDefaultValueWhenAddedAgain() {
+    share(buildExtractor("Token", 1));
+    List<TestElement> children = share(new ConfigTestElement(), buildExtractor("Token", 1));
+    List<RegexExtractor> shared = sharedExtractors.pollNewSharedExtractors();
+    assertThat(Arrays.asList(children.size(), shared.size(), shared.get(0).getRefName(),
+        shared.get(0).getDefaultValue()))
+        .isEqualTo(Arrays.asList(1, 1, "Token", ""));
+  }
+
+  @Test
+  public void shouldNotShareExtractorAgainWhenAlreadyShared() {
+    share(buildExtractor("Token", 1));
+    share(buildExtractor("Token", 1));
+    sharedExtractors.pollNewSharedExtractors();
+    List<TestElement> children = share(buildExtractor("Token", 1));
+    assertThat(Arrays.asList(children.size(), sharedExtractors.pollNewSharedExtractors()))
+        .isEqualTo(Arrays.asList(0, Collections.emptyList()));
+  }
+
+  @Test
+  public void shouldKeepExtractorsWhenExtractingAllMatches() {
+    share(buildExtractor("Token", -1));
+    List<TestElement> children = share(buildExtractor("Token", -1));
+    assertThat(Arrays.asList(children.size(), sharedExtractors.pollNewSharedExtractors().size()))
+        .isEqualTo(Arrays.asList(1, 0));
+  }
+
+}
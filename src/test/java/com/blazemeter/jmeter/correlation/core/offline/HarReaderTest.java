@@ -0,0 +1,87 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.junit.Test;
+
+public class HarReaderTest {
+
+  private static final String URL = "http://test.com/home?id=1";
+
+  @Test
+  public void shouldReadRequestWhenEntryWithPostData() throws IOException {
+    HTTPSampleResult result = readSingleEntry(buildEntry(
+        "\"method\": \"POST\", \"url\": \"" + URL + "\", "
+            + "\"headers\": [{\"name\": \":authority\", \"value\": \"test.com\"}, "
+            + "{\"name\": \"Accept\", \"value\": \"*/*\"}], "
+            + "\"cookies\": [{\"name\": \"a\", \"value\": \"1\"}, {\"name\": \"b\", "
+            + "\"value\": \"2\", \"httpOnly\": true}], "
+            + "\"postData\": {\"mimeType\": \"text/plain\", \"text\": \"body\"}",
+        "\"status\": 200, \"statusText\": \"OK\", \"httpVersion\": \"HTTP/1.1\""));
+    assertThat(Arrays.asList(result.getHTTPMethod(), result.getUrlAsString(),
+        result.getSampleLabel(), result.getRequestHeaders(), result.getCookies(),
+        result.getQueryString()))
+        .isEqualTo(Arrays.asList("POST", URL, "/home", "Accept: */*\n", "a=1; b=2", "body"));
+  }
+
+  private static String buildEntry(String request, String response) {
+    return "{\"startedDateTime\": \"2020-01-01T00:00:00.000Z\", \"time\": 10, "
+        + "\"request\": {" + request + "}, \"response\": {" + response + "}}";
+  }
+
+  private static HTTPSampleResult readSingleEntry(String entry) throws IOException {
+    List<HTTPSampleResult> results = readEntries(entry);
+    assertThat(results.size()).isEqualTo(1);
+    return results.get(0);
+  }
+
+  private static List<HTTPSampleResult> readEntries(String... entries) throws IOException {
+    String har = "{\"log\": {\"version\": \"1.2\", \"pages\": [{\"id\": \"page_1\"}], "
+        + "\"entries\": [" + String.join(", ", entries) + "]}}";
+    List<HTTPSampleResult> ret = new ArrayList<>();
+    new HarReader().read(new ByteArrayInputStream(har.getBytes(StandardCharsets.UTF_8)),
+        ret::add);
+    return ret;
+  }
+
+  @Test
+  public void shouldReadResponseWhenRedirectEntry() throws IOException {
+    HTTPSampleResult result = readSingleEntry(buildEntry(
+        "\"method\": \"GET\", \"url\": \"" + URL + "\"",
+        "\"status\": 302, \"statusText\": \"Found\", \"httpVersion\": \"HTTP/1.1\", "
+            + "\"headers\": [{\"name\": \"Location\", \"value\": \"/login\"}], "
+            + "\"content\": {\"mimeType\": \"text/html; charset=UTF-8\", \"text\": \"moved\"}, "
+            + "\"redirectURL\": \"http://test.com/login\""));
+    assertThat(Arrays.asList(result.getResponseCode(), result.getResponseHeaders(),
+        result.getResponseDataAsString(), result.getRedirectLocation(), result.isRedirect(),
+        result.getTimeStamp(), result.getTime()))
+        .isEqualTo(Arrays.asList("302", "HTTP/1.1 302 Found\nLocation: /login\n", "moved",
+            "http://test.com/login", true, 1577836800000L, 10L));
+  }
+
+  @Test
+  public void shouldDecodeContentWhenBase64Encoded() throws IOException {
+    HTTPSampleResult result = readSingleEntry(buildEntry(
+        "\"method\": \"GET\", \"url\": \"" + URL + "\"",
+        "\"status\": 200, \"content\": {\"mimeType\": \"application/octet-stream\", "
+            + "\"text\": \"AQID\", \"encoding\": \"base64\"}"));
+    assertThat(Arrays.asList(result.getResponseData()[0], result.getResponseData()[2]))
+        .isEqualTo(Arrays.asList((byte) 1, (byte) 3));
+  }
+
+  @Test
+  public void shouldIgnoreEntriesWhenNotHttpUrl() throws IOException {
+    assertThat(readEntries(buildEntry("\"method\": \"GET\", \"url\": \"data:text/plain,a\"",
+        "\"status\": 200"), buildEntry("\"method\": \"GET\", \"url\": \"wss://test.com\"",
+        "\"status\": 101"))).isEqualTo(Collections.emptyList());
+  }
+
+}
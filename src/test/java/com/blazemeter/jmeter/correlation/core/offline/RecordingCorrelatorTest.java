@@ -0,0 +1,133 @@
+package com.blazemeter.jmeter.correlation.core.offline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.blazemeter.jmeter.correlation.JMeterTestUtils;
+import com.blazemeter.jmeter.correlation.core.CorrelationRule;
+import com.blazemeter.jmeter.correlation.core.RulesGroup;
+import com.blazemeter.jmeter.correlation.core.extractors.RegexCorrelationExtractor;
+import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
+import com.blazemeter.jmeter.correlation.core.proxy.SetCookiePreProcessor;
+import com.blazemeter.jmeter.correlation.core.replacements.RegexCorrelationReplacement;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.extractor.RegexExtractor;
+import org.apache.jmeter.protocol.http.sampler.HTTPSamplerBase;
+import org.apache.jmeter.save.SaveService;
+import org.apache.jmeter.testelement.TestElement;
+import org.apache.jorphan.collections.HashTree;
+import org.apache.jorphan.collections.SearchByClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingCorrelatorTest {
+
+  private static final String REFERENCE_NAME = "token";
+  private static final String EXTRACTOR_REGEX = "name=\"token\" value=\"(\\d+)\"";
+  private static final String REPLACEMENT_REGEX = "token=(\\d+)";
+  private static final String JTL_RECORDING = "/recording.jtl";
+  private static final String HAR_RECORDING = "/recording.har";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setupClass() {
+    JMeterTestUtils.setupJmeterEnv();
+  }
+
+  @Test
+  public void shouldAddExtractorAndReplaceValueWhenCorrelatingJtl() throws IOException {
+    HashTree testPlan = correlateRecording(JTL_RECORDING, buildTokenRules());
+    List<HTTPSamplerBase> samplers = findSamplers(testPlan);
+    assertThat(Arrays.asList(findChildren(testPlan, samplers.get(0), RegexExtractor.class).size(),
+        samplers.get(1).getArguments().getArgument(0).getValue()))
+        .isEqualTo(Arrays.asList(1, "${" + REFERENCE_NAME + "}"));
+  }
+
+  private static List<CorrelationRule> buildTokenRules() {
+    return Collections.singletonList(new CorrelationRule(REFERENCE_NAME,
+        new RegexCorrelationExtractor<>(EXTRACTOR_REGEX, "1", "1", ResultField.BODY.name(),
+            "false"),
+        new RegexCorrelationReplacement<>(REPLACEMENT_REGEX)));
+  }
+
+  private HashTree correlateRecording(String recordingResource, List<CorrelationRule> rules)
+      throws IOException {
+    RecordingCorrelator correlator = new RecordingCorrelator(Collections.singletonList(
+        new RulesGroup.Builder().withRules(rules).isEnabled(true).build()), "");
+    File testPlanFile = tempFolder.newFile("correlated.jmx");
+    try (InputStream recording = getClass().getResourceAsStream(recordingResource);
+        OutputStream testPlan = new FileOutputStream(testPlanFile)) {
+      if (HAR_RECORDING.equals(recordingResource)) {
+        correlator.correlateHar(recording, testPlan);
+      } else {
+        correlator.correlateJtl(recording, testPlan);
+      }
+    }
+    return SaveService.loadTree(testPlanFile);
+  }
+
+  private static List<HTTPSamplerBase> findSamplers(HashTree testPlan) {
+    SearchByClass<HTTPSamplerBase> search = new SearchByClass<>(HTTPSamplerBase.class);
+    testPlan.traverse(search);
+    return new ArrayList<>(search.getSearchResults());
+  }
+
+  private static <T extends TestElement> List<T> findChildren(HashTree testPlan,
+      HTTPSamplerBase sampler, Class<T> childClass) {
+    SearchByClass<HTTPSamplerBase> search = new SearchByClass<>(HTTPSamplerBase.class);
+    testPlan.traverse(search);
+    List<T> ret = new ArrayList<>();
+    for (Object child : search.getSubTree(sampler).getTree(sampler).list()) {
+      if (childClass.isInstance(child)) {
+        ret.add(childClass.cast(child));
+      }
+    }
+    return ret;
+  }
+
+  @Test
+  public void shouldNotAddExtractorWhenNoRules() throws IOException {
+    HashTree testPlan = correlateRecording(JTL_RECORDING, Collections.emptyList());
+    List<HTTPSamplerBase> samplers = findSamplers(testPlan);
+    assertThat(Arrays.asList(samplers.size(),
+        findChildren(testPlan, samplers.get(0), RegexExtractor.class).size(),
+        samplers.get(1).getArguments().getArgument(0).getValue()))
+        .isEqualTo(Arrays.asList(2, 0, "1234"));
+  }
+
+  @Test
+  public void shouldSetOnlyCookiesNotSetByPreviousResponsesWhenCorrelatingJtl()
+      throws IOException {
+    HashTree testPlan = correlateRecording(JTL_RECORDING, Collections.emptyList());
+    List<HTTPSamplerBase> samplers = findSamplers(testPlan);
+    List<String> cookies = new ArrayList<>();
+    for (SetCookiePreProcessor preProcessor : findChildren(testPlan, samplers.get(1),
+        SetCookiePreProcessor.class)) {
+      cookies.add(preProcessor.getPropertyAsString(SetCookiePreProcessor.COOKIE_NAME_PROPERTY)
+          + "=" + preProcessor.getPropertyAsString(SetCookiePreProcessor.COOKIE_VALUE_PROPERTY));
+    }
+    assertThat(cookies).isEqualTo(Collections.singletonList("tracker=xyz"));
+  }
+
+  @Test
+  public void shouldAddExtractorAndReplaceValueWhenCorrelatingHar() throws IOException {
+    HashTree testPlan = correlateRecording(HAR_RECORDING, buildTokenRules());
+    List<HTTPSamplerBase> samplers = findSamplers(testPlan);
+    assertThat(Arrays.asList(samplers.size(),
+        findChildren(testPlan, samplers.get(0), RegexExtractor.class).size(),
+        samplers.get(1).getArguments().getArgument(0).getValue()))
+        .isEqualTo(Arrays.asList(2, 1, "${" + REFERENCE_NAME + "}"));
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampleResult;
+import org.apache.jmeter.testelement.TestElement;
+import org.junit.Test;
+
+public class CookieTrackerTest {
+
+  private static final String DOMAIN = "test.com";
+  private static final String OTHER_DOMAIN = "other.com";
+
+  private final CookieTracker tracker = new CookieTracker();
+
+  @Test
+  public void shouldFindAllCookiesWhenNoneTracked() {
+    assertThat(tracker.findNewCookies("a=1; b=2", DOMAIN))
+        .isEqualTo(Arrays.asList(cookie("a", "1"), cookie("b", "2")));
+  }
+
+  private static ComparableCookie cookie(String name, String value) {
+    return new ComparableCookie(name, value, DOMAIN);
+  }
+
+  @Test
+  public void shouldFindOnlyChangedCookiesWhenSomeTracked() {
+    tracker.put(cookie("a", "1"));
+    tracker.put(cookie("b", "2"));
+    assertThat(tracker.findNewCookies("a=1; b=3", DOMAIN))
+        .isEqualTo(Collections.singletonList(cookie("b", "3")));
+  }
+
+  @Test
+  public void shouldFindCookiesWhenTrackedInOtherDomain() {
+    tracker.put(new ComparableCookie("a", "1", OTHER_DOMAIN));
+    assertThat(tracker.findNewCookies("a=1", DOMAIN))
+        .isEqualTo(Collections.singletonList(cookie("a", "1")));
+  }
+
+  @Test
+  public void shouldParseCookiesWhenMissingSpacesEmptyPairsAndSeparators() {
+    assertThat(tracker.findNewCookies(" a=1;b= ;; invalid; c=x=y;", DOMAIN))
+        .isEqualTo(Arrays.asList(cookie("a", "1"), cookie("b", ""), cookie("c", "x=y")));
+  }
+
+  @Test
+  public void shouldReplaceCookieValueWhenPutWithSameDomainAndName() {
+    tracker.put(cookie("a", "1"));
+    tracker.put(cookie("b", "2"));
+    tracker.put(cookie("a", "3"));
+    assertThat(tracker.getCookies()).containsExactly(cookie("a", "3"), cookie("b", "2"));
+  }
+
+  @Test
+  public void shouldTrackSetCookiesWhenResponseHeadersWithAttributes() {
+    tracker.putSetCookies("HTTP/1.1 200 OK\r\n"
+        + "Set-Cookie: a=1; Path=/; HttpOnly\r\n"
+        + "set-cookie:b=2\r\n"
+        + "Set-Cookie2: c=3\r\n"
+        + "X-Set-Cookie: d=4\r\n"
+        + "SET-COOKIE : e=\"5\";Secure\n", DOMAIN);
+    assertThat(tracker.getCookies())
+        .containsExactly(cookie("a", "1"), cookie("b", "2"), cookie("e", "\"5\""));
+  }
+
+  @Test
+  public void shouldNotFindCookiesWhenSetByResponse() {
+    tracker.putSetCookies("Set-Cookie: a=1\n", DOMAIN);
+    assertThat(tracker.findNewCookies("a=1", DOMAIN)).isEqualTo(Collections.emptyList());
+  }
+
+  @Test
+  public void shouldNotFindCookiesWhenNoCookieHeader() {
+    assertThat(tracker.findNewCookies(null, DOMAIN)).isEqualTo(Collections.emptyList());
+  }
+
+  @Test
+  public void shouldAddPreProcessorWithCookieValueWhenAddMissingCookies() throws Exception {
+    HTTPSampleResult result = new HTTPSampleResult();
+    result.setURL(new URL("http://" + DOMAIN + "/"));
+    result.setCookies("session=abc123");
+    List<TestElement> children = new ArrayList<>();
+    tracker.addMissingCookies(result, children);
+    assertThat(Arrays.asList(children.size(),
+        children.get(0).getPropertyAsString(SetCookiePreProcessor.COOKIE_NAME_PROPERTY),
+        children.get(0).getPropertyAsString(SetCookiePreProcessor.COOKIE_VALUE_PROPERTY)))
+        .isEqualTo(Arrays.asList(1, "session", "abc123"));
+  }
+}
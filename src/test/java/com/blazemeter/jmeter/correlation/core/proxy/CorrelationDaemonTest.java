@@ -0,0 +1,57 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.blazemeter.jmeter.correlation.core.proxy.CorrelationDaemon.ExecutionMode;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.jmeter.protocol.http.proxy.ProxyControl;
+import org.junit.Test;
+
+public class CorrelationDaemonTest {
+
+  private static final long TIMEOUT_SECONDS = 10;
+
+  @Test
+  public void shouldGetExecutionModeIgnoringCaseWhenFromName() {
+    assertThat(ExecutionMode.fromName(" virtual ")).isEqualTo(ExecutionMode.VIRTUAL);
+  }
+
+  @Test
+  public void shouldGetThreadExecutionModeWhenFromUnknownName() {
+    assertThat(ExecutionMode.fromName("unknown")).isEqualTo(ExecutionMode.THREAD);
+  }
+
+  @Test
+  public void shouldRunProxyInExecutorWhenConnectionAccepted() throws Exception {
+    BlockingQueue<Runnable> executed = new LinkedBlockingQueue<>();
+    int port = findFreePort();
+    CorrelationDaemon daemon = new CorrelationDaemon(port, new ProxyControl(),
+        new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>()) {
+          @Override
+          public void execute(Runnable command) {
+            executed.add(command);
+          }
+        });
+    daemon.start();
+    try (Socket ignored = new Socket("localhost", port)) {
+      assertThat(executed.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+          .isInstanceOf(CorrelationProxy.class);
+    } finally {
+      daemon.stopServer();
+      daemon.join();
+    }
+  }
+
+  private int findFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.blazemeter.jmeter.correlation.core.proxy.OrderedDeliveryQueue.BackpressurePolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class OrderedDeliveryQueueTest {
+
+  private static final int DELIVERIES_COUNT = 100;
+  private static final long TIMEOUT_SECONDS = 5;
+
+  @Test
+  public void shouldDeliverInSubmissionOrderWhenBlockingOnFullQueue() throws Exception {
+    assertThat(deliverAll(new OrderedDeliveryQueue(2, BackpressurePolicy.BLOCK)))
+        .isEqualTo(buildExpectedDeliveries());
+  }
+
+  @Test
+  public void shouldDeliverInSubmissionOrderWhenCallerRunsOnFullQueue() throws Exception {
+    assertThat(deliverAll(new OrderedDeliveryQueue(2, BackpressurePolicy.CALLER_RUNS)))
+        .isEqualTo(buildExpectedDeliveries());
+  }
+
+  private List<Integer> deliverAll(OrderedDeliveryQueue queue) throws InterruptedException {
+    List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+    for (int i = 0; i < DELIVERIES_COUNT; i++) {
+      int delivery = i;
+      queue.submit(() -> delivered.add(delivery));
+    }
+    queue.stop();
+    return delivered;
+  }
+
+  private List<Integer> buildExpectedDeliveries() {
+    return IntStream.range(0, DELIVERIES_COUNT).boxed().collect(Collectors.toList());
+  }
+
+  @Test
+  public void shouldDeliverInSubmittingThreadWhenQueueHasNoCapacity() throws Exception {
+    List<Thread> deliveryThreads = new ArrayList<>();
+    new OrderedDeliveryQueue(0, BackpressurePolicy.BLOCK)
+        .submit(() -> deliveryThreads.add(Thread.currentThread()));
+    assertThat(deliveryThreads).isEqualTo(Collections.singletonList(Thread.currentThread()));
+  }
+
+  @Test
+  public void shouldNotWaitForDeliveryWhenSubmittingToQueueWithCapacity() throws Exception {
+    OrderedDeliveryQueue queue = new OrderedDeliveryQueue(1, BackpressurePolicy.BLOCK);
+    CountDownLatch deliveryAllowed = new CountDownLatch(1);
+    List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+    queue.submit(() -> {
+      awaitLatch(deliveryAllowed);
+      delivered.add(1);
+    });
+    assertThat(delivered).isEqualTo(Collections.emptyList());
+    deliveryAllowed.countDown();
+    queue.awaitDelivered();
+    assertThat(delivered).isEqualTo(Collections.singletonList(1));
+  }
+
+  private void awaitLatch(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void shouldKeepDeliveringWhenDeliveryFails() throws Exception {
+    OrderedDeliveryQueue queue = new OrderedDeliveryQueue(1, BackpressurePolicy.BLOCK);
+    List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+    queue.submit(() -> {
+      throw new IllegalStateException("Delivery failure");
+    });
+    queue.submit(() -> delivered.add(1));
+    queue.stop();
+    assertThat(delivered).isEqualTo(Collections.singletonList(1));
+  }
+
+  @Test
+  public void shouldNotWaitForDeliveriesWhenStoppingInBackground() throws Exception {
+    OrderedDeliveryQueue queue = new OrderedDeliveryQueue(1, BackpressurePolicy.BLOCK);
+    CountDownLatch deliveryAllowed = new CountDownLatch(1);
+    List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+    queue.submit(() -> {
+      awaitLatch(deliveryAllowed);
+      delivered.add(1);
+    });
+    queue.stopInBackground();
+    assertThat(delivered).isEqualTo(Collections.emptyList());
+    deliveryAllowed.countDown();
+    queue.awaitDelivered();
+    assertThat(delivered).isEqualTo(Collections.singletonList(1));
+  }
+
+  @Test
+  public void shouldRunTaskAfterPendingDeliveriesWithoutWaitingWhenQueueIsFull()
+      throws Exception {
+    OrderedDeliveryQueue queue = new OrderedDeliveryQueue(1, BackpressurePolicy.BLOCK);
+    CountDownLatch deliveryAllowed = new CountDownLatch(1);
+    CountDownLatch taskRun = new CountDownLatch(1);
+    List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+    queue.submit(() -> {
+      awaitLatch(deliveryAllowed);
+      delivered.add(1);
+    });
+    queue.submit(() -> delivered.add(2));
+    queue.submitTask(() -> {
+      delivered.add(3);
+      taskRun.countDown();
+    });
+    assertThat(delivered).isEqualTo(Collections.emptyList());
+    deliveryAllowed.countDown();
+    assertThat(taskRun.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue();
+    assertThat(delivered).isEqualTo(Arrays.asList(1, 2, 3));
+  }
+
+  @Test
+  public void shouldRunTaskInWorkerWhenQueueHasNoCapacity() throws Exception {
+    OrderedDeliveryQueue queue = new OrderedDeliveryQueue(0, BackpressurePolicy.BLOCK);
+    List<Thread> taskThreads = Collections.synchronizedList(new ArrayList<>());
+    queue.submitTask(() -> taskThreads.add(Thread.currentThread()));
+    queue.stop();
+    assertThat(Arrays.asList(taskThreads.size(), taskThreads.contains(Thread.currentThread())))
+        .isEqualTo(Arrays.asList(1, false));
+  }
+
+}
@@ -0,0 +1,124 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.jmeter.samplers.SampleResult;
+import org.junit.Test;
+
+public class PendingProxiesTest {
+
+  private static final int CONCURRENT_PROXIES_COUNT = 200;
+  private static final long ORDERING_DEADLINE_MILLIS = 10;
+
+  private final PendingProxies pendingProxies = new PendingProxies();
+  private final List<PendingProxy> released = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void shouldReleaseInAddedOrderWhenCompletedInDifferentOrder() {
+    PendingProxy first = addRecordedProxy("first");
+    PendingProxy second = addRecordedProxy("second");
+    PendingProxy third = addRecordedProxy("third");
+    pendingProxies.complete("third", released::add);
+    pendingProxies.complete("second", released::add);
+    assertThat(released).isEqualTo(Collections.emptyList());
+    pendingProxies.complete("first", released::add);
+    assertThat(released).isEqualTo(Arrays.asList(first, second, third));
+  }
+
+  private PendingProxy addRecordedProxy(Object proxy) {
+    return addRecordedProxy(proxy, pendingProxies);
+  }
+
+  @Test
+  public void shouldNotReleaseProxyWhenNotRecorded() {
+    pendingProxies.add("notRecorded", new PendingProxy(null));
+    PendingProxy recorded = addRecordedProxy("recorded");
+    pendingProxies.complete("recorded", released::add);
+    pendingProxies.complete("notRecorded", released::add);
+    assertThat(released).isEqualTo(Collections.singletonList(recorded));
+  }
+
+  @Test
+  public void shouldReleaseFollowingProxiesWhenFirstExceedsOrderingDeadline() throws Exception {
+    PendingProxies deadlinePendingProxies = new PendingProxies(ORDERING_DEADLINE_MILLIS);
+    PendingProxy slow = addRecordedProxy("slow", deadlinePendingProxies);
+    PendingProxy fast = addRecordedProxy("fast", deadlinePendingProxies);
+    Thread.sleep(ORDERING_DEADLINE_MILLIS * 2);
+    deadlinePendingProxies.complete("fast", released::add);
+    deadlinePendingProxies.complete("slow", released::add);
+    assertThat(released).isEqualTo(Arrays.asList(fast, slow));
+  }
+
+  private PendingProxy addRecordedProxy(Object proxy, PendingProxies pendingProxies) {
+    PendingProxy pendingProxy = new PendingProxy(null);
+    pendingProxies.add(proxy, pendingProxy);
+    pendingProxy.update(null, null, new SampleResult());
+    return pendingProxy;
+  }
+
+  @Test
+  public void shouldCountOvertakenProxyWhenExceedsOrderingDeadline() throws Exception {
+    PendingProxies deadlinePendingProxies = new PendingProxies(ORDERING_DEADLINE_MILLIS);
+    addRecordedProxy("slow", deadlinePendingProxies);
+    addRecordedProxy("fast", deadlinePendingProxies);
+    Thread.sleep(ORDERING_DEADLINE_MILLIS * 2);
+    deadlinePendingProxies.complete("fast", released::add);
+    assertThat(deadlinePendingProxies.getOvertakenCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void shouldReleaseCompletedProxyWhenFirstExceedsOrderingDeadlineAndNoOtherCompletes()
+      throws Exception {
+    PendingProxies deadlinePendingProxies = new PendingProxies(ORDERING_DEADLINE_MILLIS);
+    addRecordedProxy("slow", deadlinePendingProxies);
+    PendingProxy fast = addRecordedProxy("fast", deadlinePendingProxies);
+    deadlinePendingProxies.scheduleDeadlineChecks(released::add);
+    try {
+      deadlinePendingProxies.complete("fast", released::add);
+      long timeout = System.currentTimeMillis() + ORDERING_DEADLINE_MILLIS * 100;
+      while (released.isEmpty() && System.currentTimeMillis() < timeout) {
+        Thread.sleep(ORDERING_DEADLINE_MILLIS);
+      }
+    } finally {
+      deadlinePendingProxies.stopDeadlineChecks();
+    }
+    assertThat(released).isEqualTo(Collections.singletonList(fast));
+  }
+
+  @Test
+  public void shouldReleaseInAddedOrderWhenCompletedConcurrently() throws Exception {
+    List<PendingProxy> added = IntStream.range(0, CONCURRENT_PROXIES_COUNT)
+        .mapToObj(this::addRecordedProxy)
+        .collect(Collectors.toList());
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = IntStream.range(0, CONCURRENT_PROXIES_COUNT)
+        .map(i -> CONCURRENT_PROXIES_COUNT - 1 - i)
+        .mapToObj(i -> new Thread(() -> {
+          awaitLatch(start);
+          pendingProxies.complete(i, released::add);
+        }))
+        .collect(Collectors.toList());
+    threads.forEach(Thread::start);
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(released).isEqualTo(added);
+  }
+
+  private void awaitLatch(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
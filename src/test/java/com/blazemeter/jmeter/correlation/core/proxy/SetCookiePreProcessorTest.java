@@ -0,0 +1,73 @@
+package com.blazemeter.jmeter.correlation.core.proxy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import org.apache.jmeter.protocol.http.control.Cookie;
+import org.apache.jmeter.protocol.http.control.CookieManager;
+import org.apache.jmeter.protocol.http.sampler.HTTPSampler;
+import org.apache.jmeter.testbeans.TestBeanHelper;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SetCookiePreProcessorTest {
+
+  private static final String COOKIE_NAME = "session";
+  private static final String COOKIE_VALUE = "123";
+
+  private final HTTPSampler sampler = new HTTPSampler();
+  private final CookieManager cookieManager = new CookieManager();
+
+  @Before
+  public void setup() {
+    sampler.setCookieManager(cookieManager);
+    JMeterContextService.getContext().setCurrentSampler(sampler);
+  }
+
+  @After
+  public void teardown() {
+    JMeterContextService.getContext().setCurrentSampler(null);
+  }
+
+  @Test
+  public void shouldAddCookieForSamplerDomainWhenProcess() {
+    sampler.setProtocol("http");
+    sampler.setDomain("test.com");
+    sampler.setPath("/login");
+    process();
+    assertCookie("test.com", false);
+  }
+
+  private void process() {
+    SetCookiePreProcessor preProcessor = SetCookiePreProcessor
+        .fromNameAndValue(COOKIE_NAME, COOKIE_VALUE);
+    TestBeanHelper.prepare(preProcessor);
+    preProcessor.process();
+  }
+
+  private void assertCookie(String domain, boolean secure) {
+    Cookie cookie = cookieManager.get(0);
+    assertThat(Arrays.asList(cookieManager.getCookieCount(), cookie.getName(), cookie.getValue(),
+        cookie.getDomain(), cookie.getSecure()))
+        .isEqualTo(Arrays.asList(1, COOKIE_NAME, COOKIE_VALUE, domain, secure));
+  }
+
+  @Test
+  public void shouldAddSecureCookieForPathDomainWhenPathIsAbsoluteHttpsUrl() {
+    sampler.setDomain("test.com");
+    sampler.setPath("https://other.com/login");
+    process();
+    assertCookie("other.com", true);
+  }
+
+  @Test
+  public void shouldNotFailWhenSamplerWithoutCookieManager() {
+    sampler.setCookieManager(null);
+    sampler.setDomain("test.com");
+    process();
+    assertThat(cookieManager.getCookieCount()).isEqualTo(0);
+  }
+
+}
@@ -0,0 +1,125 @@
+package com.blazemeter.jmeter.correlation.core.regex;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.oro.text.regex.MalformedPatternException;
+import org.junit.Test;
+
+public class RegexEngineTest {
+
+  private static final String INPUT = "<input name=\"token\" value=\"123\"/>"
+      + "<input name=\"token\" value=\"456\"/>\n<a href=\"/path?id=7&amp;name=test\">";
+  private static final List<String> REGEXES = Arrays.asList(
+      "name=\"token\" value=\"(.+?)\"",
+      "value=\"([^\"]*)\"",
+      "id=(\\d+)&(?:amp;)?name=(\\w+)",
+      "\\b(\\w+)=",
+      "(<a|<input)\\s+(\\S+?)=",
+      "^<(\\w+)",
+      "(\\d{2,3})",
+      "(a*)",
+      "test\">$",
+      "(\\w+)\n?$");
+
+  @Test
+  public void shouldFindSameMatchesAsOroWhenUsingLinearEngine()
+      throws MalformedPatternException {
+    for (String regex : REGEXES) {
+      assertThat(findMatches(RegexEngine.LINEAR, regex, 0))
+          .as(regex)
+          .isEqualTo(findMatches(RegexEngine.ORO, regex, 0));
+    }
+  }
+
+  @Test
+  public void shouldFindSameMatchesAsOroWhenUsingLinearEngineFromOffset()
+      throws MalformedPatternException {
+    int offset = INPUT.indexOf("456");
+    for (String regex : REGEXES) {
+      assertThat(findMatches(RegexEngine.LINEAR, regex, offset))
+          .as(regex)
+          .isEqualTo(findMatches(RegexEngine.ORO, regex, offset));
+    }
+  }
+
+  @Test
+  public void shouldFindMatchesWhenUsingJavaEngine() throws MalformedPatternException {
+    assertThat(findMatches(RegexEngine.JAVA, "(?<=value=\")(\\d+)", 0))
+        .isEqualTo(Arrays.asList("27-30:123", "60-63:456"));
+  }
+
+  @Test
+  public void shouldUseLinearRegexWhenRegexIsSupported() throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("value=\"(.+?)\"")).isInstanceOf(LinearRegex.class);
+  }
+
+  @Test
+  public void shouldFallbackToOroWhenRegexIsNotSupportedByLinearEngine()
+      throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("(\\d)\\1")).isInstanceOf(OroRegex.class);
+  }
+
+  @Test
+  public void shouldFallbackToOroWhenRepeatingElementMatchingEmptyString()
+      throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("(a*)+b")).isInstanceOf(OroRegex.class);
+  }
+
+  @Test
+  public void shouldFallbackToOroWhenRegexUsesEscapeNotAnchoringInOro()
+      throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("x(\\d+)\\z")).isInstanceOf(OroRegex.class);
+  }
+
+  @Test
+  public void shouldFallbackToOroWhenEndAnchorIsNotLastElement()
+      throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("(\\w+)$\n")).isInstanceOf(OroRegex.class);
+  }
+
+  @Test
+  public void shouldUseLinearRegexWhenEndAnchorIsLastElementInGroup()
+      throws MalformedPatternException {
+    assertThat(RegexEngine.LINEAR.compile("(\\w+$)")).isInstanceOf(LinearRegex.class);
+  }
+
+  @Test(expected = MalformedPatternException.class)
+  public void shouldThrowMalformedPatternExceptionWhenRegexIsInvalid()
+      throws MalformedPatternException {
+    RegexEngine.LINEAR.compile("value=(\\d+");
+  }
+
+  @Test
+  public void shouldNotFindMatchWhenUsingLinearEngineWithNoMatchingBigInput()
+      throws MalformedPatternException {
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      input.append("x=aaaaaaaaaaaaaaaaaaaa ");
+    }
+    assertThat(RegexEngine.LINEAR.compile("x=(.+?)&y").matcher(input.toString(), 0).find())
+        .isFalse();
+  }
+
+  @Test
+  public void shouldUseOroWhenNoEngineIsConfigured() {
+    assertThat(RegexEngine.forReferenceName("token")).isEqualTo(RegexEngine.ORO);
+  }
+
+  private List<String> findMatches(RegexEngine engine, String regex, int offset)
+      throws MalformedPatternException {
+    RegexMatches matches = engine.compile(regex).matcher(INPUT, offset);
+    List<String> ret = new ArrayList<>();
+    while (matches.find()) {
+      StringBuilder match = new StringBuilder(matches.start(0) + "-" + matches.end(0));
+      for (int i = 1; i <= matches.groupCount(); i++) {
+        match.append(":").append(matches.group(i));
+      }
+      ret.add(match.toString());
+    }
+    return ret;
+  }
+
+}
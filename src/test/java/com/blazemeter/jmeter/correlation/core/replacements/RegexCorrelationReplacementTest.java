@@ -6,6 +6,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.when;
 
 import com.blazemeter.jmeter.correlation.core.BaseCorrelationContext;
+import com.blazemeter.jmeter.correlation.core.CorrelationVariables;
 import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
 import java.util.Collections;
 import java.util.function.Function;
@@ -161,6 +162,16 @@ public class RegexCorrelationReplacementTest {
         .isEqualTo(originalPath);
   }
 
+  @Test
+  public void shouldNotReplaceValueInRequestPathWhenRegexChangesAfterProcessing() {
+    replacer.process(sampler, Collections.emptyList(), null, vars);
+    replacer.setParams(Collections.singletonList("Other=([^&]+)"));
+    sampler.setPath("/" + PARAM_NAME + "=" + PARAM_VALUE);
+    String originalPath = sampler.getPath();
+    replacer.process(sampler, Collections.emptyList(), null, vars);
+    assertThat(sampler.getPath()).isEqualTo(originalPath);
+  }
+
   @Test
   public void shouldNotReplaceValueInRequestPathWhenRegexMatchesButVariableValueIsDifferent() {
     vars.put(REFERENCE_NAME, "Other");
@@ -215,6 +226,26 @@ public class RegexCorrelationReplacementTest {
     validateReplacement("${" + REFERENCE_NAME + "#2_2}");
   }
 
+  @Test
+  public void shouldReplaceFirstCheckedVariableWhenValueIsInSeveralCorrelationVariables() {
+    vars = new CorrelationVariables();
+    vars.put(REFERENCE_NAME + "#3", PARAM_VALUE);
+    vars.put(REFERENCE_NAME + "#2_1", "Other");
+    vars.put(REFERENCE_NAME + "#2_2", PARAM_VALUE);
+    vars.put(REFERENCE_NAME + "#2_matchNr", "2");
+    vars.put(REFERENCE_NAME + "#1", "Other");
+    when(context.getVariableCount(REFERENCE_NAME)).thenReturn(3);
+    validateReplacement("${" + REFERENCE_NAME + "#2_2}");
+  }
+
+  @Test
+  public void shouldNotReplaceValueWhenCorrelationVariableIsNotCountedInContext() {
+    vars = new CorrelationVariables();
+    vars.put(REFERENCE_NAME + "#4", PARAM_VALUE);
+    when(context.getVariableCount(REFERENCE_NAME)).thenReturn(3);
+    validateReplacement(PARAM_VALUE);
+  }
+
   @Test
   public void shouldNotReplaceValueInArgumentWhenRegexMatchesButVariableValueIsDifferent() {
     vars.put(REFERENCE_NAME, "Other");
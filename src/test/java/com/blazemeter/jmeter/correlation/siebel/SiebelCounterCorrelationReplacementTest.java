@@ -10,7 +10,6 @@ import java.util.Collections;
 import java.util.List;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.http.entity.ContentType;
-import org.apache.jmeter.modifiers.JSR223PreProcessor;
 import org.apache.jmeter.protocol.http.sampler.HTTPSampler;
 import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testbeans.gui.TestBeanGUI;
@@ -81,61 +80,51 @@ public class SiebelCounterCorrelationReplacementTest {
     return sampleResult;
   }
 
-  private JSR223PreProcessor createPreProcessor(Integer counter, int count) {
-    JSR223PreProcessor jSR223PreProcessor = new JSR223PreProcessor();
-    jSR223PreProcessor.setProperty(JSR223PreProcessor.GUI_CLASS, TestBeanGUI.class.getName());
-    jSR223PreProcessor.setName(String.format("Calculate %s", VARIABLE_NAME));
-    StringBuilder script = new StringBuilder();
-    if (counter == null) {
-      script.append(String.format("int %s_var = %d;\n", VARIABLE_NAME, count));
-    } else if (counter < count) {
-      script.append(String
-          .format("int %1$s_var = Integer.valueOf(vars.get(\"%1$s\")) + %2$d;\n", VARIABLE_NAME,
-              count - counter));
-    } else if (counter > count) {
-      script.append(String
-          .format("int %1$s_var = Integer.valueOf(vars.get(\"%1$s\")) - %2$d;\n", VARIABLE_NAME,
-              counter - count));
-    }
+  private SiebelCounterPreProcessor createPreProcessor(Integer counter, int count) {
+    SiebelCounterPreProcessor preProcessor = new SiebelCounterPreProcessor();
+    preProcessor.setProperty(TestElement.GUI_CLASS, TestBeanGUI.class.getName());
+    preProcessor.setName(String.format("Calculate %s", VARIABLE_NAME));
+    preProcessor.setProperty(SiebelCounterPreProcessor.VARIABLE_NAME_PROPERTY, VARIABLE_NAME);
+    preProcessor.setProperty(SiebelCounterPreProcessor.VALUE_PROPERTY,
+        counter == null ? count : count - counter);
+    preProcessor.setProperty(SiebelCounterPreProcessor.RELATIVE_PROPERTY, counter != null);
     siebelContext.setCounter(count);
-    script.append(String.format("vars.put(\"%1$s\", String.valueOf(%1$s_var));\n", VARIABLE_NAME));
-    jSR223PreProcessor.setProperty("script", script.toString());
-    return jSR223PreProcessor;
+    return preProcessor;
   }
 
   @Test
-  public void shouldAddTheExpectedJSR223PreProcessorWithCounterCalculationWhenCounterIsNull()
+  public void shouldAddTheExpectedPreProcessorWithCounterCalculationWhenCounterIsNull()
       throws MalformedURLException {
     List<TestElement> children = new ArrayList<>();
     siebelCounterReplacement
         .process(sampler, children, createMatchSampleResult(), new JMeterVariables());
-    JSR223PreProcessor jSR223PreProcessor = createPreProcessor(null, SIEBEL_COUNT);
+    SiebelCounterPreProcessor preProcessor = createPreProcessor(null, SIEBEL_COUNT);
     assertThat(TestUtils.comparableFrom(children))
-        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(jSR223PreProcessor)));
+        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(preProcessor)));
   }
 
   @Test
-  public void shouldAddTheExpectedJSR223PreProcessorWithCounterCalculationWhenCountIsGreater()
+  public void shouldAddTheExpectedPreProcessorWithCounterCalculationWhenCountIsGreater()
       throws MalformedURLException {
     List<TestElement> children = new ArrayList<>();
     siebelContext.setCounter(SIEBEL_COUNT_GREATER);
     siebelCounterReplacement
         .process(sampler, children, createMatchSampleResult(), new JMeterVariables());
-    JSR223PreProcessor jSR223PreProcessor = createPreProcessor(SIEBEL_COUNT_GREATER, SIEBEL_COUNT);
+    SiebelCounterPreProcessor preProcessor = createPreProcessor(SIEBEL_COUNT_GREATER, SIEBEL_COUNT);
     assertThat(TestUtils.comparableFrom(children))
-        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(jSR223PreProcessor)));
+        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(preProcessor)));
   }
 
   @Test
-  public void shouldAddTheExpectedJSR223PreProcessorWithCounterCalculationWhenCountIsLess()
+  public void shouldAddTheExpectedPreProcessorWithCounterCalculationWhenCountIsLess()
       throws MalformedURLException {
     List<TestElement> children = new ArrayList<>();
     siebelContext.setCounter(SIEBEL_COUNT_LESS);
     siebelCounterReplacement
         .process(sampler, children, createMatchSampleResult(), new JMeterVariables());
-    JSR223PreProcessor jSR223PreProcessor = createPreProcessor(SIEBEL_COUNT_LESS, SIEBEL_COUNT);
+    SiebelCounterPreProcessor preProcessor = createPreProcessor(SIEBEL_COUNT_LESS, SIEBEL_COUNT);
     assertThat(TestUtils.comparableFrom(children))
-        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(jSR223PreProcessor)));
+        .isEqualTo(TestUtils.comparableFrom(Collections.singletonList(preProcessor)));
   }
 
   @Test
@@ -0,0 +1,55 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.jmeter.testbeans.TestBeanHelper;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SiebelCounterPreProcessorTest {
+
+  private static final String VARIABLE_NAME = "Siebel_SWEC";
+
+  private final JMeterVariables vars = new JMeterVariables();
+
+  @Before
+  public void setup() {
+    JMeterContextService.getContext().setVariables(vars);
+  }
+
+  @Test
+  public void shouldSetCounterWhenNotRelative() {
+    vars.put(VARIABLE_NAME, "3");
+    process(SiebelCounterPreProcessor.fromValue(VARIABLE_NAME, 5));
+    assertThat(vars.get(VARIABLE_NAME)).isEqualTo("5");
+  }
+
+  private void process(SiebelCounterPreProcessor preProcessor) {
+    TestBeanHelper.prepare(preProcessor);
+    preProcessor.process();
+  }
+
+  @Test
+  public void shouldIncrementCounterWhenPositiveDelta() {
+    vars.put(VARIABLE_NAME, "3");
+    process(SiebelCounterPreProcessor.fromDelta(VARIABLE_NAME, 2));
+    assertThat(vars.get(VARIABLE_NAME)).isEqualTo("5");
+  }
+
+  @Test
+  public void shouldDecrementCounterWhenNegativeDelta() {
+    vars.put(VARIABLE_NAME, "3");
+    process(SiebelCounterPreProcessor.fromDelta(VARIABLE_NAME, -2));
+    assertThat(vars.get(VARIABLE_NAME)).isEqualTo("1");
+  }
+
+  @Test
+  public void shouldKeepCounterWhenRelativeAndNotNumber() {
+    vars.put(VARIABLE_NAME, "none");
+    process(SiebelCounterPreProcessor.fromDelta(VARIABLE_NAME, 2));
+    assertThat(vars.get(VARIABLE_NAME)).isEqualTo("none");
+  }
+
+}
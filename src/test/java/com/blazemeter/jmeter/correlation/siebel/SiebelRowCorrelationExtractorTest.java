@@ -2,12 +2,13 @@ package com.blazemeter.jmeter.correlation.siebel;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.blazemeter.jmeter.correlation.JMeterTestUtils;
 import com.blazemeter.jmeter.correlation.TestUtils;
+import com.blazemeter.jmeter.correlation.core.extractors.RegexCorrelationExtractor;
 import com.blazemeter.jmeter.correlation.core.extractors.ResultField;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import org.apache.jmeter.extractor.JSR223PostProcessor;
 import org.apache.jmeter.extractor.RegexExtractor;
 import org.apache.jmeter.extractor.gui.RegexExtractorGui;
 import org.apache.jmeter.protocol.http.sampler.HTTPSampler;
@@ -15,6 +16,7 @@ import org.apache.jmeter.samplers.SampleResult;
 import org.apache.jmeter.testbeans.gui.TestBeanGUI;
 import org.apache.jmeter.testelement.TestElement;
 import org.apache.jmeter.threads.JMeterVariables;
+import org.apache.jmeter.util.JMeterUtils;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -59,9 +61,9 @@ public class SiebelRowCorrelationExtractorTest {
     siebelRowExtractor.setVariableName(REFERENCE_NAME);
     siebelRowExtractor.process(sampler, children, sampleResult, vars);
     RegexExtractor regexExtractor = createRegexExtractor(REGEX_ONE, ResultField.BODY);
-    JSR223PostProcessor jSR223PostProcessor = createPostProcessor();
+    SiebelStarArrayPostProcessor postProcessor = createPostProcessor();
     extractors.add(regexExtractor);
-    extractors.add(jSR223PostProcessor);
+    extractors.add(postProcessor);
     assertThat(TestUtils.comparableFrom(children)).isEqualTo(TestUtils.comparableFrom(extractors));
   }
 
@@ -74,9 +76,9 @@ public class SiebelRowCorrelationExtractorTest {
     siebelRowExtractor.setVariableName(REFERENCE_NAME);
     siebelRowExtractor.process(sampler, children, sampleResult, vars);
     RegexExtractor regexExtractor = createRegexExtractor(REGEX_TWO, ResultField.BODY);
-    JSR223PostProcessor jSR223PostProcessor = createPostProcessor();
+    SiebelStarArrayPostProcessor postProcessor = createPostProcessor();
     extractors.add(regexExtractor);
-    extractors.add(jSR223PostProcessor);
+    extractors.add(postProcessor);
     assertThat(TestUtils.comparableFrom(children)).isEqualTo(TestUtils.comparableFrom(extractors));
   }
 
@@ -91,25 +93,47 @@ public class SiebelRowCorrelationExtractorTest {
     assertThat(children).isEmpty();
   }
 
-  private JSR223PostProcessor createPostProcessor() {
-    StringBuilder script = new StringBuilder();
-    JSR223PostProcessor jSR223PostProcessor = new JSR223PostProcessor();
-    jSR223PostProcessor.setProperty(JSR223PostProcessor.GUI_CLASS, TestBeanGUI.class.getName());
-    jSR223PostProcessor.setName("Parse Array Values");
-    script.append("import com.blazemeter.jmeter.correlation.siebel.SiebelArrayFunction;\n\n");
-    script.append("String stringToSplit = \"\";\n");
-    script.append("String rowId = \"\";");
-    String varNamePrefix = SiebelRowCorrelationExtractorTest.REFERENCE_NAME + "0";
-    script.append(String.format("\n\n// Parsing Star Array parameter(s) using match number %1$d\n"
-            + "stringToSplit = vars.get(\"%2$s_%1$d\");\n"
-            + "if (stringToSplit != null) {\n"
-            + "\tSiebelArrayFunction.split(stringToSplit, \"%3$s\", vars);\n"
-            + "\trowIdValue = vars.get(\"%3$s_%4$d\");\n"
-            + "\tvars.put(\"%3$s_rowId\", rowIdValue);"
-            + "\n}", 1, SiebelRowCorrelationExtractorTest.REFERENCE_NAME, varNamePrefix,
-        3));
-    jSR223PostProcessor.setProperty("script", script.toString());
-    return jSR223PostProcessor;
+  @Test
+  public void shouldKeepMatchNumberOfRowsWhenMiddleMatchIsNotStarArray() {
+    sampleResult.setResponseData("`ValueArray`3*abc6*VRId-0``ValueArray`8*invalid`"
+        + "`ValueArray`3*def6*VRId-2`", SampleResult.DEFAULT_HTTP_ENCODING);
+    siebelRowExtractor.setVariableName(REFERENCE_NAME);
+    List<TestElement> children = new ArrayList<>();
+    siebelRowExtractor.process(sampler, children, sampleResult, vars);
+    assertThat(children.get(children.size() - 1)
+        .getPropertyAsString(SiebelStarArrayPostProcessor.ROWS_PROPERTY))
+        .isEqualTo("1:" + REFERENCE_NAME + "0:2\n3:" + REFERENCE_NAME + "2:2");
+  }
+
+  @Test
+  public void shouldOnlyParseRowsInScannedPartWhenMaxScanLengthIsSet() {
+    JMeterTestUtils.setupJmeterEnv();
+    String firstRow = "`ValueArray`3*abc6*VRId-0`";
+    sampleResult.setResponseData(firstRow + "`ValueArray`3*def6*VRId-1`",
+        SampleResult.DEFAULT_HTTP_ENCODING);
+    siebelRowExtractor.setVariableName(REFERENCE_NAME);
+    String maxScanLengthProperty = RegexCorrelationExtractor.MAX_SCAN_LENGTH_PROPERTY + "."
+        + REFERENCE_NAME;
+    JMeterUtils.setProperty(maxScanLengthProperty, String.valueOf(firstRow.length()));
+    try {
+      List<TestElement> children = new ArrayList<>();
+      siebelRowExtractor.process(sampler, children, sampleResult, vars);
+      assertThat(children.get(children.size() - 1)
+          .getPropertyAsString(SiebelStarArrayPostProcessor.ROWS_PROPERTY))
+          .isEqualTo("1:" + REFERENCE_NAME + "0:2");
+    } finally {
+      JMeterUtils.getJMeterProperties().remove(maxScanLengthProperty);
+    }
+  }
+
+  private SiebelStarArrayPostProcessor createPostProcessor() {
+    SiebelStarArrayPostProcessor postProcessor = new SiebelStarArrayPostProcessor();
+    postProcessor.setProperty(TestElement.GUI_CLASS, TestBeanGUI.class.getName());
+    postProcessor.setName("Parse Array Values");
+    postProcessor.setProperty(SiebelStarArrayPostProcessor.VARIABLE_NAME_PROPERTY, REFERENCE_NAME);
+    postProcessor.setProperty(SiebelStarArrayPostProcessor.ROWS_PROPERTY,
+        "1:" + REFERENCE_NAME + "0:3");
+    return postProcessor;
   }
 
   private RegexExtractor createRegexExtractor(String responseRegex, ResultField fieldToCheck) {
@@ -0,0 +1,76 @@
+package com.blazemeter.jmeter.correlation.siebel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.blazemeter.jmeter.correlation.siebel.SiebelStarArrayPostProcessor.Row;
+import java.util.Arrays;
+import org.apache.jmeter.testbeans.TestBeanHelper;
+import org.apache.jmeter.threads.JMeterContextService;
+import org.apache.jmeter.threads.JMeterVariables;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SiebelStarArrayPostProcessorTest {
+
+  private static final String VARIABLE_NAME = "Siebel_Star_Array_Op";
+  private static final String FIRST_PREFIX = VARIABLE_NAME + "0";
+  private static final String SECOND_PREFIX = VARIABLE_NAME + "1";
+
+  private final JMeterVariables vars = new JMeterVariables();
+  private SiebelStarArrayPostProcessor postProcessor;
+
+  @Before
+  public void setup() {
+    JMeterContextService.getContext().setVariables(vars);
+    postProcessor = SiebelStarArrayPostProcessor.fromRows(VARIABLE_NAME,
+        Arrays.asList(new Row(1, FIRST_PREFIX, 3), new Row(2, SECOND_PREFIX, 2)));
+  }
+
+  @Test
+  public void shouldParseEachMatchWithItsRowPrefixWhenProcess() {
+    vars.put(VARIABLE_NAME + "_1", "8*testUser12*testPassword6*VRId-0");
+    vars.put(VARIABLE_NAME + "_2", "3*abc6*VRId-1");
+    process();
+    assertThat(Arrays.asList(vars.get(FIRST_PREFIX + "_1"), vars.get(FIRST_PREFIX + "_2"),
+        vars.get(FIRST_PREFIX + "_rowId"), vars.get(SECOND_PREFIX + "_1"),
+        vars.get(SECOND_PREFIX + "_rowId")))
+        .isEqualTo(Arrays.asList("testUser", "testPassword", "VRId-0", "abc", "VRId-1"));
+  }
+
+  private void process() {
+    TestBeanHelper.prepare(postProcessor);
+    postProcessor.process();
+  }
+
+  @Test
+  public void shouldParseFollowingMatchesWhenMatchIsNotStarArray() {
+    vars.put(VARIABLE_NAME + "_1", "8*test");
+    vars.put(VARIABLE_NAME + "_2", "3*abc6*VRId-1");
+    process();
+    assertThat(Arrays.asList(vars.get(FIRST_PREFIX + "_rowId"),
+        vars.get(SECOND_PREFIX + "_rowId")))
+        .isEqualTo(Arrays.asList(null, "VRId-1"));
+  }
+
+  @Test
+  public void shouldNotParseRowWhenMatchIsMissing() {
+    vars.put(VARIABLE_NAME + "_2", "3*abc6*VRId-1");
+    process();
+    assertThat(Arrays.asList(vars.get(FIRST_PREFIX + "_n"), vars.get(SECOND_PREFIX + "_n")))
+        .isEqualTo(Arrays.asList(null, "2"));
+  }
+
+  @Test
+  public void shouldParseMatchOfEachRowWhenRowsSkipMatches() {
+    postProcessor = SiebelStarArrayPostProcessor.fromRows(VARIABLE_NAME,
+        Arrays.asList(new Row(1, FIRST_PREFIX, 3), new Row(3, SECOND_PREFIX, 2)));
+    vars.put(VARIABLE_NAME + "_1", "8*testUser12*testPassword6*VRId-0");
+    vars.put(VARIABLE_NAME + "_2", "8*test");
+    vars.put(VARIABLE_NAME + "_3", "3*abc6*VRId-2");
+    process();
+    assertThat(Arrays.asList(vars.get(FIRST_PREFIX + "_rowId"),
+        vars.get(SECOND_PREFIX + "_rowId")))
+        .isEqualTo(Arrays.asList("VRId-0", "VRId-2"));
+  }
+
+}